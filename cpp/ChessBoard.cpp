@@ -2,8 +2,24 @@
 #include <vector>
 #include <cmath>
 #include <array>
+#include <bit>
+#include <cstdint>
+#include <utility>
+#include <algorithm>
+#include <chrono>
+#include <atomic>
+#include <memory>
+#include <thread>
+#include <cstring>
+#include <unordered_map>
+#include <mutex>
+#include <string>
+#include <string_view>
+#include <cstdio>
+#include <functional>
 
 const auto BOARD_SIZE = int(8);
+const auto SQUARE_COUNT = int(BOARD_SIZE * BOARD_SIZE);
 const auto PIECE_VALUES = std::array<int, 7>{0, 5, 3, 3, 9, 0, 1};
 
 enum Pieces  {
@@ -22,343 +38,3066 @@ enum Pieces  {
     B_PAWN = -6
 };
 
-auto gameOver = bool(false);
-auto isWhiteTurn = bool(true);
-auto whiteScore = int(0);
-auto blackScore = int(0);
-auto board = std::vector<std::vector<jint>>(BOARD_SIZE, std::vector<jint>(BOARD_SIZE, EMPTY));
+enum Color {
+    WHITE = 0,
+    BLACK = 1
+};
 
-auto getPieceValue(jint piece) -> int {
-    auto index = abs(piece);
-    return (piece > 0) ? PIECE_VALUES[index] : -PIECE_VALUES[index];
-}
+using Bitboard = std::uint64_t;
 
-auto isPathClear(int fromX, int fromY, int toX, int toY) -> bool {
-    auto stepX = (toX > fromX) - (toX < fromX);
-    auto stepY = (toY > fromY) - (toY < fromY);
+// Squares are numbered row * 8 + col, matching the (row, col) coordinates used over JNI,
+// so bit 0 is (0,0) on black's back rank and white pawns advance towards lower squares.
+struct Position {
+    std::array<std::array<Bitboard, 7>, 2> pieces{}; // [color][abs(piece)], index 0 unused
+    std::array<Bitboard, 2> colors{};
+    std::array<jint, SQUARE_COUNT> squares{};        // mailbox mirror for piece lookups
+    Bitboard key = 0;                                // Zobrist hash of the pieces, side to move excluded
+    std::array<int, 2> psqt{};                       // material + piece-square score, white minus black, [middlegame, endgame]
+    int phase = 0;                                   // non-pawn material, 24 for the full set
+};
 
-    auto x = fromX + stepX;
-    auto y = fromY + stepY;
+// Moves cross JNI packed into one int: from square in bits 0-5, to square in bits 6-11 and the
+// promotion piece type (abs value, 0 for none) in bits 12-14. ChessBoard.java uses the same layout.
+using Move = jint;
 
-    while (x != toX || y != toY) {
-        if (board[x][y] != EMPTY) {
-            return false;
-        }
-        x += stepX;
-        y += stepY;
-    }
-    return true;
+const auto MAX_MOVES = int(256);
+const auto MAX_PLY = int(64);
+const auto NO_MOVE = Move(0); // from == to, so never a real move
+
+struct MoveList {
+    std::array<Move, MAX_MOVES> moves{};
+    int size = 0;
+};
+
+auto packMove(int from, int to, int promotion) -> Move {
+    return from | (to << 6) | (promotion << 12);
 }
 
-auto isValidRookMove(int fromX, int fromY, int toX, int toY) -> bool {
-    // Rook moves in straight lines either horizontally or vertically
-    auto sameRow = (fromX == toX);
-    auto sameColumn = (fromY == toY);
-    return sameRow || sameColumn;
+auto moveFrom(Move move) -> int {
+    return move & 63;
 }
 
-auto isValidBishopMove(int fromX, int fromY, int toX, int toY) -> bool {
-    // Bishop moves diagonally - with each move to the right/left, it must also move the same distance up/down
-    auto dx = abs(toX - fromX);
-    auto dy = abs(toY - fromY);
-    return dx == dy;
+auto moveTo(Move move) -> int {
+    return (move >> 6) & 63;
 }
 
-auto isValidQueenMove(int fromX, int fromY, int toX, int toY) -> bool {
-    // Queen is a combination of Rook and Bishop
-    return isValidRookMove(fromX, fromY, toX, toY) || isValidBishopMove(fromX, fromY, toX, toY);
+auto movePromotion(Move move) -> int {
+    return (move >> 12) & 7;
 }
 
-auto isValidKingMove(int fromX, int fromY, int toX, int toY) -> bool {
-    // King moves only once in any direction
-    return std::max(abs(toX - fromX), abs(toY - fromY)) == 1;
+struct SlidingMagic {
+    Bitboard mask = 0;
+    Bitboard magic = 0;
+    int shift = 0;
+    std::vector<Bitboard> attacks;
+};
+
+using Directions = std::array<std::pair<int, int>, 4>;
+
+const auto ROOK_DIRECTIONS = Directions{{{-1, 0}, {1, 0}, {0, -1}, {0, 1}}};
+const auto BISHOP_DIRECTIONS = Directions{{{-1, -1}, {-1, 1}, {1, -1}, {1, 1}}};
+
+auto squareBit(int square) -> Bitboard {
+    return Bitboard(1) << square;
 }
 
-auto isValidKnightMove(int fromX, int fromY, int toX, int toY) -> bool {
-    // Knight moves in "L" shape: 2 squares in one direction and 1 in the other
-    auto dx = abs(toX - fromX);
-    auto dy = abs(toY - fromY);
-    return (dx == 2 && dy == 1) || (dx == 1 && dy == 2);
+auto isOnBoard(int row, int col) -> bool {
+    return row >= 0 && row < BOARD_SIZE && col >= 0 && col < BOARD_SIZE;
 }
 
-auto isValidPawnMove(int fromX, int fromY, int toX, int toY, bool isWhite) -> bool {
-    auto direction = isWhite ? int(-1) : int(1);
+auto popLsb(Bitboard& bitboard) -> int {
+    auto square = std::countr_zero(bitboard);
+    bitboard &= bitboard - 1;
+    return square;
+}
 
-    if (fromY == toY && board[toX][toY] == EMPTY) {
-        if (toX - fromX == direction)
-            return true;
+auto colorOf(jint piece) -> int {
+    return piece > 0 ? WHITE : BLACK;
+}
 
-        if ((isWhite && fromX == 6) || (!isWhite && fromX == 1)) {
-            if (toX - fromX == 2 * direction && board[fromX + direction][fromY] == EMPTY)
-                return true;
+auto slidingAttacks(int square, Bitboard blockers, const Directions& directions) -> Bitboard {
+    auto attacks = Bitboard(0);
+    for (auto [dRow, dCol] : directions) {
+        auto row = square / BOARD_SIZE + dRow;
+        auto col = square % BOARD_SIZE + dCol;
+        while (isOnBoard(row, col)) {
+            auto target = squareBit(row * BOARD_SIZE + col);
+            attacks |= target;
+            if (blockers & target)
+                break;
+            row += dRow;
+            col += dCol;
         }
     }
-    if (abs(toY - fromY) == 1 && toX - fromX == direction && board[toX][toY] != EMPTY && (board[toX][toY] * board[fromX][fromY] < 0)) {
-        return true;
+    return attacks;
+}
+
+auto relevantOccupancy(int square, const Directions& directions) -> Bitboard {
+    // Edge squares never block anything further, so they are left out of the magic index
+    auto mask = Bitboard(0);
+    for (auto [dRow, dCol] : directions) {
+        auto row = square / BOARD_SIZE + dRow;
+        auto col = square % BOARD_SIZE + dCol;
+        while (isOnBoard(row + dRow, col + dCol)) {
+            mask |= squareBit(row * BOARD_SIZE + col);
+            row += dRow;
+            col += dCol;
+        }
     }
-    return false;
+    return mask;
+}
+
+auto nextRandom(Bitboard& state) -> Bitboard {
+    state ^= state >> 12;
+    state ^= state << 25;
+    state ^= state >> 27;
+    return state * 2685821657736338717ULL;
 }
 
-auto isInCheck(bool isWhite) -> bool {
-    auto kingX = int(-1);
-    auto kingY = int(-1);
-    auto kingValue = isWhite ? W_KING : B_KING;
+auto findMagic(int square, const Directions& directions, Bitboard& seed) -> SlidingMagic {
+    auto result = SlidingMagic();
+    result.mask = relevantOccupancy(square, directions);
+    auto bits = std::popcount(result.mask);
+    result.shift = 64 - bits;
 
-    for (auto x = 0; x < BOARD_SIZE && kingX == -1; ++x) {
-        for (auto y = 0; y < BOARD_SIZE; ++y) {
-            if (board[x][y] == kingValue) {
-                kingX = x;
-                kingY = y;
-                break;
+    auto size = std::size_t(1) << bits;
+    auto occupancies = std::vector<Bitboard>(size);
+    auto reference = std::vector<Bitboard>(size);
+    auto subset = Bitboard(0);
+    for (auto i = std::size_t(0); i < size; ++i) {
+        occupancies[i] = subset;
+        reference[i] = slidingAttacks(square, subset, directions);
+        subset = (subset - result.mask) & result.mask;
+    }
+
+    // Fixed seed keeps the tables identical from run to run
+    result.attacks.assign(size, 0);
+    auto usedIn = std::vector<int>(size, 0);
+    for (auto attempt = 1;; ++attempt) {
+        auto magic = nextRandom(seed) & nextRandom(seed) & nextRandom(seed);
+        if (std::popcount((result.mask * magic) >> 56) < 6)
+            continue;
+
+        auto collision = bool(false);
+        for (auto i = std::size_t(0); i < size && !collision; ++i) {
+            auto index = (occupancies[i] * magic) >> result.shift;
+            if (usedIn[index] != attempt) {
+                usedIn[index] = attempt;
+                result.attacks[index] = reference[i];
+            } else if (result.attacks[index] != reference[i]) {
+                collision = true;
             }
         }
+        if (!collision) {
+            result.magic = magic;
+            return result;
+        }
     }
-    if (kingX == -1) return false;
-
-    for (auto x = 0; x < BOARD_SIZE; ++x) {
-        for (auto y = 0; y < BOARD_SIZE; ++y) {
-            auto piece = board[x][y];
-            if ((isWhite && piece < 0) || (!isWhite && piece > 0)) {
-                auto attack = bool(false);
-                switch (abs(piece)) {
-                    case W_ROOK:
-                        attack = isValidRookMove(x, y, kingX, kingY) && isPathClear(x, y, kingX, kingY);
-                        break;
-                    case W_BISHOP:
-                        attack = isValidBishopMove(x, y, kingX, kingY) && isPathClear(x, y, kingX, kingY);
-                        break;
-                    case W_QUEEN:
-                        attack = isValidQueenMove(x, y, kingX, kingY) && isPathClear(x, y, kingX, kingY);
-                        break;
-                    case W_KNIGHT:
-                        attack = isValidKnightMove(x, y, kingX, kingY);
-                        break;
-                    case W_PAWN:
-                        attack = (isWhite && (x == kingX - 1) && (abs(y - kingY) == 1)) || (!isWhite && (x == kingX + 1) && (abs(y - kingY) == 1));
-                        break;
-                    case W_KING:
-                        attack = isValidKingMove(x, y, kingX, kingY);
-                        break;
+}
+
+struct AttackTables {
+    std::array<Bitboard, SQUARE_COUNT> knight{};
+    std::array<Bitboard, SQUARE_COUNT> king{};
+    std::array<std::array<Bitboard, SQUARE_COUNT>, 2> pawn{}; // [color][square] capture targets
+    std::array<SlidingMagic, SQUARE_COUNT> rook;
+    std::array<SlidingMagic, SQUARE_COUNT> bishop;
+    std::array<std::array<Bitboard, SQUARE_COUNT>, SQUARE_COUNT> between{}; // squares strictly between two aligned squares
+    std::array<std::array<Bitboard, SQUARE_COUNT>, SQUARE_COUNT> line{};    // the whole rank, file or diagonal through both
+
+    AttackTables() {
+        const auto knightSteps = std::array<std::pair<int, int>, 8>{{{-2, -1}, {-2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}, {2, -1}, {2, 1}}};
+        const auto kingSteps = std::array<std::pair<int, int>, 8>{{{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}}};
+
+        auto seed = Bitboard(0x9E3779B97F4A7C15ULL);
+        for (auto square = 0; square < SQUARE_COUNT; ++square) {
+            auto row = square / BOARD_SIZE;
+            auto col = square % BOARD_SIZE;
+            for (auto [dRow, dCol] : knightSteps)
+                if (isOnBoard(row + dRow, col + dCol))
+                    knight[square] |= squareBit((row + dRow) * BOARD_SIZE + col + dCol);
+            for (auto [dRow, dCol] : kingSteps)
+                if (isOnBoard(row + dRow, col + dCol))
+                    king[square] |= squareBit((row + dRow) * BOARD_SIZE + col + dCol);
+            for (auto dCol : {-1, 1}) {
+                if (isOnBoard(row - 1, col + dCol))
+                    pawn[WHITE][square] |= squareBit((row - 1) * BOARD_SIZE + col + dCol);
+                if (isOnBoard(row + 1, col + dCol))
+                    pawn[BLACK][square] |= squareBit((row + 1) * BOARD_SIZE + col + dCol);
+            }
+            rook[square] = findMagic(square, ROOK_DIRECTIONS, seed);
+            bishop[square] = findMagic(square, BISHOP_DIRECTIONS, seed);
+        }
+
+        for (auto a = 0; a < SQUARE_COUNT; ++a) {
+            for (auto b = 0; b < SQUARE_COUNT; ++b) {
+                for (const auto* directions : {&ROOK_DIRECTIONS, &BISHOP_DIRECTIONS}) {
+                    if (a == b || !(slidingAttacks(a, 0, *directions) & squareBit(b)))
+                        continue;
+                    between[a][b] = slidingAttacks(a, squareBit(b), *directions) & slidingAttacks(b, squareBit(a), *directions);
+                    line[a][b] = (slidingAttacks(a, 0, *directions) & slidingAttacks(b, 0, *directions)) | squareBit(a) | squareBit(b);
                 }
-                if (attack)
-                    return true;
             }
         }
     }
-    return false;
+};
+
+const auto attackTables = AttackTables();
+
+struct ZobristKeys {
+    std::array<std::array<Bitboard, 13>, SQUARE_COUNT> pieces{}; // [square][piece + 6]
+    Bitboard blackToMove = 0;
+
+    ZobristKeys() {
+        auto seed = Bitboard(0x2545F4914F6CDD1DULL);
+        for (auto& square : pieces)
+            for (auto& key : square)
+                key = nextRandom(seed);
+        blackToMove = nextRandom(seed);
+    }
+};
+
+const auto zobristKeys = ZobristKeys();
+
+const auto MIDDLEGAME = int(0);
+const auto ENDGAME = int(1);
+const auto MAX_PHASE = int(24);
+
+// Indexed by abs(piece): rook, knight, bishop, queen, king, pawn
+const auto MATERIAL = std::array<int, 7>{0, 500, 320, 330, 900, 0, 100};
+const auto PHASE_WEIGHTS = std::array<int, 7>{0, 2, 1, 1, 4, 0, 0};
+
+using SquareTable = std::array<int, SQUARE_COUNT>;
+
+// White's point of view, laid out like the board: the first row is black's back rank. Black mirrors them.
+const auto ROOK_TABLE = SquareTable{
+      0,   0,   0,   0,   0,   0,   0,   0,
+      5,  10,  10,  10,  10,  10,  10,   5,
+     -5,   0,   0,   0,   0,   0,   0,  -5,
+     -5,   0,   0,   0,   0,   0,   0,  -5,
+     -5,   0,   0,   0,   0,   0,   0,  -5,
+     -5,   0,   0,   0,   0,   0,   0,  -5,
+     -5,   0,   0,   0,   0,   0,   0,  -5,
+      0,   0,   0,   5,   5,   0,   0,   0};
+const auto KNIGHT_TABLE = SquareTable{
+    -50, -40, -30, -30, -30, -30, -40, -50,
+    -40, -20,   0,   0,   0,   0, -20, -40,
+    -30,   0,  10,  15,  15,  10,   0, -30,
+    -30,   5,  15,  20,  20,  15,   5, -30,
+    -30,   0,  15,  20,  20,  15,   0, -30,
+    -30,   5,  10,  15,  15,  10,   5, -30,
+    -40, -20,   0,   5,   5,   0, -20, -40,
+    -50, -40, -30, -30, -30, -30, -40, -50};
+const auto BISHOP_TABLE = SquareTable{
+    -20, -10, -10, -10, -10, -10, -10, -20,
+    -10,   0,   0,   0,   0,   0,   0, -10,
+    -10,   0,   5,  10,  10,   5,   0, -10,
+    -10,   5,   5,  10,  10,   5,   5, -10,
+    -10,   0,  10,  10,  10,  10,   0, -10,
+    -10,  10,  10,  10,  10,  10,  10, -10,
+    -10,   5,   0,   0,   0,   0,   5, -10,
+    -20, -10, -10, -10, -10, -10, -10, -20};
+const auto QUEEN_TABLE = SquareTable{
+    -20, -10, -10,  -5,  -5, -10, -10, -20,
+    -10,   0,   0,   0,   0,   0,   0, -10,
+    -10,   0,   5,   5,   5,   5,   0, -10,
+     -5,   0,   5,   5,   5,   5,   0,  -5,
+      0,   0,   5,   5,   5,   5,   0,  -5,
+    -10,   5,   5,   5,   5,   5,   0, -10,
+    -10,   0,   5,   0,   0,   0,   0, -10,
+    -20, -10, -10,  -5,  -5, -10, -10, -20};
+const auto KING_MIDDLEGAME_TABLE = SquareTable{
+    -30, -40, -40, -50, -50, -40, -40, -30,
+    -30, -40, -40, -50, -50, -40, -40, -30,
+    -30, -40, -40, -50, -50, -40, -40, -30,
+    -30, -40, -40, -50, -50, -40, -40, -30,
+    -20, -30, -30, -40, -40, -30, -30, -20,
+    -10, -20, -20, -20, -20, -20, -20, -10,
+     20,  20,   0,   0,   0,   0,  20,  20,
+     20,  30,  10,   0,   0,  10,  30,  20};
+const auto KING_ENDGAME_TABLE = SquareTable{
+    -50, -40, -30, -20, -20, -30, -40, -50,
+    -30, -20, -10,   0,   0, -10, -20, -30,
+    -30, -10,  20,  30,  30,  20, -10, -30,
+    -30, -10,  30,  40,  40,  30, -10, -30,
+    -30, -10,  30,  40,  40,  30, -10, -30,
+    -30, -10,  20,  30,  30,  20, -10, -30,
+    -30, -30,   0,   0,   0,   0, -30, -30,
+    -50, -30, -30, -30, -30, -30, -30, -50};
+const auto PAWN_MIDDLEGAME_TABLE = SquareTable{
+      0,   0,   0,   0,   0,   0,   0,   0,
+     50,  50,  50,  50,  50,  50,  50,  50,
+     10,  10,  20,  30,  30,  20,  10,  10,
+      5,   5,  10,  25,  25,  10,   5,   5,
+      0,   0,   0,  20,  20,   0,   0,   0,
+      5,  -5, -10,   0,   0, -10,  -5,   5,
+      5,  10,  10, -20, -20,  10,  10,   5,
+      0,   0,   0,   0,   0,   0,   0,   0};
+const auto PAWN_ENDGAME_TABLE = SquareTable{
+      0,   0,   0,   0,   0,   0,   0,   0,
+     80,  80,  80,  80,  80,  80,  80,  80,
+     50,  50,  50,  50,  50,  50,  50,  50,
+     30,  30,  30,  30,  30,  30,  30,  30,
+     15,  15,  15,  15,  15,  15,  15,  15,
+      5,   5,   5,   5,   5,   5,   5,   5,
+      0,   0,   0,   0,   0,   0,   0,   0,
+      0,   0,   0,   0,   0,   0,   0,   0};
+
+// Material folded into the piece-square tables, signed so that black pieces count negative,
+// plus the pawn masks the evaluator needs
+struct EvaluationTables {
+    std::array<std::array<SquareTable, 13>, 2> pieceSquare{}; // [stage][piece + 6][square]
+    std::array<Bitboard, BOARD_SIZE> files{};
+    std::array<Bitboard, BOARD_SIZE> adjacentFiles{};
+    std::array<std::array<Bitboard, SQUARE_COUNT>, 2> passedPawn{}; // [color][square] squares that must hold no enemy pawn
+
+    EvaluationTables() {
+        const auto middlegame = std::array<const SquareTable*, 7>{nullptr, &ROOK_TABLE, &KNIGHT_TABLE, &BISHOP_TABLE, &QUEEN_TABLE, &KING_MIDDLEGAME_TABLE, &PAWN_MIDDLEGAME_TABLE};
+        const auto endgame = std::array<const SquareTable*, 7>{nullptr, &ROOK_TABLE, &KNIGHT_TABLE, &BISHOP_TABLE, &QUEEN_TABLE, &KING_ENDGAME_TABLE, &PAWN_ENDGAME_TABLE};
+
+        for (auto type = int(W_ROOK); type <= W_PAWN; ++type) {
+            for (auto square = 0; square < SQUARE_COUNT; ++square) {
+                auto mirrored = square ^ 56;
+                pieceSquare[MIDDLEGAME][type + 6][square] = MATERIAL[type] + (*middlegame[type])[square];
+                pieceSquare[ENDGAME][type + 6][square] = MATERIAL[type] + (*endgame[type])[square];
+                pieceSquare[MIDDLEGAME][-type + 6][square] = -(MATERIAL[type] + (*middlegame[type])[mirrored]);
+                pieceSquare[ENDGAME][-type + 6][square] = -(MATERIAL[type] + (*endgame[type])[mirrored]);
+            }
+        }
+
+        for (auto square = 0; square < SQUARE_COUNT; ++square)
+            files[square % BOARD_SIZE] |= squareBit(square);
+        for (auto col = 0; col < BOARD_SIZE; ++col)
+            adjacentFiles[col] = (col > 0 ? files[col - 1] : 0) | (col < BOARD_SIZE - 1 ? files[col + 1] : 0);
+        for (auto square = 0; square < SQUARE_COUNT; ++square) {
+            auto row = square / BOARD_SIZE;
+            auto col = square % BOARD_SIZE;
+            auto span = files[col] | adjacentFiles[col];
+            for (auto other = 0; other < SQUARE_COUNT; ++other) {
+                if (!(span & squareBit(other)))
+                    continue;
+                if (other / BOARD_SIZE < row)
+                    passedPawn[WHITE][square] |= squareBit(other);
+                if (other / BOARD_SIZE > row)
+                    passedPawn[BLACK][square] |= squareBit(other);
+            }
+        }
+    }
+};
+
+const auto evaluationTables = EvaluationTables();
+
+auto rookAttacks(int square, Bitboard occupancy) -> Bitboard {
+    const auto& entry = attackTables.rook[square];
+    return entry.attacks[((occupancy & entry.mask) * entry.magic) >> entry.shift];
 }
 
-auto isMoveLegal(int fromX, int fromY, int toX, int toY, bool isWhite) -> bool {
-    if (fromX < 0 || fromX >= BOARD_SIZE || fromY < 0 || fromY >= BOARD_SIZE || toX < 0 || toX >= BOARD_SIZE || toY < 0 || toY >= BOARD_SIZE)
-        return false;
+auto bishopAttacks(int square, Bitboard occupancy) -> Bitboard {
+    const auto& entry = attackTables.bishop[square];
+    return entry.attacks[((occupancy & entry.mask) * entry.magic) >> entry.shift];
+}
 
-    if (fromX == toX && fromY == toY)
-        return false;
+enum Bound {
+    BOUND_UPPER = 1,
+    BOUND_LOWER = 2,
+    BOUND_EXACT = 3
+};
+
+// Lock-free table shared by all search threads of one game. Each entry stores key ^ data next to
+// data, so a torn write from a racing thread simply fails the key check instead of needing a lock.
+// data: move in bits 0-15, score in 16-47, depth in 48-54, bound in 55-56 and generation in 57-63.
+struct TranspositionTable {
+    struct Entry {
+        std::atomic<std::uint64_t> check{0};
+        std::atomic<std::uint64_t> data{0};
+    };
 
-    auto piece = board[fromX][fromY];
-    auto target = board[toX][toY];
+    static const auto SIZE = std::size_t(1) << 18; // 16 bytes each, 4 MB per game that searches
+    static const auto GENERATIONS = std::uint64_t(128);
 
-    if (piece == EMPTY || (isWhite && piece < 0) || (!isWhite && piece > 0))
-        return false;
+    std::unique_ptr<Entry[]> entries = std::make_unique<Entry[]>(SIZE);
+    std::uint64_t generation = 0;
 
-    if ((isWhite && target > 0) || (!isWhite && target < 0))
-        return false;
+    // Entries from earlier searches are treated as empty, so a search never depends on the ones before it
+    auto newSearch() -> void {
+        generation = (generation + 1) % GENERATIONS;
+        if (generation == 0) {
+            for (auto i = std::size_t(0); i < SIZE; ++i) {
+                entries[i].check.store(0, std::memory_order_relaxed);
+                entries[i].data.store(0, std::memory_order_relaxed);
+            }
+            generation = 1;
+        }
+    }
+
+    auto probe(Bitboard key, std::uint64_t& data) const -> bool {
+        const auto& entry = entries[key & (SIZE - 1)];
+        data = entry.data.load(std::memory_order_relaxed);
+        return (entry.check.load(std::memory_order_relaxed) ^ data) == key && (data >> 57) == generation;
+    }
+
+    auto store(Bitboard key, Move move, int score, int depth, int bound) -> void {
+        auto& entry = entries[key & (SIZE - 1)];
+        auto old = entry.data.load(std::memory_order_relaxed);
+        auto sameKey = (entry.check.load(std::memory_order_relaxed) ^ old) == key;
+        if (sameKey && (old >> 57) == generation && int((old >> 48) & 127) > depth + 2 && bound != BOUND_EXACT)
+            return;
+        if (sameKey && move == NO_MOVE)
+            move = Move(old & 0xFFFF);
+
+        auto data = std::uint64_t(std::uint16_t(move)) | (std::uint64_t(std::uint32_t(score)) << 16)
+                    | (std::uint64_t(std::min(depth, 127)) << 48) | (std::uint64_t(bound) << 55) | (generation << 57);
+        entry.check.store(key ^ data, std::memory_order_relaxed);
+        entry.data.store(data, std::memory_order_relaxed);
+    }
+};
+
+// Order mirrors GameStatus.java
+enum GameStatus {
+    STATUS_UNKNOWN = -1, // not computed since the last change
+    STATUS_ONGOING = 0,
+    STATUS_CHECK = 1,
+    STATUS_CHECKMATE_WHITE_WINS = 2,
+    STATUS_CHECKMATE_BLACK_WINS = 3,
+    STATUS_STALEMATE = 4,
+    STATUS_DRAW_REPETITION = 5,
+    STATUS_DRAW_FIFTY_MOVES = 6
+};
+
+const auto FIFTY_MOVE_PLIES = int(100);
+
+// Game state from before a move, enough to take the move back
+struct MoveRecord {
+    Move move; // promotion bits hold the piece the pawn became
+    jint captured;
+    int whiteScore;
+    int blackScore;
+    bool isWhiteTurn;
+    bool gameOver;
+    GameStatus status;
+    int halfmoveClock;
+};
+
+// One native game context per Java ChessBoard, addressed through its nativeHandle field.
+// Nothing here is shared between games, so independent boards can be driven from different threads.
+struct Game {
+    Position position;
+    bool gameOver = false;
+    bool isWhiteTurn = true;
+    int whiteScore = 0;
+    int blackScore = 0;
+    GameStatus status = STATUS_UNKNOWN; // cached by gameStatus(), reset by every change to the position
+
+    // Moves [0, historyLength) have been played; the rest were undone and can be redone
+    std::vector<MoveRecord> history;
+    std::size_t historyLength = 0;
+
+    // How often each position (key with side to move) occurred since the history was last cleared,
+    // and plies since the last capture or pawn move
+    std::unordered_map<Bitboard, int> repetitions;
+    int halfmoveClock = 0;
+    int startPly = 0; // plies played before the first move of the history, for the FEN move number
+
+    // Direct buffer registered from Java, rewritten after every state change (see BoardSnapshot.java)
+    std::int8_t* snapshot = nullptr;
+    std::int32_t snapshotVersion = 0;
+
+    // Search resources survive initializeBoard/setBoardState
+    int searchThreads = 1;
+    std::atomic<bool> stopRequested{false};
+    std::unique_ptr<TranspositionTable> table;
+};
+
+auto resetGame(Game& game) -> void {
+    game.position = Position();
+    game.gameOver = false;
+    game.isWhiteTurn = true;
+    game.whiteScore = 0;
+    game.blackScore = 0;
+    game.status = STATUS_UNKNOWN;
+    game.startPly = 0;
+}
+
+auto getPieceValue(jint piece) -> int {
+    auto index = abs(piece);
+    return (piece > 0) ? PIECE_VALUES[index] : -PIECE_VALUES[index];
+}
+
+auto positionKey(const Position& pos, int color) -> Bitboard {
+    return color == BLACK ? pos.key ^ zobristKeys.blackToMove : pos.key;
+}
+
+auto occupied(const Position& pos) -> Bitboard {
+    return pos.colors[WHITE] | pos.colors[BLACK];
+}
+
+auto removePiece(Position& pos, int square) -> void {
+    auto piece = pos.squares[square];
+    if (piece == EMPTY)
+        return;
+    auto color = colorOf(piece);
+    pos.pieces[color][abs(piece)] &= ~squareBit(square);
+    pos.colors[color] &= ~squareBit(square);
+    pos.squares[square] = EMPTY;
+    pos.key ^= zobristKeys.pieces[square][piece + 6];
+    pos.psqt[MIDDLEGAME] -= evaluationTables.pieceSquare[MIDDLEGAME][piece + 6][square];
+    pos.psqt[ENDGAME] -= evaluationTables.pieceSquare[ENDGAME][piece + 6][square];
+    pos.phase -= PHASE_WEIGHTS[abs(piece)];
+}
+
+auto isPieceValue(jint piece) -> bool {
+    return piece >= -W_PAWN && piece <= W_PAWN;
+}
+
+// Callers coming from Java check the value with isPieceValue first; anything else would index past the tables
+auto putPiece(Position& pos, int square, jint piece) -> void {
+    removePiece(pos, square);
+    if (piece == EMPTY)
+        return;
+    auto color = colorOf(piece);
+    pos.pieces[color][abs(piece)] |= squareBit(square);
+    pos.colors[color] |= squareBit(square);
+    pos.squares[square] = piece;
+    pos.key ^= zobristKeys.pieces[square][piece + 6];
+    pos.psqt[MIDDLEGAME] += evaluationTables.pieceSquare[MIDDLEGAME][piece + 6][square];
+    pos.psqt[ENDGAME] += evaluationTables.pieceSquare[ENDGAME][piece + 6][square];
+    pos.phase += PHASE_WEIGHTS[abs(piece)];
+}
+
+// Engine metrics, off by default. Every thread counts into its own ThreadMetrics, written only by that
+// thread, and readMetrics merges them with the totals of threads that have exited. While disabled each
+// probe costs one relaxed load and a branch, and JNI calls are not timed at all.
+// Order mirrors EngineMetrics.java
+enum Counter {
+    COUNTER_MOVE_GENERATIONS,
+    COUNTER_LEGALITY_PROBES,
+    COUNTER_CHECK_SCANS,
+    COUNTER_SEARCH_NODES,
+    COUNTER_TT_PROBES,
+    COUNTER_TT_HITS,
+    COUNTER_COUNT
+};
+
+// Timed ChessBoard methods; order mirrors EngineMetrics.java
+enum NativeCall {
+    CALL_INITIALIZE_BOARD,
+    CALL_MOVE_PIECE,
+    CALL_GET_BOARD_STATE,
+    CALL_SET_BOARD_STATE,
+    CALL_IS_IN_CHECK,
+    CALL_IS_CHECKMATE,
+    CALL_IS_STALEMATE,
+    CALL_GAME_STATUS,
+    CALL_PROMOTE_PAWN,
+    CALL_GENERATE_LEGAL_MOVES,
+    CALL_GENERATE_PSEUDO_LEGAL_MOVES,
+    CALL_EVALUATE,
+    CALL_PERFT,
+    CALL_FIND_BEST_MOVE,
+    CALL_APPLY_MOVES,
+    CALL_UNDO_MOVE,
+    CALL_REDO_MOVE,
+    CALL_IS_WHITE_TURN,
+    CALL_GET_CURRENT_SCORE,
+    CALL_GET_POSITION_KEY,
+    CALL_GET_HALFMOVE_CLOCK,
+    CALL_GET_MOVE_HISTORY,
+    CALL_SET_FEN,
+    CALL_GET_FEN,
+    CALL_LOAD_PACKED_POSITION,
+    CALL_STORE_PACKED_POSITION,
+    CALL_FEN_TO_PACKED,
+    CALL_PACKED_TO_FEN,
+    CALL_SET_SEARCH_THREADS,
+    CALL_STOP_SEARCH,
+    CALL_ATTACH_SNAPSHOT,
+    CALL_PROBE_TABLEBASE,
+    CALL_GENERATE_TABLEBASE,
+    CALL_REGISTER_TABLEBASE,
+    CALL_COUNT
+};
+
+// Bucket b of a latency histogram holds calls that took less than 2^b nanoseconds (the last one the rest)
+const auto LATENCY_BUCKETS = int(40);
+// Per call: count, total nanoseconds, maximum nanoseconds and the buckets
+const auto CALL_STATS_SIZE = int(3 + LATENCY_BUCKETS);
+const auto METRICS_SIZE = int(COUNTER_COUNT + CALL_COUNT * CALL_STATS_SIZE);
+
+using MetricValues = std::array<std::uint64_t, METRICS_SIZE>;
+
+std::atomic<bool> metricsEnabled{false};
+
+struct ThreadMetrics;
+
+// Maxima merge by taking the larger value, everything else adds up
+auto mergeMetric(MetricValues& into, int index, std::uint64_t value) -> void {
+    auto isMaximum = index >= COUNTER_COUNT && (index - COUNTER_COUNT) % CALL_STATS_SIZE == 2;
+    into[index] = isMaximum ? std::max(into[index], value) : into[index] + value;
+}
+
+struct MetricsRegistry {
+    std::mutex mutex;
+    std::vector<const ThreadMetrics*> threads;
+    MetricValues exited{}; // totals of threads that are gone
+};
+
+auto metricsRegistry = MetricsRegistry();
+
+// Only the owning thread writes, so plain load + store keeps the hot path free of locked instructions
+// while the atomics still let readMetrics look at the values from another thread
+struct ThreadMetrics {
+    std::array<std::atomic<std::uint64_t>, METRICS_SIZE> values{};
+
+    ThreadMetrics() {
+        auto lock = std::lock_guard(metricsRegistry.mutex);
+        metricsRegistry.threads.push_back(this);
+    }
+
+    ~ThreadMetrics() {
+        auto lock = std::lock_guard(metricsRegistry.mutex);
+        for (auto i = 0; i < METRICS_SIZE; ++i)
+            mergeMetric(metricsRegistry.exited, i, values[i].load(std::memory_order_relaxed));
+        std::erase(metricsRegistry.threads, this);
+    }
+
+    auto add(int index, std::uint64_t amount) -> void {
+        values[index].store(values[index].load(std::memory_order_relaxed) + amount, std::memory_order_relaxed);
+    }
 
-    if ((isWhite && target == B_KING) || (!isWhite && target == W_KING))
+    auto record(NativeCall call, std::uint64_t nanos) -> void {
+        auto base = COUNTER_COUNT + call * CALL_STATS_SIZE;
+        add(base, 1);
+        add(base + 1, nanos);
+        if (nanos > values[base + 2].load(std::memory_order_relaxed))
+            values[base + 2].store(nanos, std::memory_order_relaxed);
+        add(base + 3 + std::min(int(std::bit_width(nanos)), LATENCY_BUCKETS - 1), 1);
+    }
+};
+
+// Kept out of line so the disabled check is all that gets inlined into the move generator
+[[gnu::noinline]] auto threadMetrics() -> ThreadMetrics& {
+    thread_local auto metrics = ThreadMetrics();
+    return metrics;
+}
+
+auto count(Counter counter, std::uint64_t amount = 1) -> void {
+    if (metricsEnabled.load(std::memory_order_relaxed)) [[unlikely]]
+        threadMetrics().add(counter, amount);
+}
+
+// Times a native call from construction to destruction when metrics are enabled
+struct CallTimer {
+    NativeCall call;
+    bool timed = metricsEnabled.load(std::memory_order_relaxed);
+    std::chrono::steady_clock::time_point start = timed ? std::chrono::steady_clock::now() : std::chrono::steady_clock::time_point();
+
+    explicit CallTimer(NativeCall call) : call(call) {}
+
+    ~CallTimer() {
+        if (timed) {
+            auto nanos = std::chrono::duration_cast<std::chrono::nanoseconds>(std::chrono::steady_clock::now() - start).count();
+            threadMetrics().record(call, std::uint64_t(nanos));
+        }
+    }
+};
+
+auto readMetrics() -> MetricValues {
+    auto lock = std::lock_guard(metricsRegistry.mutex);
+    auto merged = metricsRegistry.exited;
+    for (const auto* thread : metricsRegistry.threads) {
+        for (auto i = 0; i < METRICS_SIZE; ++i)
+            mergeMetric(merged, i, thread->values[i].load(std::memory_order_relaxed));
+    }
+    return merged;
+}
+
+// True when any piece of byColor attacks the square. Pieces standing on excluded squares are
+// ignored, which lets legality tests look at the position after a capture without playing it.
+auto isSquareAttacked(const Position& pos, int square, int byColor, Bitboard occupancy, Bitboard excluded) -> bool {
+    const auto& attackers = pos.pieces[byColor];
+    auto alive = ~excluded;
+
+    if (attackTables.knight[square] & attackers[W_KNIGHT] & alive)
+        return true;
+    if (attackTables.king[square] & attackers[W_KING] & alive)
+        return true;
+    // A pawn attacks this square exactly when a pawn of the other color here would attack it
+    if (attackTables.pawn[byColor ^ 1][square] & attackers[W_PAWN] & alive)
+        return true;
+
+    auto diagonal = (attackers[W_BISHOP] | attackers[W_QUEEN]) & alive;
+    if (diagonal && (bishopAttacks(square, occupancy) & diagonal))
+        return true;
+    auto straight = (attackers[W_ROOK] | attackers[W_QUEEN]) & alive;
+    return straight && (rookAttacks(square, occupancy) & straight);
+}
+
+auto isInCheck(const Position& pos, bool isWhite) -> bool {
+    count(COUNTER_CHECK_SCANS);
+    auto color = isWhite ? WHITE : BLACK;
+    auto king = pos.pieces[color][W_KING];
+    if (!king)
         return false;
+    return isSquareAttacked(pos, std::countr_zero(king), color ^ 1, occupied(pos), 0);
+}
+
+auto pawnPushes(int square, int color, Bitboard occupancy) -> Bitboard {
+    auto row = square / BOARD_SIZE;
+    auto direction = color == WHITE ? -1 : 1;
+    auto startRow = color == WHITE ? 6 : 1;
+
+    if (!isOnBoard(row + direction, 0))
+        return 0;
+    auto single = squareBit(square + direction * BOARD_SIZE);
+    if (occupancy & single)
+        return 0;
+    if (row != startRow)
+        return single;
+    auto twoSteps = squareBit(square + 2 * direction * BOARD_SIZE);
+    return (occupancy & twoSteps) ? single : single | twoSteps;
+}
+
+// Pseudo-legal destinations of the piece on the square, ignoring whether its own king ends up in check
+auto pieceTargets(const Position& pos, int square) -> Bitboard {
+    auto piece = pos.squares[square];
+    auto color = colorOf(piece);
+    auto occupancy = occupied(pos);
+    auto targets = Bitboard(0);
 
-    auto valid = bool(false);
     switch (abs(piece)) {
         case W_ROOK:
-            valid = isValidRookMove(fromX, fromY, toX, toY) && isPathClear(fromX, fromY, toX, toY);
+            targets = rookAttacks(square, occupancy);
             break;
         case W_KNIGHT:
-            valid = isValidKnightMove(fromX, fromY, toX, toY);
+            targets = attackTables.knight[square];
             break;
         case W_BISHOP:
-            valid = isValidBishopMove(fromX, fromY, toX, toY) && isPathClear(fromX, fromY, toX, toY);
+            targets = bishopAttacks(square, occupancy);
             break;
         case W_QUEEN:
-            valid = isValidQueenMove(fromX, fromY, toX, toY) && isPathClear(fromX, fromY, toX, toY);
+            targets = rookAttacks(square, occupancy) | bishopAttacks(square, occupancy);
             break;
         case W_KING:
-            valid = isValidKingMove(fromX, fromY, toX, toY);
+            targets = attackTables.king[square];
             break;
         case W_PAWN:
-            valid = isValidPawnMove(fromX, fromY, toX, toY, isWhite);
+            targets = pawnPushes(square, color, occupancy) | (attackTables.pawn[color][square] & pos.colors[color ^ 1]);
             break;
     }
+    // Own pieces block, and the enemy king can never be captured
+    return targets & ~pos.colors[color] & ~pos.pieces[color ^ 1][W_KING];
+}
+
+auto leavesKingSafe(const Position& pos, int from, int to, int color) -> bool {
+    auto king = pos.pieces[color][W_KING];
+    if (!king)
+        return true;
 
-    if (!valid)
+    auto kingSquare = abs(pos.squares[from]) == W_KING ? to : std::countr_zero(king);
+    auto occupancy = (occupied(pos) & ~squareBit(from)) | squareBit(to);
+    return !isSquareAttacked(pos, kingSquare, color ^ 1, occupancy, squareBit(to));
+}
+
+auto isMoveLegal(const Position& position, int fromX, int fromY, int toX, int toY, bool isWhite) -> bool {
+    count(COUNTER_LEGALITY_PROBES);
+    if (!isOnBoard(fromX, fromY) || !isOnBoard(toX, toY))
+        return false;
+
+    if (fromX == toX && fromY == toY)
         return false;
 
-    // Simulate move to check if the king would be in check
-    auto tempPiece = board[toX][toY];
-    board[toX][toY] = board[fromX][fromY];
-    board[fromX][fromY] = EMPTY;
+    auto from = fromX * BOARD_SIZE + fromY;
+    auto to = toX * BOARD_SIZE + toY;
+    auto color = isWhite ? WHITE : BLACK;
 
-    auto kingInCheck = isInCheck(isWhite);
+    if (!(position.colors[color] & squareBit(from)))
+        return false;
 
-    // Undo move
-    board[fromX][fromY] = board[toX][toY];
-    board[toX][toY] = tempPiece;
+    if (!(pieceTargets(position, from) & squareBit(to)))
+        return false;
 
-    return !kingInCheck; // Move is legal if king is not in check after the move
+    return leavesKingSafe(position, from, to, color); // Move is legal if king is not in check after the move
 }
 
-auto isCheckmate(bool isWhite) -> bool {
-    if (!isInCheck(isWhite))
-        return false;
+auto isPromotionSquare(int square, int color) -> bool {
+    return square / BOARD_SIZE == (color == WHITE ? 0 : BOARD_SIZE - 1);
+}
 
-    for (auto fromX = 0; fromX < BOARD_SIZE; ++fromX) {
-        for (auto fromY = 0; fromY < BOARD_SIZE; ++fromY) {
-            auto piece = board[fromX][fromY];
-            if ((isWhite && piece > 0) || (!isWhite && piece < 0)) {
-                for (auto toX = 0; toX < BOARD_SIZE; ++toX) {
-                    for (auto toY = 0; toY < BOARD_SIZE; ++toY) {
-                        if (isMoveLegal(fromX, fromY, toX, toY, isWhite))
-                            return false;
-                    }
-                }
-            }
+// Calls visit(move) for every pseudo-legal move of the color until it returns false.
+// Returns false when the visitor stopped the walk early.
+template <typename Visitor>
+auto forEachPseudoLegalMove(const Position& pos, int color, Visitor&& visit) -> bool {
+    count(COUNTER_MOVE_GENERATIONS);
+    auto own = pos.colors[color];
+    auto pawns = pos.pieces[color][W_PAWN];
+    while (own) {
+        auto from = popLsb(own);
+        auto targets = pieceTargets(pos, from);
+        auto isPawn = bool(pawns & squareBit(from));
+        while (targets) {
+            auto to = popLsb(targets);
+            // Pawns reaching the last rank are always promoted to a queen
+            auto promotion = isPawn && isPromotionSquare(to, color) ? W_QUEEN : 0;
+            if (!visit(packMove(from, to, promotion)))
+                return false;
         }
     }
     return true;
 }
 
+// Every square the color attacks, pawns included, for the given occupancy
+auto attackedSquares(const Position& pos, int color, Bitboard occupancy) -> Bitboard {
+    const auto& pieces = pos.pieces[color];
+    auto attacks = Bitboard(0);
+    auto pawns = pieces[W_PAWN];
+    while (pawns)
+        attacks |= attackTables.pawn[color][popLsb(pawns)];
+    auto knights = pieces[W_KNIGHT];
+    while (knights)
+        attacks |= attackTables.knight[popLsb(knights)];
+    auto diagonal = pieces[W_BISHOP] | pieces[W_QUEEN];
+    while (diagonal)
+        attacks |= bishopAttacks(popLsb(diagonal), occupancy);
+    auto straight = pieces[W_ROOK] | pieces[W_QUEEN];
+    while (straight)
+        attacks |= rookAttacks(popLsb(straight), occupancy);
+    if (pieces[W_KING])
+        attacks |= attackTables.king[std::countr_zero(pieces[W_KING])];
+    return attacks;
+}
 
-auto isStalemate(bool isWhite) -> bool {
-    if (isInCheck(isWhite))
-        return false;
+// What move legality depends on, worked out once per position so that no move has to be simulated:
+// a move is legal when the king steps off the enemy attack map, or when another piece lands in the
+// check mask and, if pinned, stays on the line through its king.
+struct LegalityInfo {
+    int kingSquare = -1;
+    Bitboard checkers = 0;
+    Bitboard pinned = 0;
+    Bitboard checkMask = ~Bitboard(0); // capture or block squares of a single checker, none in double check
+    Bitboard enemyAttacks = 0;         // seen through the own king, so it cannot step back along a check ray
+};
 
-    for (auto fromX = 0; fromX < BOARD_SIZE; ++fromX) {
-        for (auto fromY = 0; fromY < BOARD_SIZE; ++fromY) {
-            auto piece = board[fromX][fromY];
-            if ((isWhite && piece > 0) || (!isWhite && piece < 0)) {
-                for (auto toX = 0; toX < BOARD_SIZE; ++toX) {
-                    for (auto toY = 0; toY < BOARD_SIZE; ++toY) {
-                        if (isMoveLegal(fromX, fromY, toX, toY, isWhite))
-                            return false;
-                    }
-                }
-            }
-        }
+auto computeLegality(const Position& pos, int color) -> LegalityInfo {
+    auto info = LegalityInfo();
+    auto king = pos.pieces[color][W_KING];
+    if (!king)
+        return info; // positions set up without a king have no legality constraints
+
+    const auto& enemy = pos.pieces[color ^ 1];
+    auto occupancy = occupied(pos);
+    auto square = std::countr_zero(king);
+    info.kingSquare = square;
+    info.enemyAttacks = attackedSquares(pos, color ^ 1, occupancy & ~king);
+
+    auto diagonal = enemy[W_BISHOP] | enemy[W_QUEEN];
+    auto straight = enemy[W_ROOK] | enemy[W_QUEEN];
+    info.checkers = (attackTables.knight[square] & enemy[W_KNIGHT])
+                    | (attackTables.pawn[color][square] & enemy[W_PAWN])
+                    | (bishopAttacks(square, occupancy) & diagonal)
+                    | (rookAttacks(square, occupancy) & straight);
+    if (std::popcount(info.checkers) == 1)
+        info.checkMask = info.checkers | attackTables.between[square][std::countr_zero(info.checkers)];
+    else if (info.checkers)
+        info.checkMask = 0;
+
+    auto snipers = (bishopAttacks(square, 0) & diagonal) | (rookAttacks(square, 0) & straight);
+    while (snipers) {
+        auto blockers = attackTables.between[square][popLsb(snipers)] & occupancy;
+        if (std::popcount(blockers) == 1)
+            info.pinned |= blockers & pos.colors[color];
     }
-    return true;
+    return info;
 }
 
+auto isLegal(const LegalityInfo& info, Move move) -> bool {
+    auto from = moveFrom(move);
+    auto to = moveTo(move);
+    if (from == info.kingSquare)
+        return !(info.enemyAttacks & squareBit(to));
+    if (!(info.checkMask & squareBit(to)))
+        return false;
+    return !(info.pinned & squareBit(from)) || (attackTables.line[info.kingSquare][from] & squareBit(to));
+}
 
-auto promotePawn(int row, int col, jint promotedPiece) -> void {
-    board[row][col] = promotedPiece;
-    auto value = abs(getPieceValue(promotedPiece));
+template <typename Visitor>
+auto forEachLegalMove(const Position& pos, int color, Visitor&& visit) -> bool {
+    auto info = computeLegality(pos, color);
+    return forEachPseudoLegalMove(pos, color, [&](Move move) {
+        return !isLegal(info, move) || visit(move);
+    });
+}
 
-    if (promotedPiece > 0)
-        whiteScore += value;
-    else
-        blackScore += value;
+auto generatePseudoLegalMoves(const Position& pos, int color, MoveList& list) -> void {
+    list.size = 0;
+    forEachPseudoLegalMove(pos, color, [&](Move move) {
+        list.moves[list.size++] = move;
+        return list.size < MAX_MOVES;
+    });
 }
 
-auto performMove(int fromX, int fromY, int toX, int toY) -> bool {
-    if (gameOver || !isMoveLegal(fromX, fromY, toX, toY, isWhiteTurn))
-        return false;
+auto generateLegalMoves(const Position& pos, int color, MoveList& list) -> void {
+    list.size = 0;
+    forEachLegalMove(pos, color, [&](Move move) {
+        list.moves[list.size++] = move;
+        return list.size < MAX_MOVES;
+    });
+}
 
-    auto movingPiece = board[fromX][fromY];
-    auto targetPiece = board[toX][toY];
+auto hasLegalMove(const Position& pos, bool isWhite) -> bool {
+    return !forEachLegalMove(pos, isWhite ? WHITE : BLACK, [](Move) { return false; });
+}
 
-    board[toX][toY] = movingPiece;
-    board[fromX][fromY] = EMPTY;
+// Plays a move in place and returns the captured piece, which is all unmakeMove needs to take it back
+auto makeMove(Position& pos, Move move) -> jint {
+    auto from = moveFrom(move);
+    auto to = moveTo(move);
+    auto piece = pos.squares[from];
+    auto captured = pos.squares[to];
+    auto promotion = movePromotion(move);
+    removePiece(pos, from);
+    putPiece(pos, to, promotion ? (piece > 0 ? promotion : -promotion) : piece);
+    return captured;
+}
 
-    if (targetPiece != EMPTY) {
-        auto capturedValue = getPieceValue(targetPiece);
-        if (capturedValue > 0)
-            blackScore += capturedValue;
-        else
-            whiteScore += -capturedValue;
+auto unmakeMove(Position& pos, Move move, jint captured) -> void {
+    auto to = moveTo(move);
+    auto piece = pos.squares[to];
+    if (movePromotion(move))
+        piece = piece > 0 ? W_PAWN : B_PAWN;
+    putPiece(pos, to, captured);
+    putPiece(pos, moveFrom(move), piece);
+}
+
+// Leaf count of the legal move tree, the standard cross-check for move generators
+auto perft(Position& pos, int color, int depth) -> std::uint64_t {
+    if (depth <= 0)
+        return 1;
+
+    auto list = MoveList();
+    generateLegalMoves(pos, color, list);
+    if (depth == 1)
+        return list.size;
+
+    auto nodes = std::uint64_t(0);
+    for (auto i = 0; i < list.size; ++i) {
+        auto captured = makeMove(pos, list.moves[i]);
+        nodes += perft(pos, color ^ 1, depth - 1);
+        unmakeMove(pos, list.moves[i], captured);
     }
-    if ((movingPiece == W_PAWN && toX == 0) || (movingPiece == B_PAWN && toX == 7))
-        promotePawn(toX, toY, isWhiteTurn ? W_QUEEN : B_QUEEN);
+    return nodes;
+}
 
-    if (isCheckmate(!isWhiteTurn) || isStalemate(!isWhiteTurn))
-        gameOver = true;
-    else
-        isWhiteTurn = !isWhiteTurn;
+auto isCheckmate(const Position& position, bool isWhite) -> bool {
+    return isInCheck(position, isWhite) && !hasLegalMove(position, isWhite);
+}
 
-    return true;
+auto isStalemate(const Position& position, bool isWhite) -> bool {
+    return !isInCheck(position, isWhite) && !hasLegalMove(position, isWhite);
 }
 
-extern "C" {
-JNIEXPORT void JNICALL Java_ChessBoard_initializeBoard(JNIEnv*, jobject) {
-    gameOver = false;
-    whiteScore = blackScore = 0;
-    isWhiteTurn = true;
-    board = {
-            {B_ROOK, B_KNIGHT, B_BISHOP, B_QUEEN, B_KING, B_BISHOP, B_KNIGHT, B_ROOK},
-            {B_PAWN, B_PAWN, B_PAWN, B_PAWN, B_PAWN, B_PAWN, B_PAWN, B_PAWN},
-            {EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY},
-            {EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY},
-            {EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY},
-            {EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY, EMPTY},
-            {W_PAWN, W_PAWN, W_PAWN, W_PAWN, W_PAWN, W_PAWN, W_PAWN, W_PAWN},
-            {W_ROOK, W_KNIGHT, W_BISHOP, W_QUEEN, W_KING, W_BISHOP, W_KNIGHT, W_ROOK}
-    };
+// Endgame tablebases: for one set of pieces, a byte per position and side to move. A value v in 1..253 means
+// mate in v - 1 plies, won by the side to move when v - 1 is odd and lost when it is even; 0 is a draw, 254 a
+// stalemate and 255 a position that cannot occur. Tables ignore the fifty-move rule and repetitions. Positions
+// are mirrored so that the first side's king stands in the a8-d8-d5 triangle (files a-d when there are pawns);
+// the index is that king's slot, then six bits per further piece, then the side to move.
+const auto TB_DRAW = int(0);
+const auto TB_STALEMATE = int(254);
+const auto TB_INVALID = int(255);
+const auto TB_NOT_FOUND = int(-1);
+const auto TB_MAX_PLIES = int(252);
+const auto TB_MAX_PIECES = int(5);
+const auto TB_HEADER_SIZE = int(32);    // magic, version, signature, reserved
+const auto TB_SIGNATURE_SIZE = int(16);
+const auto TB_VERSION = std::uint32_t(1);
+const auto TB_PIECE_LETTERS = std::string_view(".RNBQKP"); // indexed by piece type
+const auto TB_PIECE_ORDER = std::array<int, 5>{W_QUEEN, W_ROOK, W_BISHOP, W_KNIGHT, W_PAWN};
+
+struct TablebaseLayout {
+    std::vector<std::pair<int, int>> order; // (side, piece type) in index order: both kings, then side 0, then side 1
+    bool hasPawns = false;
+    std::size_t size = 0;
+};
+
+// Slots of the first king's canonical squares, [hasPawns][square] and back
+struct KingSlots {
+    std::array<std::array<int, SQUARE_COUNT>, 2> slot{};
+    std::array<std::array<int, 32>, 2> square{};
+    std::array<int, 2> count{};
+
+    KingSlots() {
+        for (auto hasPawns = 0; hasPawns < 2; ++hasPawns) {
+            for (auto sq = 0; sq < SQUARE_COUNT; ++sq) {
+                auto row = sq / BOARD_SIZE;
+                auto col = sq % BOARD_SIZE;
+                auto canonical = hasPawns ? col < 4 : row < 4 && col < 4 && row <= col;
+                slot[hasPawns][sq] = canonical ? count[hasPawns] : -1;
+                if (canonical)
+                    square[hasPawns][count[hasPawns]++] = sq;
+            }
+        }
+    }
+};
+
+const auto kingSlots = KingSlots();
+
+using TablebaseSquares = std::array<int, TB_MAX_PIECES>;
+
+// Piece counts by color and type, four bits each
+auto materialKey(const Position& pos) -> Bitboard {
+    auto key = Bitboard(0);
+    for (auto color = 0; color < 2; ++color)
+        for (auto type = int(W_ROOK); type <= W_PAWN; ++type)
+            key |= Bitboard(std::popcount(pos.pieces[color][type])) << (4 * (color * 6 + type - 1));
+    return key;
 }
 
-JNIEXPORT jboolean JNICALL Java_ChessBoard_movePiece(JNIEnv*, jobject, jint fromX, jint fromY, jint toX, jint toY) {
-    return performMove(fromX, fromY, toX, toY) ? JNI_TRUE : JNI_FALSE; // return true or false whether move was legal
+auto flipMaterial(Bitboard key) -> Bitboard {
+    return (key >> 24) | ((key & 0xFFFFFF) << 24);
 }
 
-JNIEXPORT jobjectArray JNICALL Java_ChessBoard_getBoardState(JNIEnv* env, jobject) {
-    jclass intArrayClass = env->FindClass("[I"); // Find java int[] class
-    jobjectArray result = env->NewObjectArray(BOARD_SIZE, intArrayClass, NULL); // Create 2D array
+const auto KINGS_ONLY = (Bitboard(1) << (4 * (W_KING - 1))) | (Bitboard(1) << (4 * (6 + W_KING - 1)));
 
-    for (int i = 0; i < BOARD_SIZE; ++i) {
-        jintArray row = env->NewIntArray(BOARD_SIZE);
-        env->SetIntArrayRegion(row, 0, BOARD_SIZE, board[i].data()); // Copy data from C++ to Java
-        env->SetObjectArrayElement(result, i, row);
-        env->DeleteLocalRef(row);
+// Signatures look like "KQRvKP"; the side before the 'v' plays white in the table
+auto parseSignature(std::string_view signature, TablebaseLayout& layout, Bitboard& material) -> bool {
+    auto split = signature.find('v');
+    if (split == std::string_view::npos)
+        return false;
+    auto sides = std::array<std::string_view, 2>{signature.substr(0, split), signature.substr(split + 1)};
+    auto counts = std::array<std::array<int, 7>, 2>{};
+    for (auto side = 0; side < 2; ++side) {
+        if (sides[side].empty() || sides[side][0] != 'K')
+            return false;
+        for (auto letter : sides[side].substr(1)) {
+            auto type = TB_PIECE_LETTERS.find(letter);
+            if (type == std::string_view::npos || type == 0 || type == W_KING)
+                return false;
+            ++counts[side][type];
+        }
     }
-    return result;
+
+    layout = TablebaseLayout();
+    layout.order = {{0, W_KING}, {1, W_KING}};
+    material = KINGS_ONLY;
+    for (auto side = 0; side < 2; ++side) {
+        for (auto type : TB_PIECE_ORDER) {
+            for (auto i = 0; i < counts[side][type]; ++i)
+                layout.order.emplace_back(side, type);
+            material += Bitboard(counts[side][type]) << (4 * (side * 6 + type - 1));
+        }
+    }
+    if (layout.order.size() > std::size_t(TB_MAX_PIECES))
+        return false;
+    layout.hasPawns = counts[0][W_PAWN] + counts[1][W_PAWN] > 0;
+    layout.size = std::size_t(kingSlots.count[layout.hasPawns]) * 2;
+    for (auto i = std::size_t(1); i < layout.order.size(); ++i)
+        layout.size *= SQUARE_COUNT;
+    return true;
 }
 
-JNIEXPORT jboolean JNICALL Java_ChessBoard_isInCheck(JNIEnv*, jobject) {
-    return isInCheck(isWhiteTurn) ? JNI_TRUE : JNI_FALSE;
+// Mirrors all squares so that the first king lands in its canonical region. Pawn tables only mirror files.
+auto canonicalSquares(TablebaseSquares& squares, int count, bool hasPawns) -> void {
+    auto mask = (squares[0] % BOARD_SIZE > 3 ? 7 : 0) | (!hasPawns && squares[0] / BOARD_SIZE > 3 ? 56 : 0);
+    auto king = squares[0] ^ mask;
+    auto transpose = !hasPawns && king / BOARD_SIZE > king % BOARD_SIZE;
+    for (auto i = 0; i < count; ++i) {
+        squares[i] ^= mask;
+        if (transpose)
+            squares[i] = (squares[i] % BOARD_SIZE) * BOARD_SIZE + squares[i] / BOARD_SIZE;
+    }
 }
 
-JNIEXPORT jboolean JNICALL Java_ChessBoard_isCheckmate(JNIEnv*, jobject, jboolean checkWhite) {
-    bool isWhiteInCheckmate = isCheckmate(checkWhite == JNI_TRUE);
-    return isWhiteInCheckmate ? JNI_TRUE : JNI_FALSE;
+// Index of the position in the table; a flipped table sees the colors swapped and the board upside down
+auto tablebaseIndex(const TablebaseLayout& layout, const Position& pos, int color, bool flipped) -> std::size_t {
+    auto remaining = pos.pieces;
+    auto squares = TablebaseSquares();
+    auto count = int(layout.order.size());
+    for (auto i = 0; i < count; ++i) {
+        auto [side, type] = layout.order[i];
+        auto square = popLsb(remaining[flipped ? side ^ 1 : side][type]);
+        squares[i] = flipped ? square ^ 56 : square;
+    }
+    canonicalSquares(squares, count, layout.hasPawns);
+
+    auto index = std::size_t(kingSlots.slot[layout.hasPawns][squares[0]]);
+    for (auto i = 1; i < count; ++i)
+        index = index * SQUARE_COUNT + squares[i];
+    return index * 2 + (flipped ? color ^ 1 : color);
 }
 
-JNIEXPORT void JNICALL Java_ChessBoard_setBoardState(JNIEnv* env, jobject, jobjectArray newBoard, jboolean jIsWhiteTurn) {
-    for (int i = 0; i < BOARD_SIZE; ++i) {
-        jintArray row = (jintArray)env->GetObjectArrayElement(newBoard, i); // Retreive each row from Java
-        jint* rowElements = env->GetIntArrayElements(row, 0);
-        for (int j = 0; j < BOARD_SIZE; ++j)
-            board[i][j] = rowElements[j]; // copy elements to the C++ board
-        env->ReleaseIntArrayElements(row, rowElements, 0);
-        env->DeleteLocalRef(row);
+struct Tablebase {
+    TablebaseLayout layout;
+    Bitboard material = 0;
+    const std::uint8_t* values = nullptr; // memory-mapped by the Java side, which keeps the mapping alive
+};
+
+const auto MAX_TABLEBASES = int(1024);
+
+// Slots are filled under the lock and published by raising the count, so probes never lock
+auto tablebases = std::array<Tablebase, MAX_TABLEBASES>();
+std::atomic<int> tablebaseCount{0};
+std::atomic<int> tablebaseMaxPieces{0};
+auto tablebaseMutex = std::mutex();
+
+// Value from the registered tables regardless of the piece count, or TB_NOT_FOUND
+auto probeRegistered(const Position& pos, int color) -> int {
+    auto material = materialKey(pos);
+    if (material == KINGS_ONLY)
+        return TB_DRAW;
+    auto flippedMaterial = flipMaterial(material);
+    auto count = tablebaseCount.load(std::memory_order_acquire);
+    for (auto i = 0; i < count; ++i) {
+        const auto& table = tablebases[i];
+        if (table.material == material || table.material == flippedMaterial)
+            return table.values[tablebaseIndex(table.layout, pos, color, table.material != material)];
     }
-    isWhiteTurn = (jIsWhiteTurn == JNI_TRUE); //set turn based on Java
-    gameOver = false;
+    return TB_NOT_FOUND;
 }
 
+auto probeTablebase(const Position& pos, int color) -> int {
+    auto maxPieces = tablebaseMaxPieces.load(std::memory_order_relaxed);
+    if (maxPieces == 0 || std::popcount(occupied(pos)) > maxPieces)
+        return TB_NOT_FOUND;
+    return probeRegistered(pos, color);
+}
 
-JNIEXPORT jboolean JNICALL Java_ChessBoard_isWhiteTurn(JNIEnv*, jobject) {
-    return isWhiteTurn ? JNI_TRUE : JNI_FALSE;
+auto isDecisive(int value) -> bool {
+    return value > TB_DRAW && value < TB_STALEMATE;
 }
 
-JNIEXPORT jboolean JNICALL Java_ChessBoard_isStalemate(JNIEnv*, jobject, jboolean checkWhite) {
-    return isStalemate(checkWhite == JNI_TRUE) ? JNI_TRUE : JNI_FALSE;
+// Plies to mate of a decisive value; odd when the side to move wins
+auto pliesToMate(int value) -> int {
+    return value - 1;
 }
 
-JNIEXPORT jintArray JNICALL Java_ChessBoard_getCurrentScore(JNIEnv* env, jobject) {
-    jintArray scoreArray = env->NewIntArray(2);
-    jint scores[2] = {whiteScore, blackScore};
-    env->SetIntArrayRegion(scoreArray, 0, 2, scores);
-    return scoreArray;
+// Builds one table by scanning all positions once per ply: a position is won in n plies once a move reaches a
+// position lost in n - 1, and lost in n once every move reaches a won one, the longest in n - 1. Captures and
+// promotions leave the table and are looked up in the registered tables, which must hold every such ending.
+struct TablebaseGenerator {
+    TablebaseLayout layout;
+    std::vector<std::uint8_t> values;
+    int threads = 1;
+    std::atomic<int> longestExternal{0};
+    std::atomic<bool> missingTable{false};
+
+    auto load(std::size_t index) -> int {
+        return std::atomic_ref(values[index]).load(std::memory_order_relaxed);
+    }
+
+    auto store(std::size_t index, int value) -> void {
+        std::atomic_ref(values[index]).store(std::uint8_t(value), std::memory_order_relaxed);
+    }
+
+    // Sets up the position of an index; false for overlapping pieces or pawns on the first or last rank
+    auto decode(std::size_t index, Position& pos, int& color) const -> bool {
+        auto count = int(layout.order.size());
+        auto squares = TablebaseSquares();
+        color = int(index & 1);
+        index >>= 1;
+        for (auto i = count - 1; i >= 1; --i) {
+            squares[i] = int(index % SQUARE_COUNT);
+            index /= SQUARE_COUNT;
+        }
+        squares[0] = kingSlots.square[layout.hasPawns][index];
+
+        pos = Position();
+        for (auto i = 0; i < count; ++i) {
+            auto [side, type] = layout.order[i];
+            auto row = squares[i] / BOARD_SIZE;
+            if (pos.squares[squares[i]] != EMPTY || (type == W_PAWN && (row == 0 || row == BOARD_SIZE - 1)))
+                return false;
+            putPiece(pos, squares[i], side == WHITE ? type : -type);
+        }
+        return true;
+    }
+
+    auto successorValue(const Position& pos, int color, bool leavesTable) -> int {
+        if (!leavesTable)
+            return load(tablebaseIndex(layout, pos, color, false));
+        auto value = probeRegistered(pos, color);
+        if (value == TB_NOT_FOUND)
+            missingTable.store(true, std::memory_order_relaxed);
+        return value;
+    }
+
+    // Marks positions that cannot occur, checkmates and stalemates; true for a checkmate
+    auto classify(std::size_t index) -> bool {
+        auto pos = Position();
+        auto color = 0;
+        if (!decode(index, pos, color) || isInCheck(pos, color != WHITE)) {
+            store(index, TB_INVALID);
+        } else if (!hasLegalMove(pos, color == WHITE)) {
+            auto mated = isInCheck(pos, color == WHITE);
+            store(index, mated ? 1 : TB_STALEMATE);
+            return mated;
+        }
+        return false;
+    }
+
+    auto resolve(std::size_t index, int ply) -> bool {
+        if (load(index) != TB_DRAW)
+            return false;
+        auto pos = Position();
+        auto color = 0;
+        decode(index, pos, color);
+
+        auto list = MoveList();
+        generateLegalMoves(pos, color, list);
+        auto fastestWin = INFINITE_PLIES;
+        auto slowestLoss = 0;
+        auto allLose = true;
+        for (auto i = 0; i < list.size; ++i) {
+            auto move = list.moves[i];
+            auto captured = makeMove(pos, move);
+            auto leavesTable = captured != EMPTY || movePromotion(move) != 0;
+            auto value = successorValue(pos, color ^ 1, leavesTable);
+            unmakeMove(pos, move, captured);
+            if (!isDecisive(value)) {
+                allLose = false;
+                continue;
+            }
+            auto plies = pliesToMate(value) + 1;
+            if (leavesTable && ply == 1)
+                atomicMax(longestExternal, plies);
+            if (plies % 2 == 1) {
+                fastestWin = std::min(fastestWin, plies);
+                allLose = false;
+            } else {
+                slowestLoss = std::max(slowestLoss, plies);
+            }
+        }
+        if (fastestWin <= ply) {
+            store(index, fastestWin + 1);
+            return true;
+        }
+        if (allLose && slowestLoss <= ply) {
+            store(index, slowestLoss + 1);
+            return true;
+        }
+        return false;
+    }
+
+    static auto atomicMax(std::atomic<int>& target, int value) -> void {
+        auto current = target.load(std::memory_order_relaxed);
+        while (current < value && !target.compare_exchange_weak(current, value, std::memory_order_relaxed)) {
+        }
+    }
+
+    static const auto INFINITE_PLIES = int(1 << 20);
+    static const auto CHUNK = std::size_t(4096);
+
+    // Runs step over every index on all threads; true if any call returned true
+    template <typename Step>
+    auto pass(Step&& step) -> bool {
+        auto next = std::atomic<std::size_t>(0);
+        auto changed = std::atomic<bool>(false);
+        auto work = [&] {
+            auto local = false;
+            for (auto start = next.fetch_add(CHUNK); start < values.size(); start = next.fetch_add(CHUNK)) {
+                auto end = std::min(start + CHUNK, values.size());
+                for (auto index = start; index < end; ++index)
+                    local |= step(index);
+            }
+            if (local)
+                changed.store(true);
+        };
+        auto workers = std::vector<std::thread>();
+        for (auto i = 1; i < threads; ++i)
+            workers.emplace_back(work);
+        work();
+        for (auto& worker : workers)
+            worker.join();
+        return changed.load();
+    }
+
+    // Empty on success, otherwise what went wrong
+    auto generate() -> std::string {
+        values.assign(layout.size, std::uint8_t(TB_DRAW));
+        pass([this](std::size_t index) { return classify(index); });
+        for (auto ply = 1; ply <= TB_MAX_PLIES; ++ply) {
+            auto changed = pass([this, ply](std::size_t index) { return resolve(index, ply); });
+            if (missingTable.load())
+                return "a capture or promotion leads to an ending without a registered tablebase";
+            if (!changed && ply >= longestExternal.load())
+                return "";
+        }
+        return "distance to mate exceeds " + std::to_string(TB_MAX_PLIES) + " plies";
+    }
+};
+
+
+// Once the game is over the turn belongs to the side that moved last, so the other side is to move
+// in the position on the board
+auto isStatusSideWhite(const Game& game) -> bool {
+    return game.gameOver ? !game.isWhiteTurn : game.isWhiteTurn;
+}
+
+auto gameKey(const Game& game) -> Bitboard {
+    return positionKey(game.position, isStatusSideWhite(game) ? WHITE : BLACK);
+}
+
+// Drops moves, repetition counts and the fifty-move count; the current position becomes the first one
+auto clearHistory(Game& game) -> void {
+    game.history.clear();
+    game.historyLength = 0;
+    game.repetitions.clear();
+    game.repetitions[gameKey(game)] = 1;
+    game.halfmoveClock = 0;
+}
+
+auto forgetPosition(Game& game) -> void {
+    auto entry = game.repetitions.find(gameKey(game));
+    if (entry != game.repetitions.end() && --entry->second == 0)
+        game.repetitions.erase(entry);
+}
+
+// Plays a move already known to be legal: capture scoring, automatic promotion to a queen, the turn
+// change and a history record, so the move can be undone without copying the board
+auto doMove(Game& game, Move move) -> void {
+    auto& position = game.position;
+    auto record = MoveRecord{move, EMPTY, game.whiteScore, game.blackScore, game.isWhiteTurn, game.gameOver, game.status, game.halfmoveClock};
+    auto isPawn = abs(position.squares[moveFrom(move)]) == W_PAWN;
+    record.captured = makeMove(position, move);
+
+    if (record.captured != EMPTY) {
+        auto capturedValue = getPieceValue(record.captured);
+        if (capturedValue > 0)
+            game.blackScore += capturedValue;
+        else
+            game.whiteScore += -capturedValue;
+    }
+    if (movePromotion(move) != 0) {
+        if (game.isWhiteTurn)
+            game.whiteScore += PIECE_VALUES[movePromotion(move)];
+        else
+            game.blackScore += PIECE_VALUES[movePromotion(move)];
+    }
+
+    if (game.historyLength == game.history.size())
+        game.history.push_back(record);
+    else
+        game.history[game.historyLength] = record;
+    ++game.historyLength;
+
+    game.isWhiteTurn = !game.isWhiteTurn;
+    game.status = STATUS_UNKNOWN;
+    game.halfmoveClock = isPawn || record.captured != EMPTY ? 0 : game.halfmoveClock + 1;
+    ++game.repetitions[gameKey(game)];
+}
+
+// A new move discards whatever could have been redone. promotion is the piece a pawn reaching the last
+// rank becomes and is ignored for every other move.
+auto playMove(Game& game, int from, int to, int promotion = W_QUEEN) -> void {
+    auto color = game.isWhiteTurn ? WHITE : BLACK;
+    auto isPawn = abs(game.position.squares[from]) == W_PAWN;
+    promotion = isPawn && isPromotionSquare(to, color) ? promotion : EMPTY;
+    game.history.resize(game.historyLength);
+    doMove(game, packMove(from, to, promotion));
+}
+
+auto undoMove(Game& game) -> bool {
+    if (game.historyLength == 0)
+        return false;
+    forgetPosition(game);
+    const auto& record = game.history[--game.historyLength];
+    unmakeMove(game.position, record.move, record.captured);
+    game.whiteScore = record.whiteScore;
+    game.blackScore = record.blackScore;
+    game.isWhiteTurn = record.isWhiteTurn;
+    game.gameOver = record.gameOver;
+    game.status = record.status;
+    game.halfmoveClock = record.halfmoveClock;
+    return true;
+}
+
+// Threefold repetition and the fifty-move rule, both O(1) thanks to the counters kept by doMove
+auto isDrawByRule(const Game& game) -> bool {
+    if (game.halfmoveClock >= FIFTY_MOVE_PLIES)
+        return true;
+    auto entry = game.repetitions.find(gameKey(game));
+    return entry != game.repetitions.end() && entry->second >= 3;
+}
+
+// A mate on the move that reaches a draw by rule still counts as mate
+auto computeStatus(const Game& game, bool isWhite) -> GameStatus {
+    const auto& position = game.position;
+    auto inCheck = isInCheck(position, isWhite);
+    // A tablebase knows whether the side to move is mated or stalemated without walking its moves
+    auto value = probeTablebase(position, isWhite ? WHITE : BLACK);
+    auto hasMove = value == TB_NOT_FOUND ? hasLegalMove(position, isWhite) : value != 1 && value != TB_STALEMATE;
+    if (hasMove) {
+        if (isDrawByRule(game))
+            return game.halfmoveClock >= FIFTY_MOVE_PLIES ? STATUS_DRAW_FIFTY_MOVES : STATUS_DRAW_REPETITION;
+        return inCheck ? STATUS_CHECK : STATUS_ONGOING;
+    }
+    if (!inCheck)
+        return STATUS_STALEMATE;
+    return isWhite ? STATUS_CHECKMATE_BLACK_WINS : STATUS_CHECKMATE_WHITE_WINS;
+}
+
+auto gameStatus(Game& game) -> GameStatus {
+    if (game.status == STATUS_UNKNOWN)
+        game.status = computeStatus(game, isStatusSideWhite(game));
+    return game.status;
+}
+
+// Checkmate, stalemate or a draw by rule ends the game; the turn then stays with the side that moved last
+auto updateGameOver(Game& game) -> void {
+    game.status = computeStatus(game, game.isWhiteTurn);
+    if (game.status != STATUS_ONGOING && game.status != STATUS_CHECK) {
+        game.gameOver = true;
+        game.isWhiteTurn = !game.isWhiteTurn;
+    }
+}
+
+auto redoMove(Game& game) -> bool {
+    if (game.historyLength == game.history.size())
+        return false;
+    doMove(game, game.history[game.historyLength].move);
+    updateGameOver(game);
+    return true;
+}
+
+// movePiece promotes to a queen; a piece the player picks afterwards becomes part of the last move, and the
+// mover's score counts that piece instead, as a redo of the move would. Returns false when the edit is not
+// such a choice.
+auto amendLastPromotion(Game& game, int square, jint piece) -> bool {
+    if (game.historyLength == 0)
+        return false;
+    auto& record = game.history[game.historyLength - 1];
+    auto promotion = abs(piece);
+    if (moveTo(record.move) != square || movePromotion(record.move) == 0
+        || promotion < W_ROOK || promotion > W_QUEEN || (piece > 0) != record.isWhiteTurn)
+        return false;
+    auto& score = record.isWhiteTurn ? game.whiteScore : game.blackScore;
+    score += PIECE_VALUES[promotion] - PIECE_VALUES[movePromotion(record.move)];
+    record.move = packMove(moveFrom(record.move), square, promotion);
+    game.history.resize(game.historyLength);
+    return true;
+}
+
+auto performMove(Game& game, int fromX, int fromY, int toX, int toY) -> bool {
+    if (game.gameOver || !isMoveLegal(game.position, fromX, fromY, toX, toY, game.isWhiteTurn))
+        return false;
+
+    playMove(game, fromX * BOARD_SIZE + fromY, toX * BOARD_SIZE + toY);
+    updateGameOver(game);
+    return true;
+}
+
+// Plays moves[0..count) and returns the index of the first one that could not be played, or -1.
+// Mate and stalemate leave no legal moves, so the full end-of-game test only runs once at the end;
+// draws by rule are cheap to spot and are checked after every move.
+// A pawn reaching the last rank becomes the piece in the promotion bits, or a queen when they are empty;
+// promotion bits on any other move, or naming a pawn or king, make the move illegal.
+// Trusted mode skips legality checks. It still requires a piece of the side to move on the from square and
+// refuses to capture a piece of its own or a king, which would corrupt the board rather than just the game.
+auto applyMoves(Game& game, const jint* moves, int count, bool trusted) -> int {
+    auto rejected = -1;
+    for (auto i = 0; i < count && rejected == -1; ++i) {
+        auto from = moveFrom(moves[i]);
+        auto to = moveTo(moves[i]);
+        auto color = game.isWhiteTurn ? WHITE : BLACK;
+        auto promotes = abs(game.position.squares[from]) == W_PAWN && isPromotionSquare(to, color);
+        auto promotion = movePromotion(moves[i]);
+        auto target = game.position.squares[to];
+        auto playable = !game.gameOver && (game.position.colors[color] & squareBit(from))
+                        && (promotes ? promotion <= W_QUEEN : promotion == EMPTY)
+                        && !(game.position.colors[color] & squareBit(to)) && abs(target) != W_KING
+                        && (trusted || ((pieceTargets(game.position, from) & squareBit(to)) && leavesKingSafe(game.position, from, to, color)));
+        if (playable) {
+            playMove(game, from, to, promotion == EMPTY ? W_QUEEN : promotion);
+            if (isDrawByRule(game))
+                updateGameOver(game);
+        } else {
+            rejected = i;
+        }
+    }
+    if (count > 0 && !game.gameOver)
+        updateGameOver(game);
+    return rejected;
+}
+
+const auto MATE_SCORE = int(100000);
+const auto INFINITE_SCORE = int(1000000);
+const auto CLOCK_CHECK_INTERVAL = std::uint64_t(1024);
+// Longer budgets, such as Long.MAX_VALUE, mean no deadline; adding them to the clock would overflow
+const auto MAX_TIME_BUDGET_MILLIS = jlong(365) * 24 * 60 * 60 * 1000;
+
+struct SearchResult {
+    Move bestMove = NO_MOVE;
+    int score = 0;
+    std::uint64_t nodes = 0;
+    int depth = 0;
+};
+
+// What every thread of one search shares; everything else is per thread
+struct SharedSearch {
+    TranspositionTable& table;
+    std::atomic<bool>& stop;
+    bool hasDeadline = false;
+    std::chrono::steady_clock::time_point deadline;
+};
+
+struct ProgressReporter;
+
+struct SearchState {
+    SharedSearch& shared;
+    std::uint64_t nodes = 0;
+    bool canStop = false; // the main thread always completes depth 1 so there is a move to return
+    bool stopped = false;
+    ProgressReporter* progress = nullptr; // main thread only
+    std::array<std::array<Move, 2>, MAX_PLY> killers{};
+    std::array<std::array<std::array<int, SQUARE_COUNT>, SQUARE_COUNT>, 2> history{}; // [color][from][to]
+};
+
+const auto MOBILITY_WEIGHTS = std::array<int, 7>{0, 2, 4, 5, 1, 0, 0};
+const auto KING_ZONE_ATTACK_BONUS = int(6);
+const auto KING_SHIELD_BONUS = int(10);
+const auto DOUBLED_PAWN_PENALTY = int(10);
+const auto ISOLATED_PAWN_PENALTY = int(12);
+const auto PASSED_PAWN_BONUS = std::array<int, BOARD_SIZE>{0, 90, 60, 35, 20, 10, 5, 0}; // by rows left to promotion
+
+// Terms that depend on more than one piece and so are computed from scratch for one side:
+// mobility, pressure on the enemy king, the pawn shield and pawn structure. Returns {middlegame, endgame}.
+auto evaluateSide(const Position& pos, int color) -> std::array<int, 2> {
+    auto middlegame = 0;
+    auto endgame = 0;
+    auto occupancy = occupied(pos);
+    auto enemy = color ^ 1;
+    auto enemyKing = pos.pieces[enemy][W_KING];
+    auto enemyKingZone = enemyKing ? attackTables.king[std::countr_zero(enemyKing)] : Bitboard(0);
+
+    for (auto type = int(W_ROOK); type <= W_QUEEN; ++type) {
+        auto pieces = pos.pieces[color][type];
+        while (pieces) {
+            auto square = popLsb(pieces);
+            auto attacks = type == W_KNIGHT ? attackTables.knight[square]
+                         : type == W_ROOK   ? rookAttacks(square, occupancy)
+                         : type == W_BISHOP ? bishopAttacks(square, occupancy)
+                                            : rookAttacks(square, occupancy) | bishopAttacks(square, occupancy);
+            auto mobility = MOBILITY_WEIGHTS[type] * std::popcount(attacks & ~pos.colors[color]);
+            middlegame += mobility + KING_ZONE_ATTACK_BONUS * std::popcount(attacks & enemyKingZone);
+            endgame += mobility;
+        }
+    }
+
+    auto king = pos.pieces[color][W_KING];
+    auto pawns = pos.pieces[color][W_PAWN];
+    if (king) {
+        auto square = std::countr_zero(king);
+        auto ahead = square + (color == WHITE ? -BOARD_SIZE : BOARD_SIZE);
+        auto shield = attackTables.pawn[color][square] | (ahead >= 0 && ahead < SQUARE_COUNT ? squareBit(ahead) : 0);
+        middlegame += KING_SHIELD_BONUS * std::popcount(pawns & shield);
+    }
+
+    for (auto col = 0; col < BOARD_SIZE; ++col) {
+        auto onFile = std::popcount(pawns & evaluationTables.files[col]);
+        if (onFile > 1) {
+            middlegame -= DOUBLED_PAWN_PENALTY * (onFile - 1);
+            endgame -= DOUBLED_PAWN_PENALTY * (onFile - 1);
+        }
+    }
+    auto remaining = pawns;
+    while (remaining) {
+        auto square = popLsb(remaining);
+        auto col = square % BOARD_SIZE;
+        if (!(pawns & evaluationTables.adjacentFiles[col])) {
+            middlegame -= ISOLATED_PAWN_PENALTY;
+            endgame -= ISOLATED_PAWN_PENALTY;
+        }
+        if (!(pos.pieces[enemy][W_PAWN] & evaluationTables.passedPawn[color][square])) {
+            auto row = square / BOARD_SIZE;
+            auto bonus = PASSED_PAWN_BONUS[color == WHITE ? row : BOARD_SIZE - 1 - row];
+            middlegame += bonus / 2;
+            endgame += bonus;
+        }
+    }
+    return {middlegame, endgame};
+}
+
+// Static evaluation in centipawns from the point of view of color. Material and piece-square terms
+// come straight from the incrementally kept Position::psqt; the result is tapered by game phase.
+auto evaluate(const Position& pos, int color) -> int {
+    auto own = evaluateSide(pos, color);
+    auto other = evaluateSide(pos, color ^ 1);
+    auto sign = color == WHITE ? 1 : -1;
+    auto middlegame = sign * pos.psqt[MIDDLEGAME] + own[MIDDLEGAME] - other[MIDDLEGAME];
+    auto endgame = sign * pos.psqt[ENDGAME] + own[ENDGAME] - other[ENDGAME];
+    auto phase = std::min(pos.phase, MAX_PHASE);
+    return (middlegame * phase + endgame * (MAX_PHASE - phase)) / MAX_PHASE;
+}
+
+auto shouldStop(SearchState& state) -> bool {
+    if (state.stopped || !state.canStop)
+        return state.stopped;
+    if (state.shared.stop.load(std::memory_order_relaxed)) {
+        state.stopped = true;
+    } else if (state.shared.hasDeadline && state.nodes % CLOCK_CHECK_INTERVAL == 0
+               && std::chrono::steady_clock::now() >= state.shared.deadline) {
+        state.stopped = true;
+        state.shared.stop.store(true, std::memory_order_relaxed);
+    }
+    return state.stopped;
+}
+
+// Mate scores are stored relative to the node so they stay valid wherever the position recurs
+auto scoreToTable(int score, int ply) -> int {
+    return score >= MATE_SCORE - MAX_PLY ? score + ply : score <= -MATE_SCORE + MAX_PLY ? score - ply : score;
+}
+
+auto scoreFromTable(int score, int ply) -> int {
+    return score >= MATE_SCORE - MAX_PLY ? score - ply : score <= -MATE_SCORE + MAX_PLY ? score + ply : score;
+}
+
+// Exact score of a tablebase position, mates counted from the root like the search's own
+auto tablebaseScore(int value, int ply) -> int {
+    if (!isDecisive(value))
+        return 0;
+    auto plies = ply + pliesToMate(value);
+    return pliesToMate(value) % 2 == 1 ? MATE_SCORE - plies : -MATE_SCORE + plies;
+}
+
+auto isTactical(const Position& pos, Move move) -> bool {
+    return pos.squares[moveTo(move)] != EMPTY || movePromotion(move) != 0;
+}
+
+// Ordering: hash move, captures by MVV-LVA, promotions, killers and finally the history heuristic
+auto scoreMoves(const SearchState& state, const Position& pos, int color, int ply, Move hashMove, const MoveList& list, std::array<int, MAX_MOVES>& scores) -> void {
+    for (auto i = 0; i < list.size; ++i) {
+        auto move = list.moves[i];
+        auto victim = pos.squares[moveTo(move)];
+        if (move == hashMove)
+            scores[i] = 2000000;
+        else if (victim != EMPTY)
+            scores[i] = 1000000 + PIECE_VALUES[abs(victim)] * 16 - PIECE_VALUES[abs(pos.squares[moveFrom(move)])];
+        else if (movePromotion(move))
+            scores[i] = 900000;
+        else if (ply < MAX_PLY && move == state.killers[ply][0])
+            scores[i] = 800000;
+        else if (ply < MAX_PLY && move == state.killers[ply][1])
+            scores[i] = 790000;
+        else
+            scores[i] = state.history[color][moveFrom(move)][moveTo(move)];
+    }
+}
+
+// Selection sort step: brings the best remaining move to index and returns it
+auto pickMove(MoveList& list, std::array<int, MAX_MOVES>& scores, int index) -> Move {
+    auto best = index;
+    for (auto i = index + 1; i < list.size; ++i)
+        if (scores[i] > scores[best])
+            best = i;
+    std::swap(list.moves[index], list.moves[best]);
+    std::swap(scores[index], scores[best]);
+    return list.moves[index];
+}
+
+auto rememberQuietCutoff(SearchState& state, int color, int ply, int depth, Move move) -> void {
+    if (ply < MAX_PLY && state.killers[ply][0] != move) {
+        state.killers[ply][1] = state.killers[ply][0];
+        state.killers[ply][0] = move;
+    }
+    auto& counter = state.history[color][moveFrom(move)][moveTo(move)];
+    counter += depth * depth;
+    if (counter > 500000)
+        for (auto& fromRow : state.history[color])
+            for (auto& value : fromRow)
+                value /= 2;
+}
+
+auto quiescence(SearchState& state, Position& pos, int color, int ply, int alpha, int beta) -> int {
+    ++state.nodes;
+    if (shouldStop(state))
+        return 0;
+
+    auto tablebaseValue = probeTablebase(pos, color);
+    if (tablebaseValue != TB_NOT_FOUND)
+        return tablebaseScore(tablebaseValue, ply);
+
+    auto inCheck = isInCheck(pos, color == WHITE);
+    auto standPat = evaluate(pos, color);
+    if (!inCheck) {
+        if (standPat >= beta || ply >= MAX_PLY - 1)
+            return standPat;
+        alpha = std::max(alpha, standPat);
+    }
+
+    auto list = MoveList();
+    generateLegalMoves(pos, color, list);
+    if (list.size == 0)
+        return inCheck ? -MATE_SCORE + ply : 0;
+    if (ply >= MAX_PLY - 1)
+        return standPat;
+
+    auto scores = std::array<int, MAX_MOVES>();
+    scoreMoves(state, pos, color, ply, NO_MOVE, list, scores);
+
+    // In check every evasion is searched, otherwise only captures and promotions
+    auto best = inCheck ? -INFINITE_SCORE : standPat;
+    for (auto i = 0; i < list.size; ++i) {
+        auto move = pickMove(list, scores, i);
+        if (!inCheck && !isTactical(pos, move))
+            continue;
+
+        auto captured = makeMove(pos, move);
+        auto score = -quiescence(state, pos, color ^ 1, ply + 1, -beta, -alpha);
+        unmakeMove(pos, move, captured);
+        if (state.stopped)
+            return 0;
+        if (score > best) {
+            best = score;
+            alpha = std::max(alpha, score);
+            if (alpha >= beta)
+                break;
+        }
+    }
+    return best;
+}
+
+auto negamax(SearchState& state, Position& pos, int color, int depth, int ply, int alpha, int beta) -> int {
+    auto inCheck = isInCheck(pos, color == WHITE);
+    if (inCheck)
+        ++depth; // check extension
+    if (depth <= 0 || ply >= MAX_PLY - 1)
+        return quiescence(state, pos, color, ply, alpha, beta);
+
+    ++state.nodes;
+    if (shouldStop(state))
+        return 0;
+
+    auto tablebaseValue = probeTablebase(pos, color);
+    if (tablebaseValue != TB_NOT_FOUND)
+        return tablebaseScore(tablebaseValue, ply);
+
+    auto key = positionKey(pos, color);
+    auto hashMove = NO_MOVE;
+    auto entry = std::uint64_t(0);
+    count(COUNTER_TT_PROBES);
+    if (state.shared.table.probe(key, entry)) {
+        count(COUNTER_TT_HITS);
+        hashMove = Move(entry & 0xFFFF);
+        auto entryDepth = int((entry >> 48) & 127);
+        auto entryBound = int((entry >> 55) & 3);
+        auto entryScore = scoreFromTable(std::int32_t(std::uint32_t(entry >> 16)), ply);
+        if (entryDepth >= depth && ((entryBound == BOUND_EXACT)
+                                    || (entryBound == BOUND_LOWER && entryScore >= beta)
+                                    || (entryBound == BOUND_UPPER && entryScore <= alpha)))
+            return entryScore;
+    }
+
+    auto list = MoveList();
+    generateLegalMoves(pos, color, list);
+    if (list.size == 0)
+        return inCheck ? -MATE_SCORE + ply : 0;
+
+    auto scores = std::array<int, MAX_MOVES>();
+    scoreMoves(state, pos, color, ply, hashMove, list, scores);
+
+    auto originalAlpha = alpha;
+    auto best = -INFINITE_SCORE;
+    auto bestMove = NO_MOVE;
+    for (auto i = 0; i < list.size; ++i) {
+        auto move = pickMove(list, scores, i);
+        auto captured = makeMove(pos, move);
+        auto score = -negamax(state, pos, color ^ 1, depth - 1, ply + 1, -beta, -alpha);
+        unmakeMove(pos, move, captured);
+        if (state.stopped)
+            return 0;
+        if (score > best) {
+            best = score;
+            bestMove = move;
+            if (score > alpha) {
+                alpha = score;
+                if (alpha >= beta) {
+                    if (!isTactical(pos, move))
+                        rememberQuietCutoff(state, color, ply, depth, move);
+                    break;
+                }
+            }
+        }
+    }
+
+    auto bound = best >= beta ? BOUND_LOWER : best > originalAlpha ? BOUND_EXACT : BOUND_UPPER;
+    state.shared.table.store(key, bestMove, scoreToTable(best, ply), depth, bound);
+    return best;
+}
+
+// Iterative deepening over the root moves starting at startDepth. Only fully completed
+// iterations are reported. Each thread makes and unmakes moves on its own copy of the position.
+// Best line from the root as far as the table still holds it; every move is checked for legality
+// because a racing thread may have replaced an entry on the way
+auto principalVariation(const TranspositionTable& table, Position pos, int color, Move first, Move* line, int maxLength) -> int {
+    auto length = 0;
+    auto move = first;
+    while (move != NO_MOVE && length < maxLength) {
+        auto legal = MoveList();
+        generateLegalMoves(pos, color, legal);
+        if (std::find(legal.moves.begin(), legal.moves.begin() + legal.size, move) == legal.moves.begin() + legal.size)
+            break;
+        line[length++] = move;
+        makeMove(pos, move);
+        color ^= 1;
+        auto data = std::uint64_t(0);
+        move = table.probe(positionKey(pos, color), data) ? Move(data & 0xFFFF) : NO_MOVE;
+    }
+    return length;
+}
+
+// Hands the main thread's completed iterations to the caller in batches: the first one right away and then
+// at most one batch per PROGRESS_INTERVAL, so fast early iterations share a crossing back into Java.
+// Each record is depth, score, nodes, elapsed milliseconds, the line's length and its moves.
+// The sink returns false to stop the search.
+using ProgressSink = std::function<bool(const std::vector<jlong>&)>;
+
+const auto PROGRESS_INTERVAL = std::chrono::milliseconds(50);
+
+struct ProgressReporter {
+    const ProgressSink& sink;
+    std::chrono::steady_clock::time_point start = std::chrono::steady_clock::now();
+    std::chrono::steady_clock::time_point lastFlush{};
+    std::vector<jlong> batch;
+
+    explicit ProgressReporter(const ProgressSink& sink) : sink(sink) {}
+
+    auto record(SearchState& state, const Position& root, int color, const SearchResult& result) -> void {
+        auto now = std::chrono::steady_clock::now();
+        auto line = std::array<Move, MAX_PLY>();
+        auto length = principalVariation(state.shared.table, root, color, result.bestMove, line.data(), result.depth);
+        batch.insert(batch.end(), {result.depth, result.score, jlong(state.nodes),
+                                   std::chrono::duration_cast<std::chrono::milliseconds>(now - start).count(), length});
+        batch.insert(batch.end(), line.begin(), line.begin() + length);
+        if (now - lastFlush >= PROGRESS_INTERVAL && !flush()) {
+            state.stopped = true;
+            state.shared.stop.store(true, std::memory_order_relaxed);
+        }
+    }
+
+    auto flush() -> bool {
+        if (batch.empty())
+            return true;
+        auto proceed = sink(batch);
+        batch.clear();
+        lastFlush = std::chrono::steady_clock::now();
+        return proceed;
+    }
+};
+
+auto searchIterations(SearchState& state, Position pos, int color, MoveList rootMoves, int startDepth, int maxDepth) -> SearchResult {
+    auto result = SearchResult();
+    for (auto depth = startDepth; depth <= maxDepth; ++depth) {
+        auto alpha = -INFINITE_SCORE;
+        auto bestIndex = 0;
+        for (auto i = 0; i < rootMoves.size && !state.stopped; ++i) {
+            auto captured = makeMove(pos, rootMoves.moves[i]);
+            auto score = -negamax(state, pos, color ^ 1, depth - 1, 1, -INFINITE_SCORE, -alpha);
+            unmakeMove(pos, rootMoves.moves[i], captured);
+            if (!state.stopped && score > alpha) {
+                alpha = score;
+                bestIndex = i;
+            }
+        }
+        if (state.stopped)
+            break;
+
+        // Searching the previous best move first gives the next iteration a tight bound straight away
+        std::rotate(rootMoves.moves.begin(), rootMoves.moves.begin() + bestIndex, rootMoves.moves.begin() + bestIndex + 1);
+        result.bestMove = rootMoves.moves[0];
+        result.score = alpha;
+        result.depth = depth;
+        state.canStop = true;
+        state.shared.table.store(positionKey(pos, color), result.bestMove, alpha, depth, BOUND_EXACT);
+        if (state.progress)
+            state.progress->record(state, pos, color, result);
+        if (state.stopped || abs(alpha) >= MATE_SCORE - MAX_PLY)
+            break;
+    }
+    return result;
+}
+
+// Plays perfectly from a tablebase position: the fastest win, the slowest loss or any draw. False if
+// some move leads to an ending without a table, in which case the search has to decide.
+auto tablebaseMove(const Position& root, int color, const MoveList& rootMoves, SearchResult& result) -> bool {
+    auto pos = root;
+    result.score = -INFINITE_SCORE;
+    for (auto i = 0; i < rootMoves.size; ++i) {
+        auto move = rootMoves.moves[i];
+        auto captured = makeMove(pos, move);
+        auto value = probeTablebase(pos, color ^ 1);
+        unmakeMove(pos, move, captured);
+        if (value == TB_NOT_FOUND)
+            return false;
+        auto score = -tablebaseScore(value, 1);
+        if (score > result.score) {
+            result.score = score;
+            result.bestMove = move;
+        }
+    }
+    result.nodes = rootMoves.size;
+    result.depth = 1;
+    return true;
+}
+
+// Lazy SMP: the calling thread and searchThreads - 1 helpers search the same root and share only the
+// transposition table. Helpers start at alternating depths to spread out; the calling thread's result
+// is reported and ends the helpers. maxDepth <= 0 means no depth limit and timeBudgetMillis <= 0, or
+// above MAX_TIME_BUDGET_MILLIS, no deadline. With one thread and no deadline the result is fully deterministic.
+auto findBestMove(Game& game, int color, int maxDepth, jlong timeBudgetMillis, const ProgressSink& progress = {}) -> SearchResult {
+    const auto& pos = game.position;
+    auto result = SearchResult();
+    if (maxDepth <= 0 || maxDepth >= MAX_PLY)
+        maxDepth = MAX_PLY - 1;
+
+    auto rootMoves = MoveList();
+    generateLegalMoves(pos, color, rootMoves);
+    if (rootMoves.size == 0) {
+        result.score = isInCheck(pos, color == WHITE) ? -MATE_SCORE : 0;
+        return result;
+    }
+
+    if (probeTablebase(pos, color) != TB_NOT_FOUND && tablebaseMove(pos, color, rootMoves, result))
+        return result;
+
+    if (!game.table)
+        game.table = std::make_unique<TranspositionTable>();
+    game.table->newSearch();
+    game.stopRequested.store(false);
+
+    auto hasDeadline = timeBudgetMillis > 0 && timeBudgetMillis <= MAX_TIME_BUDGET_MILLIS;
+    auto deadline = std::chrono::steady_clock::now() + std::chrono::milliseconds(hasDeadline ? timeBudgetMillis : 0);
+    auto shared = SharedSearch{*game.table, game.stopRequested, hasDeadline, deadline};
+
+    auto mainState = std::make_unique<SearchState>(shared);
+    auto reporter = ProgressReporter(progress);
+    if (progress)
+        mainState->progress = &reporter;
+    auto rootScores = std::array<int, MAX_MOVES>();
+    scoreMoves(*mainState, pos, color, 0, NO_MOVE, rootMoves, rootScores);
+    for (auto i = 0; i < rootMoves.size; ++i)
+        pickMove(rootMoves, rootScores, i);
+
+    auto helpers = std::vector<std::unique_ptr<SearchState>>();
+    auto workers = std::vector<std::thread>();
+    for (auto id = 1; id < game.searchThreads; ++id) {
+        helpers.push_back(std::make_unique<SearchState>(shared));
+        auto helper = helpers.back().get();
+        helper->canStop = true;
+        workers.emplace_back([helper, &pos, color, rootMoves, id, maxDepth] {
+            searchIterations(*helper, pos, color, rootMoves, 1 + (id & 1), maxDepth);
+        });
+    }
+
+    result = searchIterations(*mainState, pos, color, rootMoves, 1, maxDepth);
+    shared.stop.store(true);
+    reporter.flush();
+    for (auto& worker : workers)
+        worker.join();
+
+    result.nodes = mainState->nodes;
+    for (const auto& helper : helpers)
+        result.nodes += helper->nodes;
+    count(COUNTER_SEARCH_NODES, result.nodes);
+    return result;
+}
+
+// Snapshot layout, mirrored by the offsets in BoardSnapshot.java
+const auto SNAPSHOT_SIDE_TO_MOVE = int(64);
+const auto SNAPSHOT_GAME_OVER = int(65);
+const auto SNAPSHOT_IN_CHECK = int(66);
+const auto SNAPSHOT_STATUS = int(67);
+const auto SNAPSHOT_WHITE_SCORE = int(68);
+const auto SNAPSHOT_BLACK_SCORE = int(72);
+const auto SNAPSHOT_VERSION = int(76);
+const auto SNAPSHOT_SIZE = int(80);
+
+auto publishSnapshot(Game& game) -> void {
+    auto out = game.snapshot;
+    if (!out)
+        return;
+    for (auto square = 0; square < SQUARE_COUNT; ++square)
+        out[square] = std::int8_t(game.position.squares[square]);
+    out[SNAPSHOT_SIDE_TO_MOVE] = game.isWhiteTurn ? 1 : 0;
+    out[SNAPSHOT_GAME_OVER] = game.gameOver ? 1 : 0;
+    out[SNAPSHOT_IN_CHECK] = isInCheck(game.position, game.isWhiteTurn) ? 1 : 0;
+    out[SNAPSHOT_STATUS] = std::int8_t(gameStatus(game));
+    std::memcpy(out + SNAPSHOT_WHITE_SCORE, &game.whiteScore, sizeof(std::int32_t));
+    std::memcpy(out + SNAPSHOT_BLACK_SCORE, &game.blackScore, sizeof(std::int32_t));
+    ++game.snapshotVersion;
+    std::memcpy(out + SNAPSHOT_VERSION, &game.snapshotVersion, sizeof(std::int32_t));
+}
+
+// Answered from the cached status when asked about the side it judges
+auto isCheckmate(Game& game, bool isWhite) -> bool {
+    if (isWhite != isStatusSideWhite(game))
+        return isCheckmate(game.position, isWhite);
+    auto status = gameStatus(game);
+    return status == STATUS_CHECKMATE_WHITE_WINS || status == STATUS_CHECKMATE_BLACK_WINS;
+}
+
+auto isStalemate(Game& game, bool isWhite) -> bool {
+    if (isWhite != isStatusSideWhite(game))
+        return isStalemate(game.position, isWhite);
+    return gameStatus(game) == STATUS_STALEMATE;
+}
+
+auto setupStartPosition(Game& game) -> void {
+    const auto backRank = std::array<jint, BOARD_SIZE>{W_ROOK, W_KNIGHT, W_BISHOP, W_QUEEN, W_KING, W_BISHOP, W_KNIGHT, W_ROOK};
+    resetGame(game);
+    for (auto col = 0; col < BOARD_SIZE; ++col) {
+        putPiece(game.position, 0 * BOARD_SIZE + col, -backRank[col]);
+        putPiece(game.position, 1 * BOARD_SIZE + col, B_PAWN);
+        putPiece(game.position, 6 * BOARD_SIZE + col, W_PAWN);
+        putPiece(game.position, 7 * BOARD_SIZE + col, backRank[col]);
+    }
+    clearHistory(game);
+    publishSnapshot(game);
+}
+
+// Replaces the pieces and the turn; the scores are kept, as they always were for setBoardState
+auto setPosition(Game& game, const jint* squares, bool isWhiteTurn) -> void {
+    game.position = Position();
+    for (auto square = 0; square < SQUARE_COUNT; ++square)
+        putPiece(game.position, square, squares[square]);
+    game.isWhiteTurn = isWhiteTurn;
+    game.gameOver = false;
+    game.status = STATUS_UNKNOWN;
+    clearHistory(game);
+    game.startPly = isWhiteTurn ? 0 : 1;
+    publishSnapshot(game);
+}
+
+// Everything a FEN or a packed position holds. Castling and en passant are not part of this engine's
+// rules, so FEN rights are accepted and dropped, and written back as "-". FEN has no scores; they are
+// taken to be the material missing from the opponent's starting set.
+struct PositionRecord {
+    std::array<jint, SQUARE_COUNT> squares{};
+    bool isWhiteTurn = true;
+    int halfmoveClock = 0;
+    int fullmoveNumber = 1;
+    int whiteScore = 0;
+    int blackScore = 0;
+};
+
+const auto FEN_PIECE_LETTERS = std::string_view(" rnbqkp"); // by piece type, upper case for white
+const auto MAX_FEN_LENGTH = int(96);
+const auto START_MATERIAL = int(39);
+const auto MAX_HALFMOVE_CLOCK = int(255);
+const auto MAX_FULLMOVE_NUMBER = int(65535);
+
+// Packed layout, mirrored in PackedPositions.java: occupancy bitboard, one nibble per piece in square order,
+// flags, halfmove clock, fullmove number, white and black score and two reserved bytes, all big-endian
+const auto PACKED_POSITION_SIZE = int(32);
+const auto PACKED_PIECES = int(8);
+const auto PACKED_FLAGS = int(24);
+const auto PACKED_HALFMOVE_CLOCK = int(25);
+const auto PACKED_FULLMOVE_NUMBER = int(26);
+const auto PACKED_WHITE_SCORE = int(28);
+const auto PACKED_BLACK_SCORE = int(29);
+const auto PACKED_MAX_PIECES = int(32);
+const auto PACKED_WHITE_TO_MOVE = std::uint8_t(1);
+const auto PACKED_BLACK_PIECE = int(8);
+
+auto pieceCount(const PositionRecord& record) -> int {
+    return int(std::count_if(record.squares.begin(), record.squares.end(), [](jint piece) { return piece != EMPTY; }));
+}
+
+// The checks both formats share; returns an error message or nullptr
+auto validatePosition(const PositionRecord& record) -> const char* {
+    if (pieceCount(record) > PACKED_MAX_PIECES)
+        return "more than 32 pieces";
+    auto kings = std::array<int, 2>{};
+    for (auto square = 0; square < SQUARE_COUNT; ++square) {
+        auto piece = record.squares[square];
+        if (abs(piece) == W_KING)
+            ++kings[piece > 0 ? WHITE : BLACK];
+        auto row = square / BOARD_SIZE;
+        if (abs(piece) == W_PAWN && (row == 0 || row == BOARD_SIZE - 1))
+            return "pawn on the first or last rank";
+    }
+    if (kings[WHITE] != 1 || kings[BLACK] != 1)
+        return "each side needs exactly one king";
+    if (record.halfmoveClock > MAX_HALFMOVE_CLOCK)
+        return "halfmove clock out of range";
+    if (record.fullmoveNumber < 1 || record.fullmoveNumber > MAX_FULLMOVE_NUMBER)
+        return "fullmove number out of range";
+    return nullptr;
+}
+
+auto parseFenNumber(std::string_view field, int& value) -> bool {
+    if (field.empty() || field.size() > 9)
+        return false;
+    value = 0;
+    for (auto c : field) {
+        if (c < '0' || c > '9')
+            return false;
+        value = value * 10 + (c - '0');
+    }
+    return true;
+}
+
+// Fills the record from a FEN; the clocks may be left out. Returns an error message or nullptr.
+auto parseFen(std::string_view fen, PositionRecord& record) -> const char* {
+    auto fields = std::array<std::string_view, 6>();
+    auto count = 0;
+    while (true) {
+        auto start = fen.find_first_not_of(" \t");
+        if (start == std::string_view::npos)
+            break;
+        if (count == int(fields.size()))
+            return "more than six fields";
+        auto end = std::min(fen.find_first_of(" \t", start), fen.size());
+        fields[count++] = fen.substr(start, end - start);
+        fen.remove_prefix(end);
+    }
+    if (count < 2)
+        return "expected at least piece placement and side to move";
+
+    record = PositionRecord();
+    auto row = 0;
+    auto col = 0;
+    for (auto c : fields[0]) {
+        if (c == '/') {
+            if (col != BOARD_SIZE || ++row == BOARD_SIZE)
+                return "piece placement does not have eight ranks of eight squares";
+            col = 0;
+        } else if (c >= '1' && c <= '8') {
+            col += c - '0';
+        } else {
+            auto lower = char(c | 0x20);
+            auto type = FEN_PIECE_LETTERS.find(lower);
+            if (type == std::string_view::npos || type == 0)
+                return "unknown piece letter";
+            if (col < BOARD_SIZE)
+                record.squares[row * BOARD_SIZE + col] = c == lower ? -jint(type) : jint(type);
+            ++col;
+        }
+        if (col > BOARD_SIZE)
+            return "piece placement does not have eight ranks of eight squares";
+    }
+    if (row != BOARD_SIZE - 1 || col != BOARD_SIZE)
+        return "piece placement does not have eight ranks of eight squares";
+
+    if (fields[1] != "w" && fields[1] != "b")
+        return "side to move must be w or b";
+    record.isWhiteTurn = fields[1] == "w";
+    if (count > 2 && fields[2] != "-" && fields[2].find_first_not_of("KQkq") != std::string_view::npos)
+        return "unreadable castling rights";
+    if (count > 3 && fields[3] != "-"
+        && (fields[3].size() != 2 || fields[3][0] < 'a' || fields[3][0] > 'h' || (fields[3][1] != '3' && fields[3][1] != '6')))
+        return "unreadable en passant square";
+    if (count > 4 && !parseFenNumber(fields[4], record.halfmoveClock))
+        return "unreadable halfmove clock";
+    if (count > 5 && !parseFenNumber(fields[5], record.fullmoveNumber))
+        return "unreadable fullmove number";
+
+    auto material = std::array<int, 2>{};
+    for (auto piece : record.squares)
+        material[piece > 0 ? WHITE : BLACK] += PIECE_VALUES[abs(piece)];
+    record.whiteScore = std::max(0, START_MATERIAL - material[BLACK]);
+    record.blackScore = std::max(0, START_MATERIAL - material[WHITE]);
+    return validatePosition(record);
+}
+
+// Writes the FEN without a terminator into out, which holds MAX_FEN_LENGTH chars, and returns its length
+auto formatFen(const PositionRecord& record, char* out) -> int {
+    auto length = 0;
+    for (auto row = 0; row < BOARD_SIZE; ++row) {
+        auto empty = 0;
+        for (auto col = 0; col < BOARD_SIZE; ++col) {
+            auto piece = record.squares[row * BOARD_SIZE + col];
+            if (piece == EMPTY) {
+                ++empty;
+                continue;
+            }
+            if (empty > 0)
+                out[length++] = char('0' + empty);
+            empty = 0;
+            auto letter = FEN_PIECE_LETTERS[abs(piece)];
+            out[length++] = piece > 0 ? char(letter - 0x20) : letter;
+        }
+        if (empty > 0)
+            out[length++] = char('0' + empty);
+        if (row < BOARD_SIZE - 1)
+            out[length++] = '/';
+    }
+    length += std::snprintf(out + length, MAX_FEN_LENGTH - length, " %c - - %d %d",
+                            record.isWhiteTurn ? 'w' : 'b', record.halfmoveClock, record.fullmoveNumber);
+    return length;
+}
+
+auto packPosition(const PositionRecord& record, std::uint8_t* out) -> void {
+    std::memset(out, 0, PACKED_POSITION_SIZE);
+    auto occupancy = Bitboard(0);
+    auto nibble = 0;
+    for (auto square = 0; square < SQUARE_COUNT; ++square) {
+        auto piece = record.squares[square];
+        if (piece == EMPTY || nibble == PACKED_MAX_PIECES)
+            continue;
+        occupancy |= squareBit(square);
+        auto code = std::uint8_t(piece > 0 ? piece : PACKED_BLACK_PIECE - piece);
+        out[PACKED_PIECES + nibble / 2] |= nibble % 2 == 0 ? std::uint8_t(code << 4) : code;
+        ++nibble;
+    }
+    for (auto i = 0; i < 8; ++i)
+        out[i] = std::uint8_t(occupancy >> (56 - 8 * i));
+    out[PACKED_FLAGS] = record.isWhiteTurn ? PACKED_WHITE_TO_MOVE : 0;
+    out[PACKED_HALFMOVE_CLOCK] = std::uint8_t(std::min(record.halfmoveClock, MAX_HALFMOVE_CLOCK));
+    out[PACKED_FULLMOVE_NUMBER] = std::uint8_t(record.fullmoveNumber >> 8);
+    out[PACKED_FULLMOVE_NUMBER + 1] = std::uint8_t(record.fullmoveNumber);
+    out[PACKED_WHITE_SCORE] = std::uint8_t(std::min(record.whiteScore, 255));
+    out[PACKED_BLACK_SCORE] = std::uint8_t(std::min(record.blackScore, 255));
+}
+
+auto unpackPosition(const std::uint8_t* in, PositionRecord& record) -> const char* {
+    auto occupancy = Bitboard(0);
+    for (auto i = 0; i < 8; ++i)
+        occupancy = (occupancy << 8) | in[i];
+    if (std::popcount(occupancy) > PACKED_MAX_PIECES)
+        return "more than 32 pieces";
+    if ((in[PACKED_FLAGS] & ~PACKED_WHITE_TO_MOVE) != 0 || in[PACKED_POSITION_SIZE - 2] != 0 || in[PACKED_POSITION_SIZE - 1] != 0)
+        return "reserved bits are set";
+
+    record = PositionRecord();
+    auto nibble = 0;
+    for (auto squares = occupancy; squares; squares &= squares - 1, ++nibble) {
+        auto byte = in[PACKED_PIECES + nibble / 2];
+        auto code = jint(nibble % 2 == 0 ? byte >> 4 : byte & 15);
+        auto type = code & (PACKED_BLACK_PIECE - 1);
+        if (type < W_ROOK || type > W_PAWN)
+            return "unknown piece code";
+        record.squares[std::countr_zero(squares)] = code & PACKED_BLACK_PIECE ? -type : type;
+    }
+    for (; nibble < PACKED_MAX_PIECES; ++nibble)
+        if ((nibble % 2 == 0 ? in[PACKED_PIECES + nibble / 2] >> 4 : in[PACKED_PIECES + nibble / 2] & 15) != 0)
+            return "piece code on an empty square";
+    record.isWhiteTurn = in[PACKED_FLAGS] & PACKED_WHITE_TO_MOVE;
+    record.halfmoveClock = in[PACKED_HALFMOVE_CLOCK];
+    record.fullmoveNumber = (in[PACKED_FULLMOVE_NUMBER] << 8) | in[PACKED_FULLMOVE_NUMBER + 1];
+    record.whiteScore = in[PACKED_WHITE_SCORE];
+    record.blackScore = in[PACKED_BLACK_SCORE];
+    return validatePosition(record);
+}
+
+auto positionRecord(const Game& game) -> PositionRecord {
+    auto record = PositionRecord();
+    record.squares = game.position.squares;
+    record.isWhiteTurn = isStatusSideWhite(game);
+    record.halfmoveClock = game.halfmoveClock;
+    record.fullmoveNumber = 1 + (game.startPly + int(game.historyLength)) / 2;
+    record.whiteScore = game.whiteScore;
+    record.blackScore = game.blackScore;
+    return record;
+}
+
+// Like setPosition, but also sets the scores, the clocks and the move number
+auto loadPosition(Game& game, const PositionRecord& record) -> void {
+    game.position = Position();
+    for (auto square = 0; square < SQUARE_COUNT; ++square)
+        putPiece(game.position, square, record.squares[square]);
+    game.isWhiteTurn = record.isWhiteTurn;
+    game.gameOver = false;
+    game.status = STATUS_UNKNOWN;
+    game.whiteScore = record.whiteScore;
+    game.blackScore = record.blackScore;
+    clearHistory(game);
+    game.halfmoveClock = record.halfmoveClock;
+    game.startPly = 2 * (record.fullmoveNumber - 1) + (record.isWhiteTurn ? 0 : 1);
+    publishSnapshot(game);
+}
+
+auto choosePromotion(Game& game, int row, int col, jint promotedPiece) -> void {
+    auto amended = amendLastPromotion(game, row * BOARD_SIZE + col, promotedPiece);
+    if (amended) {
+        forgetPosition(game);
+        // Judged again below: the queen's mate or stalemate need not be one with the piece picked instead
+        if (game.gameOver) {
+            game.gameOver = false;
+            game.isWhiteTurn = !game.isWhiteTurn;
+        }
+    }
+    putPiece(game.position, row * BOARD_SIZE + col, promotedPiece);
+    game.status = STATUS_UNKNOWN;
+    if (amended) {
+        ++game.repetitions[gameKey(game)];
+        updateGameOver(game);
+    } else {
+        game.startPly += int(game.historyLength);
+        clearHistory(game);
+    }
+    publishSnapshot(game);
+}
+
+auto handleField = jfieldID(nullptr);
+auto searchResultClass = jclass(nullptr);
+auto searchResultConstructor = jmethodID(nullptr);
+auto reportProgressMethod = jmethodID(nullptr);
+
+// Resolves the game owned by a Java ChessBoard, raising IllegalStateException once it has been closed
+auto getGame(JNIEnv* env, jobject self) -> Game* {
+    auto game = reinterpret_cast<Game*>(env->GetLongField(self, handleField));
+    if (!game)
+        env->ThrowNew(env->FindClass("java/lang/IllegalStateException"), "ChessBoard has been closed");
+    return game;
+}
+
+// Moves of the side to move; a finished game has none
+auto generateGameMoves(const Game& game, bool legalOnly, MoveList& list) -> void {
+    list.size = 0;
+    if (game.gameOver)
+        return;
+    auto color = game.isWhiteTurn ? WHITE : BLACK;
+    if (legalOnly)
+        generateLegalMoves(game.position, color, list);
+    else
+        generatePseudoLegalMoves(game.position, color, list);
+}
+
+auto newMoveArray(JNIEnv* env, const MoveList& list) -> jintArray {
+    jintArray result = env->NewIntArray(list.size);
+    env->SetIntArrayRegion(result, 0, list.size, list.moves.data());
+    return result;
+}
+
+auto copyMovesInto(JNIEnv* env, const MoveList& list, jintArray buffer) -> jint {
+    auto count = std::min<jint>(list.size, env->GetArrayLength(buffer));
+    env->SetIntArrayRegion(buffer, 0, count, list.moves.data());
+    return list.size;
+}
+
+extern "C" {
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM* vm, void*) {
+    JNIEnv* env = nullptr;
+    if (vm->GetEnv(reinterpret_cast<void**>(&env), JNI_VERSION_1_8) != JNI_OK)
+        return JNI_ERR;
+    jclass boardClass = env->FindClass("ChessBoard");
+    if (!boardClass)
+        return JNI_ERR;
+    handleField = env->GetFieldID(boardClass, "nativeHandle", "J");
+    reportProgressMethod = env->GetMethodID(boardClass, "reportProgress", "(LSearchListener;[JI)Z");
+    env->DeleteLocalRef(boardClass);
+
+    jclass resultClass = env->FindClass("SearchResult");
+    if (!resultClass)
+        return JNI_ERR;
+    searchResultClass = static_cast<jclass>(env->NewGlobalRef(resultClass));
+    searchResultConstructor = env->GetMethodID(resultClass, "<init>", "(IIJI)V");
+    env->DeleteLocalRef(resultClass);
+    return handleField && reportProgressMethod && searchResultConstructor ? JNI_VERSION_1_8 : JNI_ERR;
+}
+
+JNIEXPORT jlong JNICALL Java_ChessBoard_createGame(JNIEnv*, jclass) {
+    return reinterpret_cast<jlong>(new Game());
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_destroyGame(JNIEnv*, jclass, jlong handle) {
+    delete reinterpret_cast<Game*>(handle);
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_initializeBoard(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_INITIALIZE_BOARD);
+    auto game = getGame(env, self);
+    if (!game)
+        return;
+    setupStartPosition(*game);
+}
+
+JNIEXPORT jboolean JNICALL Java_ChessBoard_movePiece(JNIEnv* env, jobject self, jint fromX, jint fromY, jint toX, jint toY) {
+    auto timer = CallTimer(CALL_MOVE_PIECE);
+    auto game = getGame(env, self);
+    if (!game)
+        return JNI_FALSE;
+    if (!performMove(*game, fromX, fromY, toX, toY))
+        return JNI_FALSE; // return true or false whether move was legal
+    publishSnapshot(*game);
+    return JNI_TRUE;
+}
+
+JNIEXPORT jobjectArray JNICALL Java_ChessBoard_getBoardState(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_GET_BOARD_STATE);
+    auto game = getGame(env, self);
+    if (!game)
+        return nullptr;
+
+    jclass intArrayClass = env->FindClass("[I"); // Find java int[] class
+    jobjectArray result = env->NewObjectArray(BOARD_SIZE, intArrayClass, NULL); // Create 2D array
+
+    for (int i = 0; i < BOARD_SIZE; ++i) {
+        jintArray row = env->NewIntArray(BOARD_SIZE);
+        env->SetIntArrayRegion(row, 0, BOARD_SIZE, game->position.squares.data() + i * BOARD_SIZE); // Copy data from C++ to Java
+        env->SetObjectArrayElement(result, i, row);
+        env->DeleteLocalRef(row);
+    }
+    return result;
+}
+
+JNIEXPORT jboolean JNICALL Java_ChessBoard_isInCheck(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_IS_IN_CHECK);
+    auto game = getGame(env, self);
+    if (!game)
+        return JNI_FALSE;
+    return isInCheck(game->position, game->isWhiteTurn) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean JNICALL Java_ChessBoard_isCheckmate(JNIEnv* env, jobject self, jboolean checkWhite) {
+    auto timer = CallTimer(CALL_IS_CHECKMATE);
+    auto game = getGame(env, self);
+    if (!game)
+        return JNI_FALSE;
+    bool isWhiteInCheckmate = isCheckmate(*game, checkWhite == JNI_TRUE);
+    return isWhiteInCheckmate ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jint JNICALL Java_ChessBoard_gameStatus(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_GAME_STATUS);
+    auto game = getGame(env, self);
+    if (!game)
+        return STATUS_ONGOING;
+    return gameStatus(*game);
+}
+
+auto throwIllegalArgument(JNIEnv* env, const std::string& message) -> void {
+    env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), message.c_str());
+}
+
+// Empty when every square holds a piece value, else the message for the first one that does not
+auto checkSquares(const jint* squares) -> std::string {
+    for (auto square = 0; square < SQUARE_COUNT; ++square) {
+        if (!isPieceValue(squares[square]))
+            return "Invalid piece value " + std::to_string(squares[square]) + " at row " + std::to_string(square / BOARD_SIZE)
+                   + ", col " + std::to_string(square % BOARD_SIZE);
+    }
+    return {};
+}
+
+auto checkPromotion(jint row, jint col, jint promotedPiece) -> std::string {
+    if (row < 0 || row >= BOARD_SIZE || col < 0 || col >= BOARD_SIZE)
+        return "Square out of range: row " + std::to_string(row) + ", col " + std::to_string(col);
+    if (!isPieceValue(promotedPiece))
+        return "Invalid piece value " + std::to_string(promotedPiece);
+    return {};
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_setBoardState(JNIEnv* env, jobject self, jobjectArray newBoard, jboolean jIsWhiteTurn) {
+    auto timer = CallTimer(CALL_SET_BOARD_STATE);
+    auto game = getGame(env, self);
+    if (!game)
+        return;
+
+    auto squares = std::array<jint, SQUARE_COUNT>();
+    for (int i = 0; i < BOARD_SIZE; ++i) {
+        jintArray row = (jintArray)env->GetObjectArrayElement(newBoard, i); // Retreive each row from Java
+        env->GetIntArrayRegion(row, 0, BOARD_SIZE, squares.data() + i * BOARD_SIZE);
+        env->DeleteLocalRef(row);
+        if (env->ExceptionCheck())
+            return;
+    }
+    auto error = checkSquares(squares.data());
+    if (!error.empty()) {
+        throwIllegalArgument(env, error);
+        return;
+    }
+    setPosition(*game, squares.data(), jIsWhiteTurn == JNI_TRUE);
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_setFen(JNIEnv* env, jobject self, jstring fen) {
+    auto timer = CallTimer(CALL_SET_FEN);
+    auto game = getGame(env, self);
+    if (!game)
+        return;
+    auto chars = env->GetStringUTFChars(fen, nullptr);
+    if (!chars)
+        return;
+    auto text = std::string(chars);
+    env->ReleaseStringUTFChars(fen, chars);
+
+    auto record = PositionRecord();
+    auto error = parseFen(text, record);
+    if (error) {
+        throwIllegalArgument(env, "Invalid FEN (" + std::string(error) + "): " + text);
+        return;
+    }
+    loadPosition(*game, record);
+}
+
+JNIEXPORT jstring JNICALL Java_ChessBoard_getFen(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_GET_FEN);
+    auto game = getGame(env, self);
+    if (!game)
+        return nullptr;
+    auto text = std::array<char, MAX_FEN_LENGTH + 1>();
+    text[formatFen(positionRecord(*game), text.data())] = '\0';
+    return env->NewStringUTF(text.data());
+}
+
+// The Java side checks that offset and the record lie within the buffer
+JNIEXPORT void JNICALL Java_ChessBoard_readPackedPosition(JNIEnv* env, jobject self, jobject buffer, jint offset) {
+    auto timer = CallTimer(CALL_LOAD_PACKED_POSITION);
+    auto game = getGame(env, self);
+    if (!game)
+        return;
+    auto address = static_cast<const std::uint8_t*>(env->GetDirectBufferAddress(buffer));
+    auto record = PositionRecord();
+    auto error = address ? unpackPosition(address + offset, record) : "not a direct buffer";
+    if (error) {
+        throwIllegalArgument(env, "Invalid packed position (" + std::string(error) + ")");
+        return;
+    }
+    loadPosition(*game, record);
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_writePackedPosition(JNIEnv* env, jobject self, jobject buffer, jint offset) {
+    auto timer = CallTimer(CALL_STORE_PACKED_POSITION);
+    auto game = getGame(env, self);
+    if (!game)
+        return;
+    auto address = static_cast<std::uint8_t*>(env->GetDirectBufferAddress(buffer));
+    if (!address) {
+        throwIllegalArgument(env, "Packed positions need a direct buffer");
+        return;
+    }
+    auto record = positionRecord(*game);
+    if (pieceCount(record) > PACKED_MAX_PIECES) {
+        throwIllegalArgument(env, "Packed positions hold at most " + std::to_string(PACKED_MAX_PIECES) + " pieces");
+        return;
+    }
+    packPosition(record, address + offset);
+}
+
+// Converts the lines of text[textStart, textEnd) into packed records at packed[packedStart, packedEnd) until
+// either runs out; blank lines are skipped. Returns the text bytes consumed in the high and the record
+// count in the low 32 bits.
+JNIEXPORT jlong JNICALL Java_ChessBoard_fenToPacked(JNIEnv* env, jclass, jobject text, jint textStart, jint textEnd,
+                                                    jobject packed, jint packedStart, jint packedEnd) {
+    auto timer = CallTimer(CALL_FEN_TO_PACKED);
+    auto in = static_cast<const char*>(env->GetDirectBufferAddress(text));
+    auto out = static_cast<std::uint8_t*>(env->GetDirectBufferAddress(packed));
+    if (!in || !out) {
+        throwIllegalArgument(env, "Bulk conversion needs direct buffers");
+        return 0;
+    }
+    auto position = textStart;
+    auto count = 0;
+    auto record = PositionRecord();
+    while (position < textEnd && packedEnd - packedStart - count * PACKED_POSITION_SIZE >= PACKED_POSITION_SIZE) {
+        auto line = std::string_view(in + position, textEnd - position);
+        auto next = textEnd;
+        auto newline = line.find('\n');
+        if (newline != std::string_view::npos) {
+            line = line.substr(0, newline);
+            next = position + int(newline) + 1;
+        }
+        if (!line.empty() && line.back() == '\r')
+            line.remove_suffix(1);
+        if (line.find_first_not_of(" \t") != std::string_view::npos) {
+            auto error = parseFen(line, record);
+            if (error) {
+                throwIllegalArgument(env, "Invalid FEN at byte " + std::to_string(position) + " (" + error + "): " + std::string(line));
+                return 0;
+            }
+            packPosition(record, out + packedStart + count * PACKED_POSITION_SIZE);
+            ++count;
+        }
+        position = next;
+    }
+    return (jlong(position - textStart) << 32) | count;
+}
+
+// Writes one FEN line per record of packed[packedStart, packedEnd) into text[textStart, textEnd) while
+// whole lines fit. Returns the text bytes written in the high and the record count in the low 32 bits.
+JNIEXPORT jlong JNICALL Java_ChessBoard_packedToFen(JNIEnv* env, jclass, jobject packed, jint packedStart, jint packedEnd,
+                                                    jobject text, jint textStart, jint textEnd) {
+    auto timer = CallTimer(CALL_PACKED_TO_FEN);
+    auto in = static_cast<const std::uint8_t*>(env->GetDirectBufferAddress(packed));
+    auto out = static_cast<char*>(env->GetDirectBufferAddress(text));
+    if (!in || !out) {
+        throwIllegalArgument(env, "Bulk conversion needs direct buffers");
+        return 0;
+    }
+    auto position = textStart;
+    auto count = 0;
+    auto record = PositionRecord();
+    auto line = std::array<char, MAX_FEN_LENGTH + 1>();
+    for (auto offset = packedStart; packedEnd - offset >= PACKED_POSITION_SIZE; offset += PACKED_POSITION_SIZE) {
+        auto error = unpackPosition(in + offset, record);
+        if (error) {
+            throwIllegalArgument(env, "Invalid packed position at byte " + std::to_string(offset) + " (" + error + ")");
+            return 0;
+        }
+        auto length = formatFen(record, line.data());
+        if (textEnd - position < length + 1)
+            break;
+        line[length++] = '\n';
+        std::memcpy(out + position, line.data(), length);
+        position += length;
+        ++count;
+    }
+    return (jlong(position - textStart) << 32) | count;
+}
+
+
+JNIEXPORT jboolean JNICALL Java_ChessBoard_isWhiteTurn(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_IS_WHITE_TURN);
+    auto game = getGame(env, self);
+    if (!game)
+        return JNI_FALSE;
+    return game->isWhiteTurn ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean JNICALL Java_ChessBoard_isStalemate(JNIEnv* env, jobject self, jboolean checkWhite) {
+    auto timer = CallTimer(CALL_IS_STALEMATE);
+    auto game = getGame(env, self);
+    if (!game)
+        return JNI_FALSE;
+    return isStalemate(*game, checkWhite == JNI_TRUE) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jintArray JNICALL Java_ChessBoard_getCurrentScore(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_GET_CURRENT_SCORE);
+    auto game = getGame(env, self);
+    if (!game)
+        return nullptr;
+
+    jintArray scoreArray = env->NewIntArray(2);
+    jint scores[2] = {game->whiteScore, game->blackScore};
+    env->SetIntArrayRegion(scoreArray, 0, 2, scores);
+    return scoreArray;
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_promotePawn(JNIEnv* env, jobject self, jint row, jint col, jint promotedPiece) {
+    auto timer = CallTimer(CALL_PROMOTE_PAWN);
+    auto game = getGame(env, self);
+    if (!game)
+        return;
+    auto error = checkPromotion(row, col, promotedPiece);
+    if (!error.empty()) {
+        throwIllegalArgument(env, error);
+        return;
+    }
+    choosePromotion(*game, row, col, promotedPiece);
+}
+
+JNIEXPORT jintArray JNICALL Java_ChessBoard_generateLegalMoves__(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_GENERATE_LEGAL_MOVES);
+    auto game = getGame(env, self);
+    if (!game)
+        return nullptr;
+    auto list = MoveList();
+    generateGameMoves(*game, true, list);
+    return newMoveArray(env, list);
+}
+
+JNIEXPORT jint JNICALL Java_ChessBoard_generateLegalMoves___3I(JNIEnv* env, jobject self, jintArray buffer) {
+    auto timer = CallTimer(CALL_GENERATE_LEGAL_MOVES);
+    auto game = getGame(env, self);
+    if (!game)
+        return 0;
+    auto list = MoveList();
+    generateGameMoves(*game, true, list);
+    return copyMovesInto(env, list, buffer);
+}
+
+JNIEXPORT jintArray JNICALL Java_ChessBoard_generatePseudoLegalMoves__(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_GENERATE_PSEUDO_LEGAL_MOVES);
+    auto game = getGame(env, self);
+    if (!game)
+        return nullptr;
+    auto list = MoveList();
+    generateGameMoves(*game, false, list);
+    return newMoveArray(env, list);
+}
+
+JNIEXPORT jint JNICALL Java_ChessBoard_generatePseudoLegalMoves___3I(JNIEnv* env, jobject self, jintArray buffer) {
+    auto timer = CallTimer(CALL_GENERATE_PSEUDO_LEGAL_MOVES);
+    auto game = getGame(env, self);
+    if (!game)
+        return 0;
+    auto list = MoveList();
+    generateGameMoves(*game, false, list);
+    return copyMovesInto(env, list, buffer);
+}
+
+JNIEXPORT jlong JNICALL Java_ChessBoard_perft(JNIEnv* env, jobject self, jint depth) {
+    auto timer = CallTimer(CALL_PERFT);
+    auto game = getGame(env, self);
+    if (!game)
+        return 0;
+    auto position = game->position;
+    return static_cast<jlong>(perft(position, game->isWhiteTurn ? WHITE : BLACK, depth));
+}
+
+JNIEXPORT jobject JNICALL Java_ChessBoard_findBestMove(JNIEnv* env, jobject self, jint maxDepth, jlong timeBudgetMillis) {
+    auto timer = CallTimer(CALL_FIND_BEST_MOVE);
+    auto game = getGame(env, self);
+    if (!game)
+        return nullptr;
+
+    auto result = SearchResult();
+    if (!game->gameOver)
+        result = findBestMove(*game, game->isWhiteTurn ? WHITE : BLACK, maxDepth, timeBudgetMillis);
+    return env->NewObject(searchResultClass, searchResultConstructor, result.bestMove, result.score,
+                          static_cast<jlong>(result.nodes), result.depth);
+}
+
+// Like findBestMove, passing each batch of progress to ChessBoard.reportProgress through one reused array.
+// An exception thrown by the listener stops the search and is rethrown to the caller.
+JNIEXPORT jobject JNICALL Java_ChessBoard_searchWithProgress(JNIEnv* env, jobject self, jint maxDepth, jlong timeBudgetMillis, jobject listener) {
+    auto timer = CallTimer(CALL_FIND_BEST_MOVE);
+    auto game = getGame(env, self);
+    if (!game)
+        return nullptr;
+
+    auto array = jlongArray(nullptr);
+    auto capacity = jsize(0);
+    auto sink = ProgressSink([&](const std::vector<jlong>& batch) {
+        if (env->ExceptionCheck())
+            return false;
+        auto size = jsize(batch.size());
+        if (size > capacity) {
+            if (array)
+                env->DeleteLocalRef(array);
+            capacity = std::max(size, capacity * 2);
+            array = env->NewLongArray(capacity);
+            if (!array)
+                return false;
+        }
+        env->SetLongArrayRegion(array, 0, size, batch.data());
+        auto proceed = env->CallBooleanMethod(self, reportProgressMethod, listener, array, size);
+        return !env->ExceptionCheck() && proceed == JNI_TRUE;
+    });
+
+    auto result = SearchResult();
+    if (!game->gameOver)
+        result = findBestMove(*game, game->isWhiteTurn ? WHITE : BLACK, maxDepth, timeBudgetMillis, sink);
+    if (env->ExceptionCheck())
+        return nullptr;
+    return env->NewObject(searchResultClass, searchResultConstructor, result.bestMove, result.score,
+                          static_cast<jlong>(result.nodes), result.depth);
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_setSearchThreads(JNIEnv* env, jobject self, jint threads) {
+    auto timer = CallTimer(CALL_SET_SEARCH_THREADS);
+    auto game = getGame(env, self);
+    if (!game)
+        return;
+    if (threads < 1) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), "Search needs at least one thread");
+        return;
+    }
+    game->searchThreads = threads;
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_stopSearch(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_STOP_SEARCH);
+    auto game = getGame(env, self);
+    if (!game)
+        return;
+    game->stopRequested.store(true);
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_attachSnapshotBuffer(JNIEnv* env, jobject self, jobject buffer) {
+    auto timer = CallTimer(CALL_ATTACH_SNAPSHOT);
+    auto game = getGame(env, self);
+    if (!game)
+        return;
+    if (!buffer) {
+        game->snapshot = nullptr;
+        return;
+    }
+    auto address = static_cast<std::int8_t*>(env->GetDirectBufferAddress(buffer));
+    if (!address || env->GetDirectBufferCapacity(buffer) < SNAPSHOT_SIZE) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), "Snapshot needs a direct buffer of at least 80 bytes");
+        return;
+    }
+    game->snapshot = address;
+    publishSnapshot(*game);
+}
+
+JNIEXPORT jint JNICALL Java_ChessBoard_applyMoves(JNIEnv* env, jobject self, jintArray packedMoves, jint offset, jint count, jboolean trusted) {
+    auto timer = CallTimer(CALL_APPLY_MOVES);
+    auto game = getGame(env, self);
+    if (!game)
+        return -1;
+    if (offset < 0 || count < 0 || offset > env->GetArrayLength(packedMoves) - count) {
+        env->ThrowNew(env->FindClass("java/lang/ArrayIndexOutOfBoundsException"), "Move range outside the array");
+        return -1;
+    }
+
+    auto moves = static_cast<jint*>(env->GetPrimitiveArrayCritical(packedMoves, nullptr));
+    auto rejected = applyMoves(*game, moves + offset, count, trusted == JNI_TRUE);
+    env->ReleasePrimitiveArrayCritical(packedMoves, moves, JNI_ABORT);
+    publishSnapshot(*game);
+    return rejected;
+}
+
+JNIEXPORT jlong JNICALL Java_ChessBoard_getPositionKey(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_GET_POSITION_KEY);
+    auto game = getGame(env, self);
+    if (!game)
+        return 0;
+    return static_cast<jlong>(gameKey(*game));
+}
+
+JNIEXPORT jint JNICALL Java_ChessBoard_getHalfmoveClock(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_GET_HALFMOVE_CLOCK);
+    auto game = getGame(env, self);
+    if (!game)
+        return 0;
+    return game->halfmoveClock;
+}
+
+JNIEXPORT jint JNICALL Java_ChessBoard_evaluate(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_EVALUATE);
+    auto game = getGame(env, self);
+    if (!game)
+        return 0;
+    return evaluate(game->position, game->isWhiteTurn ? WHITE : BLACK);
+}
+
+JNIEXPORT jboolean JNICALL Java_ChessBoard_undoMove(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_UNDO_MOVE);
+    auto game = getGame(env, self);
+    if (!game || !undoMove(*game))
+        return JNI_FALSE;
+    publishSnapshot(*game);
+    return JNI_TRUE;
+}
+
+JNIEXPORT jboolean JNICALL Java_ChessBoard_redoMove(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_REDO_MOVE);
+    auto game = getGame(env, self);
+    if (!game || !redoMove(*game))
+        return JNI_FALSE;
+    publishSnapshot(*game);
+    return JNI_TRUE;
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_enableMetrics(JNIEnv*, jclass, jboolean enabled) {
+    metricsEnabled.store(enabled == JNI_TRUE);
+}
+
+JNIEXPORT jboolean JNICALL Java_ChessBoard_metricsEnabled(JNIEnv*, jclass) {
+    return metricsEnabled.load() ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_readMetrics(JNIEnv* env, jclass, jlongArray values) {
+    if (env->GetArrayLength(values) != METRICS_SIZE) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), "Metrics array does not match the native layout");
+        return;
+    }
+    auto merged = readMetrics();
+    auto copy = std::array<jlong, METRICS_SIZE>();
+    std::copy(merged.begin(), merged.end(), copy.begin());
+    env->SetLongArrayRegion(values, 0, METRICS_SIZE, copy.data());
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_generateTablebase(JNIEnv* env, jclass, jstring jSignature, jstring jPath, jint threads) {
+    auto timer = CallTimer(CALL_GENERATE_TABLEBASE);
+    auto chars = env->GetStringUTFChars(jSignature, nullptr);
+    if (!chars)
+        return;
+    auto signature = std::string(chars);
+    env->ReleaseStringUTFChars(jSignature, chars);
+    chars = env->GetStringUTFChars(jPath, nullptr);
+    if (!chars)
+        return;
+    auto path = std::string(chars);
+    env->ReleaseStringUTFChars(jPath, chars);
+
+    auto generator = TablebaseGenerator();
+    auto material = Bitboard(0);
+    if (!parseSignature(signature, generator.layout, material) || signature.size() >= std::size_t(TB_SIGNATURE_SIZE)) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), ("Not a tablebase signature: " + signature).c_str());
+        return;
+    }
+    generator.threads = std::max(1, int(threads));
+    auto error = generator.generate();
+    if (!error.empty()) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalStateException"), (signature + ": " + error).c_str());
+        return;
+    }
+
+    auto header = std::array<char, TB_HEADER_SIZE>{'C', 'H', 'T', 'B'};
+    std::memcpy(header.data() + 4, &TB_VERSION, sizeof(TB_VERSION));
+    std::memcpy(header.data() + 8, signature.data(), signature.size());
+    auto file = std::fopen(path.c_str(), "wb");
+    auto written = file && std::fwrite(header.data(), 1, header.size(), file) == header.size()
+                   && std::fwrite(generator.values.data(), 1, generator.values.size(), file) == generator.values.size();
+    if (file && std::fclose(file) != 0)
+        written = false;
+    if (!written)
+        env->ThrowNew(env->FindClass("java/io/IOException"), ("Cannot write " + path).c_str());
+}
+
+JNIEXPORT void JNICALL Java_ChessBoard_registerTablebase(JNIEnv* env, jclass, jobject buffer) {
+    auto timer = CallTimer(CALL_REGISTER_TABLEBASE);
+    auto address = static_cast<const std::uint8_t*>(env->GetDirectBufferAddress(buffer));
+    auto capacity = env->GetDirectBufferCapacity(buffer);
+    auto layout = TablebaseLayout();
+    auto material = Bitboard(0);
+    auto version = std::uint32_t(0);
+    auto valid = address && capacity >= TB_HEADER_SIZE && std::memcmp(address, "CHTB", 4) == 0;
+    if (valid) {
+        std::memcpy(&version, address + 4, sizeof(version));
+        auto signature = reinterpret_cast<const char*>(address + 8);
+        valid = version == TB_VERSION
+                && parseSignature(std::string_view(signature, strnlen(signature, TB_SIGNATURE_SIZE)), layout, material)
+                && std::size_t(capacity) == TB_HEADER_SIZE + layout.size;
+    }
+    if (!valid) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalArgumentException"), "Not a tablebase of this engine");
+        return;
+    }
+
+    auto lock = std::lock_guard(tablebaseMutex);
+    auto count = tablebaseCount.load();
+    for (auto i = 0; i < count; ++i)
+        if (tablebases[i].material == material || tablebases[i].material == flipMaterial(material))
+            return; // the ending is covered already
+    if (count == MAX_TABLEBASES) {
+        env->ThrowNew(env->FindClass("java/lang/IllegalStateException"), "Too many tablebases");
+        return;
+    }
+    tablebases[count] = Tablebase{layout, material, address + TB_HEADER_SIZE};
+    tablebaseCount.store(count + 1, std::memory_order_release);
+    if (int(layout.order.size()) > tablebaseMaxPieces.load())
+        tablebaseMaxPieces.store(int(layout.order.size()));
+}
+
+JNIEXPORT jint JNICALL Java_ChessBoard_tablebaseValue(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_PROBE_TABLEBASE);
+    auto game = getGame(env, self);
+    if (!game)
+        return TB_NOT_FOUND;
+    return probeTablebase(game->position, isStatusSideWhite(*game) ? WHITE : BLACK);
+}
+
+JNIEXPORT jintArray JNICALL Java_ChessBoard_getMoveHistory(JNIEnv* env, jobject self) {
+    auto timer = CallTimer(CALL_GET_MOVE_HISTORY);
+    auto game = getGame(env, self);
+    if (!game)
+        return nullptr;
+    auto moves = std::vector<jint>(game->historyLength);
+    for (auto i = std::size_t(0); i < moves.size(); ++i)
+        moves[i] = game->history[i].move;
+    jintArray result = env->NewIntArray(jsize(moves.size()));
+    env->SetIntArrayRegion(result, 0, jsize(moves.size()), moves.data());
+    return result;
+}
+}
+
+// Plain C entry points for the java.lang.foreign binding (ForeignChessBoard.java). They take the
+// ChessBoard.nativeHandle value directly; the Java side refuses to call them once the board is closed.
+auto asGame(jlong handle) -> Game& {
+    return *reinterpret_cast<Game*>(handle);
+}
+
+extern "C" {
+JNIEXPORT void chess_initializeBoard(jlong handle) {
+    auto timer = CallTimer(CALL_INITIALIZE_BOARD);
+    setupStartPosition(asGame(handle));
+}
+
+JNIEXPORT jboolean chess_movePiece(jlong handle, jint fromX, jint fromY, jint toX, jint toY) {
+    auto timer = CallTimer(CALL_MOVE_PIECE);
+    auto& game = asGame(handle);
+    if (!performMove(game, fromX, fromY, toX, toY))
+        return JNI_FALSE;
+    publishSnapshot(game);
+    return JNI_TRUE;
+}
+
+JNIEXPORT jboolean chess_isWhiteTurn(jlong handle) {
+    auto timer = CallTimer(CALL_IS_WHITE_TURN);
+    return asGame(handle).isWhiteTurn ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean chess_isInCheck(jlong handle) {
+    auto timer = CallTimer(CALL_IS_IN_CHECK);
+    const auto& game = asGame(handle);
+    return isInCheck(game.position, game.isWhiteTurn) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean chess_isCheckmate(jlong handle, jboolean checkWhite) {
+    auto timer = CallTimer(CALL_IS_CHECKMATE);
+    return isCheckmate(asGame(handle), checkWhite == JNI_TRUE) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean chess_isStalemate(jlong handle, jboolean checkWhite) {
+    auto timer = CallTimer(CALL_IS_STALEMATE);
+    return isStalemate(asGame(handle), checkWhite == JNI_TRUE) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jint chess_gameStatus(jlong handle) {
+    auto timer = CallTimer(CALL_GAME_STATUS);
+    return gameStatus(asGame(handle));
+}
+
+JNIEXPORT void chess_getSquares(jlong handle, jint* out) {
+    auto timer = CallTimer(CALL_GET_BOARD_STATE);
+    std::memcpy(out, asGame(handle).position.squares.data(), sizeof(jint) * SQUARE_COUNT);
+}
+
+// False, leaving the board alone, if a square holds no piece value
+JNIEXPORT jboolean chess_setSquares(jlong handle, const jint* squares, jboolean isWhiteTurn) {
+    auto timer = CallTimer(CALL_SET_BOARD_STATE);
+    if (!checkSquares(squares).empty())
+        return JNI_FALSE;
+    setPosition(asGame(handle), squares, isWhiteTurn == JNI_TRUE);
+    return JNI_TRUE;
+}
+
+JNIEXPORT void chess_getScores(jlong handle, jint* out) {
+    auto timer = CallTimer(CALL_GET_CURRENT_SCORE);
+    out[0] = asGame(handle).whiteScore;
+    out[1] = asGame(handle).blackScore;
+}
+
+// False, leaving the board alone, for a square off the board or an invalid piece value
+JNIEXPORT jboolean chess_promotePawn(jlong handle, jint row, jint col, jint promotedPiece) {
+    auto timer = CallTimer(CALL_PROMOTE_PAWN);
+    if (!checkPromotion(row, col, promotedPiece).empty())
+        return JNI_FALSE;
+    choosePromotion(asGame(handle), row, col, promotedPiece);
+    return JNI_TRUE;
+}
+
+JNIEXPORT jint chess_generateLegalMoves(jlong handle, jint* out, jint capacity) {
+    auto timer = CallTimer(CALL_GENERATE_LEGAL_MOVES);
+    auto list = MoveList();
+    generateGameMoves(asGame(handle), true, list);
+    std::copy_n(list.moves.begin(), std::min<jint>(list.size, capacity), out);
+    return list.size;
+}
+
+JNIEXPORT jint chess_evaluate(jlong handle) {
+    auto timer = CallTimer(CALL_EVALUATE);
+    const auto& game = asGame(handle);
+    return evaluate(game.position, game.isWhiteTurn ? WHITE : BLACK);
+}
+
+JNIEXPORT jlong chess_getPositionKey(jlong handle) {
+    auto timer = CallTimer(CALL_GET_POSITION_KEY);
+    return static_cast<jlong>(gameKey(asGame(handle)));
+}
+
+JNIEXPORT jint chess_getHalfmoveClock(jlong handle) {
+    auto timer = CallTimer(CALL_GET_HALFMOVE_CLOCK);
+    return asGame(handle).halfmoveClock;
+}
+
+JNIEXPORT jboolean chess_undoMove(jlong handle) {
+    auto timer = CallTimer(CALL_UNDO_MOVE);
+    auto& game = asGame(handle);
+    if (!undoMove(game))
+        return JNI_FALSE;
+    publishSnapshot(game);
+    return JNI_TRUE;
 }
 
-JNIEXPORT void JNICALL Java_ChessBoard_promotePawn(JNIEnv*, jobject, jint row, jint col, jint promotedPiece) {
-    board[row][col] = promotedPiece;
+JNIEXPORT jboolean chess_redoMove(jlong handle) {
+    auto timer = CallTimer(CALL_REDO_MOVE);
+    auto& game = asGame(handle);
+    if (!redoMove(game))
+        return JNI_FALSE;
+    publishSnapshot(game);
+    return JNI_TRUE;
 }
 }
@@ -7,6 +7,88 @@
 #ifdef __cplusplus
 extern "C" {
 #endif
+#undef ChessBoard_MAX_MOVES
+#define ChessBoard_MAX_MOVES 256L
+/*
+ * Class:     ChessBoard
+ * Method:    createGame
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_ChessBoard_createGame
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     ChessBoard
+ * Method:    destroyGame
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_ChessBoard_destroyGame
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     ChessBoard
+ * Method:    attachSnapshotBuffer
+ * Signature: (Ljava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_ChessBoard_attachSnapshotBuffer
+  (JNIEnv *, jobject, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    gameStatus
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_ChessBoard_gameStatus
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    enableMetrics
+ * Signature: (Z)V
+ */
+JNIEXPORT void JNICALL Java_ChessBoard_enableMetrics
+  (JNIEnv *, jclass, jboolean);
+
+/*
+ * Class:     ChessBoard
+ * Method:    metricsEnabled
+ * Signature: ()Z
+ */
+JNIEXPORT jboolean JNICALL Java_ChessBoard_metricsEnabled
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     ChessBoard
+ * Method:    readMetrics
+ * Signature: ([J)V
+ */
+JNIEXPORT void JNICALL Java_ChessBoard_readMetrics
+  (JNIEnv *, jclass, jlongArray);
+
+/*
+ * Class:     ChessBoard
+ * Method:    registerTablebase
+ * Signature: (Ljava/nio/ByteBuffer;)V
+ */
+JNIEXPORT void JNICALL Java_ChessBoard_registerTablebase
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    generateTablebase
+ * Signature: (Ljava/lang/String;Ljava/lang/String;I)V
+ */
+JNIEXPORT void JNICALL Java_ChessBoard_generateTablebase
+  (JNIEnv *, jclass, jstring, jstring, jint);
+
+/*
+ * Class:     ChessBoard
+ * Method:    tablebaseValue
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_ChessBoard_tablebaseValue
+  (JNIEnv *, jobject);
+
 /*
  * Class:     ChessBoard
  * Method:    initializeBoard
@@ -87,6 +169,182 @@ JNIEXPORT jintArray JNICALL Java_ChessBoard_getCurrentScore
 JNIEXPORT void JNICALL Java_ChessBoard_promotePawn
   (JNIEnv *, jobject, jint, jint, jint);
 
+/*
+ * Class:     ChessBoard
+ * Method:    getPositionKey
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_ChessBoard_getPositionKey
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    getHalfmoveClock
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_ChessBoard_getHalfmoveClock
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    setFen
+ * Signature: (Ljava/lang/String;)V
+ */
+JNIEXPORT void JNICALL Java_ChessBoard_setFen
+  (JNIEnv *, jobject, jstring);
+
+/*
+ * Class:     ChessBoard
+ * Method:    getFen
+ * Signature: ()Ljava/lang/String;
+ */
+JNIEXPORT jstring JNICALL Java_ChessBoard_getFen
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    readPackedPosition
+ * Signature: (Ljava/nio/ByteBuffer;I)V
+ */
+JNIEXPORT void JNICALL Java_ChessBoard_readPackedPosition
+  (JNIEnv *, jobject, jobject, jint);
+
+/*
+ * Class:     ChessBoard
+ * Method:    writePackedPosition
+ * Signature: (Ljava/nio/ByteBuffer;I)V
+ */
+JNIEXPORT void JNICALL Java_ChessBoard_writePackedPosition
+  (JNIEnv *, jobject, jobject, jint);
+
+/*
+ * Class:     ChessBoard
+ * Method:    fenToPacked
+ * Signature: (Ljava/nio/ByteBuffer;IILjava/nio/ByteBuffer;II)J
+ */
+JNIEXPORT jlong JNICALL Java_ChessBoard_fenToPacked
+  (JNIEnv *, jclass, jobject, jint, jint, jobject, jint, jint);
+
+/*
+ * Class:     ChessBoard
+ * Method:    packedToFen
+ * Signature: (Ljava/nio/ByteBuffer;IILjava/nio/ByteBuffer;II)J
+ */
+JNIEXPORT jlong JNICALL Java_ChessBoard_packedToFen
+  (JNIEnv *, jclass, jobject, jint, jint, jobject, jint, jint);
+
+/*
+ * Class:     ChessBoard
+ * Method:    generateLegalMoves
+ * Signature: ()[I
+ */
+JNIEXPORT jintArray JNICALL Java_ChessBoard_generateLegalMoves__
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    generateLegalMoves
+ * Signature: ([I)I
+ */
+JNIEXPORT jint JNICALL Java_ChessBoard_generateLegalMoves___3I
+  (JNIEnv *, jobject, jintArray);
+
+/*
+ * Class:     ChessBoard
+ * Method:    generatePseudoLegalMoves
+ * Signature: ()[I
+ */
+JNIEXPORT jintArray JNICALL Java_ChessBoard_generatePseudoLegalMoves__
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    generatePseudoLegalMoves
+ * Signature: ([I)I
+ */
+JNIEXPORT jint JNICALL Java_ChessBoard_generatePseudoLegalMoves___3I
+  (JNIEnv *, jobject, jintArray);
+
+/*
+ * Class:     ChessBoard
+ * Method:    evaluate
+ * Signature: ()I
+ */
+JNIEXPORT jint JNICALL Java_ChessBoard_evaluate
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    perft
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_ChessBoard_perft
+  (JNIEnv *, jobject, jint);
+
+/*
+ * Class:     ChessBoard
+ * Method:    findBestMove
+ * Signature: (IJ)LSearchResult;
+ */
+JNIEXPORT jobject JNICALL Java_ChessBoard_findBestMove
+  (JNIEnv *, jobject, jint, jlong);
+
+/*
+ * Class:     ChessBoard
+ * Method:    searchWithProgress
+ * Signature: (IJLSearchListener;)LSearchResult;
+ */
+JNIEXPORT jobject JNICALL Java_ChessBoard_searchWithProgress
+  (JNIEnv *, jobject, jint, jlong, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    setSearchThreads
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_ChessBoard_setSearchThreads
+  (JNIEnv *, jobject, jint);
+
+/*
+ * Class:     ChessBoard
+ * Method:    stopSearch
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL Java_ChessBoard_stopSearch
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    applyMoves
+ * Signature: ([IIIZ)I
+ */
+JNIEXPORT jint JNICALL Java_ChessBoard_applyMoves
+  (JNIEnv *, jobject, jintArray, jint, jint, jboolean);
+
+/*
+ * Class:     ChessBoard
+ * Method:    undoMove
+ * Signature: ()Z
+ */
+JNIEXPORT jboolean JNICALL Java_ChessBoard_undoMove
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    redoMove
+ * Signature: ()Z
+ */
+JNIEXPORT jboolean JNICALL Java_ChessBoard_redoMove
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     ChessBoard
+ * Method:    getMoveHistory
+ * Signature: ()[I
+ */
+JNIEXPORT jintArray JNICALL Java_ChessBoard_getMoveHistory
+  (JNIEnv *, jobject);
+
 #ifdef __cplusplus
 }
 #endif
@@ -0,0 +1,131 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH harness for the JNI engine. {@code jniRoundTrip} measures a call that does no engine work, so
+ * the JNI transition cost can be subtracted from the other benchmarks; {@code perftEngineOnly} is a
+ * single call spending all of its time inside the engine and is reported per node. Every benchmark runs
+ * once per {@code backend}: classic JNI and the experimental java.lang.foreign binding (ForeignChessBoard).
+ *
+ * Run from java/ with the JMH jars on the class path, e.g.:
+ *   javac --release 21 -cp "jmh/*" -d out src/*.java bench/ChessBoardBenchmark.java
+ *   javac --release 21 --enable-preview -cp out -d out ffm/ForeignChessBoard.java
+ *   java -cp "out:jmh/*" org.openjdk.jmh.Main ChessBoardBenchmark -rf json
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Djava.library.path=lib", "--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class ChessBoardBenchmark {
+
+    private static final int[][] CHECKMATED_WHITE = {
+            {-1, -2, -3,  0, -5, -3, -2, -1},
+            {-6, -6, -6, -6,  0, -6, -6, -6},
+            { 0,  0,  0,  0,  0,  0,  0,  0},
+            { 0,  0,  0,  0, -6,  0,  0,  0},
+            { 0,  0,  0,  0,  0,  0,  6, -4},
+            { 0,  0,  0,  0,  0,  6,  0,  0},
+            { 6,  6,  6,  6,  6,  0,  0,  6},
+            { 1,  2,  3,  4,  5,  3,  2,  1}
+    };
+
+    private static final int[][] STALEMATED_BLACK = {
+            { 0,  0,  0,  0,  0,  0,  0, -5},
+            { 0,  0,  0,  0,  0,  4,  0,  0},
+            { 0,  0,  0,  0,  0,  0,  4,  0},
+            { 0,  0,  0,  0,  0,  0,  0,  0},
+            { 0,  0,  0,  0,  0,  0,  0,  0},
+            { 0,  0,  0,  0,  0,  0,  0,  0},
+            { 0,  0,  0,  0,  0,  0,  0,  0},
+            { 0,  0,  0,  0,  0,  0,  5,  0}
+    };
+
+    @Param({"jni", "ffm"})
+    public String backend;
+
+    private ChessBoard board;
+    private ChessBoard checkmateBoard;
+    private ChessBoard stalemateBoard;
+    private ChessBoard perftBoard;
+    private int[][] startPosition;
+    private int[] moveBuffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        board = ChessBoard.create(backend);
+        board.initializeBoard();
+        startPosition = board.getBoardState();
+        moveBuffer = new int[ChessBoard.MAX_MOVES];
+
+        checkmateBoard = ChessBoard.create(backend);
+        checkmateBoard.setBoardState(CHECKMATED_WHITE, true);
+        stalemateBoard = ChessBoard.create(backend);
+        stalemateBoard.setBoardState(STALEMATED_BLACK, false);
+        perftBoard = ChessBoard.create(backend);
+        perftBoard.initializeBoard();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        board.close();
+        checkmateBoard.close();
+        stalemateBoard.close();
+        perftBoard.close();
+    }
+
+    @Benchmark
+    public boolean jniRoundTrip() {
+        return board.isWhiteTurn();
+    }
+
+    @Benchmark
+    public boolean isInCheck() {
+        return board.isInCheck();
+    }
+
+    // The move is taken back right away: a repeating shuffle would end the game by threefold repetition
+    @Benchmark
+    public boolean movePiece() {
+        boolean moved = board.movePiece(7, 1, 5, 2);
+        board.undoMove();
+        return moved;
+    }
+
+    @Benchmark
+    public int[][] getBoardState() {
+        return board.getBoardState();
+    }
+
+    @Benchmark
+    public void setBoardState() {
+        board.setBoardState(startPosition, true);
+    }
+
+    @Benchmark
+    public int generateLegalMoves() {
+        return board.generateLegalMoves(moveBuffer);
+    }
+
+    @Benchmark
+    public void isCheckmate(Blackhole blackhole) {
+        blackhole.consume(board.isCheckmate(true));
+        blackhole.consume(checkmateBoard.isCheckmate(true));
+    }
+
+    @Benchmark
+    public void isStalemate(Blackhole blackhole) {
+        blackhole.consume(board.isStalemate(true));
+        blackhole.consume(stalemateBoard.isStalemate(false));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OperationsPerInvocation(197281)
+    public long perftEngineOnly() {
+        return perftBoard.perft(4);
+    }
+}
@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// Compiled and run with java/ffm and --enable-preview, like the backend it tests
+class ForeignChessBoardTest {
+    private ChessBoard chessBoard;
+    private ChessBoard foreign;
+
+    @BeforeEach
+    public void setUp() {
+        chessBoard = new ChessBoard();
+        chessBoard.initializeBoard();
+        foreign = ChessBoard.create("ffm");
+        foreign.initializeBoard();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        chessBoard.close();
+        foreign.close();
+    }
+
+    @Test
+    public void testForeignBackendMatchesJni() {
+        assertInstanceOf(ForeignChessBoard.class, foreign);
+        int[][] moves = {{6, 5, 5, 5}, {1, 4, 3, 4}, {6, 6, 4, 6}, {0, 3, 4, 7}};
+        for (int[] move : moves) {
+            assertArrayEquals(chessBoard.generateLegalMoves(), foreign.generateLegalMoves());
+            assertEquals(chessBoard.movePiece(move[0], move[1], move[2], move[3]), foreign.movePiece(move[0], move[1], move[2], move[3]));
+            assertArrayEquals(chessBoard.getBoardState(), foreign.getBoardState());
+            assertEquals(chessBoard.isWhiteTurn(), foreign.isWhiteTurn());
+            assertEquals(chessBoard.isInCheck(), foreign.isInCheck());
+            assertEquals(chessBoard.getPositionKey(), foreign.getPositionKey());
+        }
+        assertEquals(GameStatus.CHECKMATE_BLACK_WINS, foreign.getGameStatus());
+        assertTrue(foreign.isCheckmate(true), "Foreign backend should see the checkmate");
+
+        foreign.setBoardState(chessBoard.getBoardState(), true);
+        assertArrayEquals(chessBoard.getBoardState(), foreign.getBoardState(), "setBoardState should round-trip");
+        assertEquals(0, foreign.perft(1), "JNI calls should see the mated position set through FFM");
+    }
+
+    @Test
+    public void testClosedBoardIsRejected() {
+        ChessBoard closed = ChessBoard.create("ffm");
+        closed.close();
+        assertThrows(IllegalStateException.class, closed::isWhiteTurn);
+    }
+
+    @Test
+    public void testInvalidPieceValuesAreRejected() {
+        int[][] before = foreign.getBoardState();
+        int[][] corrupt = foreign.getBoardState();
+        corrupt[4][4] = 7;
+        assertThrows(IllegalArgumentException.class, () -> foreign.setBoardState(corrupt, true));
+        corrupt[4][4] = -9;
+        assertThrows(IllegalArgumentException.class, () -> foreign.setBoardState(corrupt, true));
+        assertThrows(IllegalArgumentException.class, () -> foreign.promotePawn(0, 0, 7));
+        assertThrows(IllegalArgumentException.class, () -> foreign.promotePawn(8, 0, 4));
+        assertArrayEquals(before, foreign.getBoardState(), "A rejected call should leave the board alone");
+    }
+
+    @Test
+    public void testForeignCallsAreTimed() {
+        boolean wasEnabled = EngineMetrics.isEnabled();
+        try {
+            EngineMetrics.setEnabled(true);
+            EngineMetrics.Snapshot before = EngineMetrics.snapshot();
+            foreign.isWhiteTurn();
+            foreign.getCurrentScore();
+            foreign.movePiece(6, 4, 4, 4);
+            EngineMetrics.Snapshot delta = EngineMetrics.snapshot().minus(before);
+            assertEquals(1, delta.call(EngineMetrics.Call.IS_WHITE_TURN).calls());
+            assertEquals(1, delta.call(EngineMetrics.Call.GET_CURRENT_SCORE).calls());
+            assertEquals(1, delta.call(EngineMetrics.Call.MOVE_PIECE).calls());
+        } finally {
+            EngineMetrics.setEnabled(wasEnabled);
+        }
+    }
+}
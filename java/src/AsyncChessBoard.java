@@ -0,0 +1,152 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs the calls of one {@link ChessBoard} on a dedicated engine thread and returns their results as
+ * {@link CompletableFuture}s, so a caller such as the Swing event thread never waits for the engine. Calls
+ * run one at a time in submission order, which is what keeps the board safe to use. A future cancelled
+ * before its call starts skips the call. Cancelling a search future whose search is running stops it; the
+ * search finishes its current iteration and frees the engine thread for the next call. Searches queued
+ * behind it, or running before it, are not affected.
+ *
+ * Results and progress are delivered on the engine thread; a GUI moves them over with
+ * {@code thenAcceptAsync(action, SwingUtilities::invokeLater)}. The facade owns the board and closes it
+ * in {@link #close()}.
+ */
+public final class AsyncChessBoard implements AutoCloseable {
+
+    private final ChessBoard board;
+    private final ExecutorService engine;
+
+    public AsyncChessBoard(ChessBoard board) {
+        this.board = board;
+        this.engine = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "chess-engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the task with the board on the engine thread. It must not keep the board or use it from any other
+     * thread.
+     */
+    public <T> CompletableFuture<T> submit(Function<ChessBoard, T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        engine.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(task.apply(board));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    public CompletableFuture<Boolean> movePiece(int fromRow, int fromCol, int toRow, int toCol) {
+        return submit(b -> b.movePiece(fromRow, fromCol, toRow, toCol));
+    }
+
+    public CompletableFuture<GameStatus> getGameStatus() {
+        return submit(ChessBoard::getGameStatus);
+    }
+
+    public CompletableFuture<Void> initializeBoard() {
+        return submit(b -> {
+            b.initializeBoard();
+            return null;
+        });
+    }
+
+    /**
+     * Searches on the engine thread as {@link ChessBoard#findBestMove(int, long, SearchListener)} does.
+     * {@code listener} may be null. Cancelling the returned future stops the search and no further progress
+     * reaches the listener; stages derived from it do not pass a cancellation on.
+     */
+    public CompletableFuture<SearchResult> findBestMove(int maxDepth, long timeBudgetMillis, SearchListener listener) {
+        SearchFuture future = new SearchFuture();
+        // The native stop flag is cleared when a search starts, so a cancel that lands just before that is
+        // caught at the first progress report instead, which comes right after depth 1
+        SearchListener cancellable = batch -> !future.isCancelled() && (listener == null || listener.onProgress(batch));
+        engine.execute(() -> {
+            if (!future.start()) {
+                return;
+            }
+            try {
+                future.complete(board.findBestMove(maxDepth, timeBudgetMillis, cancellable));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                future.finish();
+            }
+        });
+        return future;
+    }
+
+    /** Stops a running search, if any; it completes with the best move found so far. Safe from any thread. */
+    public void stopSearch() {
+        board.stopSearch();
+    }
+
+    /**
+     * Stops any search, lets the calls already submitted finish and closes the board. An interrupt does not
+     * cut the wait short, since the engine thread may still be using the board; it is kept for the caller.
+     */
+    @Override
+    public void close() {
+        if (engine.isShutdown()) {
+            return;
+        }
+        board.stopSearch();
+        engine.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (engine.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            board.stopSearch();
+        }
+        board.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The native stop flag belongs to whatever search is running, so a cancel only raises it while this
+    // future's own search runs; the lock keeps it from landing on the next search after this one ends
+    private final class SearchFuture extends CompletableFuture<SearchResult> {
+        private boolean running;
+
+        synchronized boolean start() {
+            running = !isDone();
+            return running;
+        }
+
+        synchronized void finish() {
+            running = false;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                synchronized (this) {
+                    if (running) {
+                        board.stopSearch();
+                    }
+                }
+            }
+            return cancelled;
+        }
+    }
+}
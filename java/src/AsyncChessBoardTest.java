@@ -0,0 +1,184 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class AsyncChessBoardTest {
+
+    private AsyncChessBoard board;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        board = new AsyncChessBoard(new ChessBoard());
+        board.initializeBoard().get();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        board.close();
+    }
+
+    @Test
+    public void testProgressIsStreamed() throws Exception {
+        List<SearchProgress> progress = new ArrayList<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        SearchResult result = board.findBestMove(5, 0, batch -> {
+            progress.addAll(batch);
+            batchSizes.add(batch.size());
+            return true;
+        }).get(30, TimeUnit.SECONDS);
+
+        assertEquals(5, progress.size(), "Every iteration should be reported: " + progress);
+        assertEquals(1, (int) batchSizes.get(0), "The first iteration should be reported on its own");
+        for (int i = 0; i < progress.size(); i++) {
+            assertEquals(i + 1, progress.get(i).depth());
+            assertTrue(progress.get(i).principalVariation().length >= 1);
+        }
+        SearchProgress last = progress.get(progress.size() - 1);
+        assertEquals(result.move(), last.bestMove());
+        assertEquals(result.score(), last.score());
+
+        int[] line = last.principalVariation();
+        board.submit(b -> {
+            for (int move : line) {
+                assertTrue(Arrays.stream(b.generateLegalMoves()).anyMatch(m -> m == move), "The line should be playable");
+                assertEquals(-1, b.applyMoves(new int[] {move}, 0, 1));
+            }
+            return null;
+        }).get();
+    }
+
+    @Test
+    public void testProgressDoesNotChangeTheResult() throws Exception {
+        SearchResult plain = board.submit(b -> b.findBestMove(4, 0)).get();
+        SearchResult reported = board.findBestMove(4, 0, batch -> true).get();
+        assertEquals(plain.move(), reported.move());
+        assertEquals(plain.score(), reported.score());
+        assertEquals(plain.nodes(), reported.nodes());
+    }
+
+    @Test
+    public void testListenerCanStopTheSearch() throws Exception {
+        List<Integer> lastDepths = new ArrayList<>();
+        SearchResult result = board.findBestMove(0, 0, batch -> {
+            lastDepths.add(batch.get(batch.size() - 1).depth());
+            return batch.get(batch.size() - 1).depth() < 2;
+        }).get(30, TimeUnit.SECONDS);
+        assertTrue(lastDepths.get(lastDepths.size() - 1) >= 2, "Nothing should be reported after the listener said stop");
+        assertEquals((int) lastDepths.get(lastDepths.size() - 1), result.depth(), "The search should end with the last reported iteration");
+        assertTrue(result.hasMove());
+    }
+
+    @Test
+    public void testListenerExceptionFailsTheSearch() {
+        CompletableFuture<SearchResult> future = board.findBestMove(0, 0, batch -> {
+            throw new IllegalStateException("listener failed");
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(30, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    public void testCancelStopsTheSearch() throws Exception {
+        AtomicBoolean reportedAfterCancel = new AtomicBoolean();
+        CompletableFuture<SearchResult> search = board.findBestMove(0, 0, batch -> true);
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        assertTrue(search.cancel(true));
+        CompletableFuture<SearchResult> next = board.findBestMove(1, 0, batch -> {
+            reportedAfterCancel.set(true);
+            return true;
+        });
+        assertTrue(next.get(2, TimeUnit.SECONDS).hasMove());
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMillis < 2000, "The engine should be free soon after cancel, took " + elapsedMillis + " ms");
+        assertTrue(search.isCancelled());
+        assertTrue(reportedAfterCancel.get());
+    }
+
+    @Test
+    public void testCancellingAQueuedSearchLeavesTheRunningOneAlone() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        CompletableFuture<SearchResult> first = board.findBestMove(4, 0, batch -> {
+            running.countDown();
+            try {
+                cancelled.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        });
+        CompletableFuture<SearchResult> queued = board.findBestMove(4, 0, null);
+        assertTrue(running.await(30, TimeUnit.SECONDS));
+        assertTrue(queued.cancel(true));
+        cancelled.countDown();
+
+        assertEquals(4, first.get(30, TimeUnit.SECONDS).depth(), "The running search should not be cut short");
+        assertTrue(queued.isCancelled());
+    }
+
+    @Test
+    public void testInterruptedCloseWaitsForTheEngineThread() throws Exception {
+        CountDownLatch searching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<SearchResult> search = board.findBestMove(0, 0, batch -> {
+            searching.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        });
+        assertTrue(searching.await(30, TimeUnit.SECONDS));
+
+        AtomicBoolean stillInterrupted = new AtomicBoolean();
+        Thread closer = new Thread(() -> {
+            Thread.currentThread().interrupt();
+            board.close();
+            stillInterrupted.set(Thread.currentThread().isInterrupted());
+        });
+        closer.start();
+        closer.join(200);
+        assertTrue(closer.isAlive(), "close must not free the board while the search is using it");
+        release.countDown();
+        closer.join(30_000);
+        assertFalse(closer.isAlive());
+        assertTrue(stillInterrupted.get(), "The interrupt should be kept for the caller");
+        assertTrue(search.get().hasMove());
+    }
+
+    @Test
+    public void testCallsRunInOrderOnTheEngineThread() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean skippedRan = new AtomicBoolean();
+        CompletableFuture<String> blocking = board.submit(b -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Thread.currentThread().getName();
+        });
+        CompletableFuture<Boolean> skipped = board.submit(b -> skippedRan.getAndSet(true));
+        CompletableFuture<Boolean> move = board.movePiece(6, 4, 4, 4);
+        assertFalse(move.isDone(), "Calls must wait for the ones before them");
+        skipped.cancel(false);
+        release.countDown();
+
+        assertEquals("chess-engine", blocking.get());
+        assertTrue(move.get());
+        assertFalse(skippedRan.get(), "A call cancelled before it started should not run");
+        assertEquals(GameStatus.ONGOING, board.getGameStatus().get());
+    }
+}
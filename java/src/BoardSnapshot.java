@@ -0,0 +1,61 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Direct buffer the native engine rewrites after every state change of the board it is attached to
+ * (see {@link ChessBoard#attachSnapshot}). Reading it costs no JNI call and no allocation.
+ *
+ * Layout (native byte order): bytes 0-63 hold the piece on each square ({@code row * 8 + col}), byte 64
+ * the side to move, 65 the game-over flag, 66 whether the side to move is in check, 67 the
+ * {@link GameStatus} ordinal, then the white and black scores and a version counter as ints at 68, 72 and 76.
+ */
+public final class BoardSnapshot {
+    static final int SIZE = 80;
+    private static final int SIDE_TO_MOVE = 64;
+    private static final int GAME_OVER = 65;
+    private static final int IN_CHECK = 66;
+    private static final int STATUS = 67;
+    private static final int WHITE_SCORE = 68;
+    private static final int BLACK_SCORE = 72;
+    private static final int VERSION = 76;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(SIZE).order(ByteOrder.nativeOrder());
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int pieceAt(int row, int col) {
+        return buffer.get(row * 8 + col);
+    }
+
+    public boolean isWhiteTurn() {
+        return buffer.get(SIDE_TO_MOVE) != 0;
+    }
+
+    public boolean isGameOver() {
+        return buffer.get(GAME_OVER) != 0;
+    }
+
+    /** Whether the side to move is in check. */
+    public boolean isInCheck() {
+        return buffer.get(IN_CHECK) != 0;
+    }
+
+    public GameStatus status() {
+        return GameStatus.fromCode(buffer.get(STATUS));
+    }
+
+    public int whiteScore() {
+        return buffer.getInt(WHITE_SCORE);
+    }
+
+    public int blackScore() {
+        return buffer.getInt(BLACK_SCORE);
+    }
+
+    /** Increases with every update, so readers can tell whether anything changed since they last looked. */
+    public int version() {
+        return buffer.getInt(VERSION);
+    }
+}
@@ -1,8 +1,115 @@
-public class ChessBoard {
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Java side of the native engine. Every instance owns its own native game, so several games can
+ * live in one JVM and independent boards may be used from different threads at the same time.
+ * A single instance is not thread-safe. Call {@link #close()} to release the native game early;
+ * otherwise it is freed once the board becomes unreachable.
+ */
+public class ChessBoard implements AutoCloseable {
     static {
         System.loadLibrary("libChess");
+        if (Boolean.getBoolean("chess.metrics")) {
+            EngineMetrics.install();
+        }
+        String tablebases = System.getProperty("chess.tablebases");
+        if (tablebases != null) {
+            try {
+                Tablebases.loadDirectory(Path.of(tablebases));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /** Upper bound on the number of moves any generate call reports; a safe size for move buffers. */
+    public static final int MAX_MOVES = 256;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    // Read by the native side on every call; 0 once the board has been closed
+    private long nativeHandle;
+    private final Cleaner.Cleanable cleanable;
+    // Keeps the attached buffer reachable while native code writes to it
+    private BoardSnapshot snapshot;
+
+    // The Cleaner only keeps a phantom reference to the board, so handing it this early is harmless
+    @SuppressWarnings("this-escape")
+    public ChessBoard() {
+        long handle = createGame();
+        nativeHandle = handle;
+        cleanable = CLEANER.register(this, () -> destroyGame(handle));
+    }
+
+    /**
+     * Creates a board on the backend named by the {@code chess.backend} system property, see {@link #create(String)}.
+     */
+    public static ChessBoard create() {
+        return create(System.getProperty("chess.backend", "jni"));
+    }
+
+    /**
+     * Creates a board on the given backend: {@code jni} for this class or the experimental {@code ffm}, which
+     * calls the engine through java.lang.foreign ({@code ForeignChessBoard} in java/ffm). The latter is only
+     * there when that class was compiled, and on Java 21 only runs with {@code --enable-preview}; otherwise this
+     * throws UnsupportedOperationException.
+     */
+    public static ChessBoard create(String backend) {
+        return switch (backend) {
+            case "jni" -> new ChessBoard();
+            case "ffm" -> createForeign();
+            default -> throw new IllegalArgumentException("Unknown chess backend: " + backend);
+        };
+    }
+
+    // Looked up by name so the JNI path never links ForeignChessBoard, whose class file is marked as preview
+    private static ChessBoard createForeign() {
+        try {
+            return (ChessBoard) Class.forName("ForeignChessBoard").getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException | UnsupportedClassVersionError e) {
+            throw new UnsupportedOperationException("The ffm backend needs java/ffm on the class path and --enable-preview", e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        nativeHandle = 0;
+        cleanable.clean();
+    }
+
+    // Address of the native game for ForeignChessBoard; 0 once closed
+    long handle() {
+        return nativeHandle;
     }
 
+    private static native long createGame();
+    private static native void destroyGame(long handle);
+    private native void attachSnapshotBuffer(ByteBuffer buffer);
+    private native int gameStatus();
+
+    // Process-wide engine metrics, read through EngineMetrics
+    static native void enableMetrics(boolean enabled);
+    static native boolean metricsEnabled();
+    static native void readMetrics(long[] values);
+
+    // Process-wide endgame tablebases, loaded and generated through Tablebases
+    static native void registerTablebase(ByteBuffer table);
+    static native void generateTablebase(String signature, String path, int threads) throws IOException;
+    private native int tablebaseValue();
 
     public native void initializeBoard();
     public native int[][] getBoardState();
@@ -10,12 +117,218 @@ public class ChessBoard {
     public native boolean isCheckmate(boolean checkWhite);
     public native boolean isWhiteTurn();
     public native boolean isInCheck();
+    /** Throws IllegalArgumentException, leaving the board alone, if a square holds a value outside -6..6. */
     public native void setBoardState(int[][] newBoard, boolean isWhiteTurn);
     public native boolean isStalemate(boolean checkWhite);
     public native int[] getCurrentScore();
+
+    /**
+     * Check, checkmate, stalemate or a draw by repetition or the fifty-move rule in one call. The result is cached natively
+     * until the board changes. Once a game has ended, the side that was mated or stalemated is judged.
+     */
+    public GameStatus getGameStatus() {
+        return GameStatus.fromCode(gameStatus());
+    }
+
+    /** Throws IllegalArgumentException for a square off the board or a piece value outside -6..6. */
     public native void promotePawn(int row, int col, int promotedPiece);
 
+    /**
+     * Perfect-play result for the side to move from the loaded {@link Tablebases}, or null if none covers the
+     * position. Status checks and {@link #findBestMove} consult the tables on their own.
+     */
+    public TablebaseResult probeTablebase() {
+        return TablebaseResult.fromValue(tablebaseValue());
+    }
+
+    /**
+     * 64-bit Zobrist key of the position including the side to move, kept up to date move by move.
+     * Equal positions give equal keys, so it can serve as a cache or dedup key.
+     */
+    public native long getPositionKey();
 
+    /** Plies since the last capture or pawn move; the game is drawn when it reaches 100. */
+    public native int getHalfmoveClock();
 
-}
+    /**
+     * Loads a position from FEN, including the halfmove clock and the move number; both may be left out.
+     * Castling and en passant rights are accepted but dropped, as the engine has neither rule. FEN carries no
+     * scores, so each side's score becomes the material missing from the opponent's starting set. Clears the
+     * move history. Throws IllegalArgumentException if the FEN cannot be read, a side has no single king or
+     * there are more than 32 pieces.
+     */
+    public native void setFen(String fen);
+
+    /** The position as FEN; castling and en passant are always {@code -}. */
+    public native String getFen();
+
+    /**
+     * Loads the {@link PackedPositions packed position} at the buffer's position, which must be a direct buffer,
+     * and advances past it. Unlike {@link #setFen} this restores the scores exactly. Clears the move history.
+     */
+    public void loadPackedPosition(ByteBuffer source) {
+        int offset = PackedPositions.checkRecord(source);
+        readPackedPosition(source, offset);
+        source.position(offset + PackedPositions.SIZE);
+    }
+
+    /**
+     * Writes the position packed at the buffer's position, which must be a direct buffer, and advances past it.
+     * Throws IllegalArgumentException if the board holds more than the 32 pieces the format has room for.
+     */
+    public void storePackedPosition(ByteBuffer target) {
+        int offset = PackedPositions.checkRecord(target);
+        writePackedPosition(target, offset);
+        target.position(offset + PackedPositions.SIZE);
+    }
+
+    private native void readPackedPosition(ByteBuffer buffer, int offset);
+    private native void writePackedPosition(ByteBuffer buffer, int offset);
+
+    // Bulk conversions behind PackedPositions; both return bytes of text in the high and records in the low int
+    static native long fenToPacked(ByteBuffer text, int textStart, int textEnd, ByteBuffer packed, int packedStart, int packedEnd);
+    static native long packedToFen(ByteBuffer packed, int packedStart, int packedEnd, ByteBuffer text, int textStart, int textEnd);
+
+    /** Legal moves of the side to move, packed as described at {@link #packMove}. Empty once the game is over. */
+    public native int[] generateLegalMoves();
 
+    /**
+     * Writes the legal moves into the buffer without allocating and returns how many there are.
+     * If the buffer is shorter than the result only its first {@code buffer.length} entries are filled.
+     */
+    public native int generateLegalMoves(int[] buffer);
+
+    /** Like {@link #generateLegalMoves()} but keeps moves that leave the own king in check. */
+    public native int[] generatePseudoLegalMoves();
+    public native int generatePseudoLegalMoves(int[] buffer);
+
+    /**
+     * Static evaluation of the current position in centipawns from the side to move's point of view:
+     * material and piece-square tables (kept up to date move by move), mobility, pawn structure and
+     * king safety, blended between middlegame and endgame weights. The search scores leaves with it.
+     */
+    public native int evaluate();
+
+    /** Counts the leaf nodes of the legal move tree of the given depth from the current position. */
+    public native long perft(int depth);
+
+    /**
+     * Searches the current position with iterative-deepening alpha-beta and returns the best move found.
+     * {@code maxDepth <= 0} lifts the depth limit and {@code timeBudgetMillis <= 0}, or more than a year, the
+     * deadline; with a deadline the search still finishes depth 1 so a move is always returned while the
+     * game is ongoing.
+     */
+    public native SearchResult findBestMove(int maxDepth, long timeBudgetMillis);
+
+    /**
+     * Like {@link #findBestMove(int, long)}, reporting every completed iteration to the listener. An exception
+     * the listener throws stops the search and is thrown from here.
+     */
+    public SearchResult findBestMove(int maxDepth, long timeBudgetMillis, SearchListener listener) {
+        return searchWithProgress(maxDepth, timeBudgetMillis, listener);
+    }
+
+    private native SearchResult searchWithProgress(int maxDepth, long timeBudgetMillis, SearchListener listener);
+
+    // Upcall from searchWithProgress: records of depth, score, nodes, milliseconds, line length and the line
+    private boolean reportProgress(SearchListener listener, long[] batch, int length) {
+        List<SearchProgress> progress = new ArrayList<>();
+        for (int i = 0; i < length; ) {
+            int[] line = new int[(int) batch[i + 4]];
+            for (int j = 0; j < line.length; j++) {
+                line[j] = (int) batch[i + 5 + j];
+            }
+            progress.add(new SearchProgress((int) batch[i], (int) batch[i + 1], batch[i + 2], batch[i + 3], line));
+            i += 5 + line.length;
+        }
+        return listener.onProgress(progress);
+    }
+
+    /**
+     * Number of native threads {@link #findBestMove} runs (Lazy SMP over a shared lock-free
+     * transposition table). Defaults to 1, which keeps results deterministic without a time budget.
+     */
+    public native void setSearchThreads(int threads);
+
+    /**
+     * Asks a running {@link #findBestMove} on this board to finish; it returns the best move of the last
+     * completed iteration. The one call that may be made from another thread while the board is in use.
+     */
+    public native void stopSearch();
+
+    /**
+     * Plays {@code count} packed moves starting at {@code offset} in one native call and returns the index
+     * (relative to {@code offset}) of the first move that is illegal, or -1 if all of them were played.
+     * Moves before the rejected one stay on the board. A pawn reaching the last rank becomes the piece in
+     * the move's promotion bits, or a queen when they are empty; promotion bits on any other move, or naming
+     * a pawn or king, make the move illegal.
+     */
+    public int applyMoves(int[] packedMoves, int offset, int count) {
+        return applyMoves(packedMoves, offset, count, false);
+    }
+
+    /**
+     * Like {@link #applyMoves(int[], int, int)}; with {@code trusted} set the moves are not checked for
+     * legality, only that a piece of the side to move stands on each from square, that the move captures
+     * neither a piece of its own nor a king, and that its promotion bits fit. Meant for replaying games
+     * that were validated before.
+     */
+    public native int applyMoves(int[] packedMoves, int offset, int count, boolean trusted);
+
+    /**
+     * Takes back the last move, restoring any captured piece, the scores, the turn and the game-over
+     * flag. Returns false if there is nothing to undo. initializeBoard, setBoardState and promotePawn
+     * on any square but the last move's destination clear the history.
+     */
+    public native boolean undoMove();
+
+    /** Plays the last undone move again; returns false if there is none. A new move drops the redo list. */
+    public native boolean redoMove();
+
+    /**
+     * Moves played since the history was last cleared, oldest first and packed as described at {@link #packMove}.
+     * A promotion carries the piece the pawn became.
+     */
+    public native int[] getMoveHistory();
+
+    /**
+     * Registers a snapshot the engine fills in right away and rewrites after every state change, so
+     * callers can read the position without getBoardState. Pass null to detach.
+     */
+    public void attachSnapshot(BoardSnapshot snapshot) {
+        attachSnapshotBuffer(snapshot == null ? null : snapshot.buffer());
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Packs a move the way the native side reports it: from square in bits 0-5, to square in bits 6-11
+     * and the promotion piece type in bits 12-14, where a square is {@code row * 8 + col}.
+     */
+    public static int packMove(int fromRow, int fromCol, int toRow, int toCol) {
+        return (fromRow * 8 + fromCol) | ((toRow * 8 + toCol) << 6);
+    }
+
+    public static int moveFromRow(int move) {
+        return (move & 63) / 8;
+    }
+
+    public static int moveFromCol(int move) {
+        return (move & 63) % 8;
+    }
+
+    public static int moveToRow(int move) {
+        return ((move >> 6) & 63) / 8;
+    }
+
+    public static int moveToCol(int move) {
+        return ((move >> 6) & 63) % 8;
+    }
+
+    /**
+     * Piece type a pawn is promoted to, or 0 if the move is not a promotion. Generated moves always
+     * promote to a queen (4); the move history also records a piece picked later with promotePawn.
+     */
+    public static int movePromotion(int move) {
+        return (move >> 12) & 7;
+    }
+}
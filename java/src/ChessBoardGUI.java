@@ -4,7 +4,6 @@ import java.awt.*;
 import java.awt.event.*;
 import javax.swing.*;
 import java.util.HashMap;
-import java.util.Map;
 
 
 public class ChessBoardGUI extends JFrame {
@@ -16,13 +15,21 @@ public class ChessBoardGUI extends JFrame {
     private Clip captureSound;
     private JPanel boardPanel;
     private JButton[][] squares = new JButton[BOARD_SIZE][BOARD_SIZE];
-    private ImageIcon selectedPiece = null;
     private int selectedRow = -1;
     private int selectedCol = -1;
     private int fromRow = -1;
     private int fromCol = -1;
     private HashMap<String, ImageIcon> pieceImages = new HashMap<>();
     private ChessBoard chessBoard = new ChessBoard();
+    // Every engine call after startup goes through here, so the event thread never waits for native code
+    private final AsyncChessBoard engine = new AsyncChessBoard(chessBoard);
+    // Set while a move or reset is with the engine; clicks and Enter are ignored until the result is shown
+    private boolean engineBusy;
+    private BoardSnapshot snapshot = new BoardSnapshot();
+    // Pieces as last drawn, row * 8 + col; updateBoard touches only the squares where the snapshot differs
+    private final int[] model = new int[BOARD_SIZE * BOARD_SIZE];
+    private int renderedVersion = -1;
+    private int checkedKingSquare = -1;
     private JLabel scoreLabelWhite = new JLabel("White: 0");
     private JLabel scoreLabelBlack = new JLabel("Black: 0");
     private final Color lightSquareColor = new Color(255, 255, 224);
@@ -36,6 +43,7 @@ public class ChessBoardGUI extends JFrame {
         setLayout(new BorderLayout());
         loadSounds();
         loadPieceImages();
+        chessBoard.attachSnapshot(snapshot);
         chessBoard.initializeBoard();
         initializeBoard();
         updateBoard();
@@ -48,9 +56,8 @@ public class ChessBoardGUI extends JFrame {
         add(statusPanel, BorderLayout.SOUTH);
     }
     private void updateScoreDisplay() {
-        int[] scores = chessBoard.getCurrentScore();
-        scoreLabelWhite.setText("White: " + scores[0]);
-        scoreLabelBlack.setText("Black: " + scores[1]);
+        scoreLabelWhite.setText("White: " + snapshot.whiteScore());
+        scoreLabelBlack.setText("Black: " + snapshot.blackScore());
     }
     private void loadPieceImages() {
         String[] pieces = {"rook", "knight", "bishop", "queen", "king", "pawn"};
@@ -149,7 +156,9 @@ public class ChessBoardGUI extends JFrame {
         actionMap.put("confirmMove", new AbstractAction() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                attemptMove(selectedRow, selectedCol);
+                if (!engineBusy) {
+                    attemptMove(selectedRow, selectedCol);
+                }
             }
         });
     }
@@ -159,7 +168,7 @@ public class ChessBoardGUI extends JFrame {
         int newCol = selectedCol + colChange;
 
         if (newRow >= 0 && newRow < BOARD_SIZE && newCol >= 0 && newCol < BOARD_SIZE) {
-            if (selectedRow != -1) {
+            if (selectedRow != -1 && selectedRow * BOARD_SIZE + selectedCol != checkedKingSquare) {
                 squares[selectedRow][selectedCol].setBorder(null);
             }
             selectedRow = newRow;
@@ -169,125 +178,143 @@ public class ChessBoardGUI extends JFrame {
     }
 
     private void handleSquareClick(int row, int col) {
-        if (selectedPiece == null && squares[row][col].getIcon() != null) {
-            int piece = getPieceValueFromIcon((ImageIcon)squares[row][col].getIcon());
-            if (isCurrentPlayersPiece(piece)) {
-                selectedPiece = (ImageIcon) squares[row][col].getIcon();
+        if (engineBusy) {
+            return;
+        }
+        if (fromRow == -1) {
+            if (isCurrentPlayersPiece(model[row * BOARD_SIZE + col])) {
                 selectedRow = fromRow = row;
                 selectedCol = fromCol = col;
                 squares[row][col].setBorder(BorderFactory.createLineBorder(Color.YELLOW, 4));
             }
-        } else if (selectedPiece != null) {
+        } else {
             attemptMove(row, col);
         }
     }
     private void attemptMove(int toRow, int toCol) {
-        int[][] boardBeforeMove = chessBoard.getBoardState();
-        if (boardBeforeMove == null) {
-            JOptionPane.showMessageDialog(this, "Failed to retrieve board state from C++.", "Error", JOptionPane.ERROR_MESSAGE);
+        boolean hasSelection = fromRow != -1 && toRow != -1;
+        int targetPiece = hasSelection ? model[toRow * BOARD_SIZE + toCol] : 0;
+        int movedPiece = hasSelection ? model[fromRow * BOARD_SIZE + fromCol] : 0;
+        int moveFromRow = fromRow;
+        int moveFromCol = fromCol;
+        clearSelectionBorder();
+        selectedRow = selectedCol = fromRow = fromCol = -1;
+        if (!hasSelection) {
+            JOptionPane.showMessageDialog(this, "Invalid move!", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-        int targetPiece = boardBeforeMove[toRow][toCol];
-
-        if (chessBoard.movePiece(fromRow, fromCol, toRow, toCol)) {
-            int movedPiece = boardBeforeMove[fromRow][fromCol];
-
-            if ((movedPiece == 6 && toRow == 0) || (movedPiece == -6 && toRow == 7)) {
-                handlePawnPromotion(toRow, toCol, movedPiece > 0);
+        boolean promotes = (movedPiece == 6 && toRow == 0) || (movedPiece == -6 && toRow == 7);
+        engineBusy = true;
+        engine.submit(board -> {
+            boolean moved = board.movePiece(moveFromRow, moveFromCol, toRow, toCol);
+            if (moved && promotes) {
+                board.promotePawn(toRow, toCol, movedPiece > 0 ? 4 : -4);
             }
-            updateBoard();
-            updateTurnLabel();
-            updateScoreDisplay();
-
-            playSound(targetPiece != 0 ? captureSound : moveSound);
-            checkForCheckmate();
-        } else {
-            JOptionPane.showMessageDialog(this, "Invalid move!", "Error", JOptionPane.ERROR_MESSAGE);
-        }
-
-        selectedPiece = null;
-        selectedRow = selectedCol = fromRow = fromCol = -1;
-    }
-
-    private void handlePawnPromotion(int row, int col, boolean isWhite) {
-        chessBoard.promotePawn(row, col, isWhite ? 4 : -4);
-        updateBoard();
+            return moved;
+        }).whenCompleteAsync((moved, error) -> {
+            engineBusy = false;
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Engine error: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            } else if (moved) {
+                updateBoard();
+                updateTurnLabel();
+                updateScoreDisplay();
+
+                playSound(targetPiece != 0 ? captureSound : moveSound);
+                checkForGameEnd();
+            } else {
+                JOptionPane.showMessageDialog(this, "Invalid move!", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }, SwingUtilities::invokeLater);
     }
 
     private void highlightKingInCheck() {
-        int[][] boardState = chessBoard.getBoardState();
-        if (boardState == null) return;
-
-        boolean inCheck = chessBoard.isInCheck();
-        for (int row = 0; row < BOARD_SIZE; row++) {
-            for (int col = 0; col < BOARD_SIZE; col++) {
-                int piece = boardState[row][col];
-                if ((chessBoard.isWhiteTurn() && piece == W_KING) || (!chessBoard.isWhiteTurn() && piece == B_KING)) {
-                    squares[row][col].setBorder(inCheck ? BorderFactory.createLineBorder(Color.RED, 4) : null);
-                    return;
+        int kingSquare = -1;
+        if (snapshot.isInCheck()) {
+            int king = snapshot.isWhiteTurn() ? W_KING : B_KING;
+            for (int square = 0; square < model.length && kingSquare == -1; square++) {
+                if (model[square] == king) {
+                    kingSquare = square;
                 }
             }
         }
+        if (kingSquare == checkedKingSquare) {
+            return;
+        }
+        if (checkedKingSquare != -1) {
+            squareAt(checkedKingSquare).setBorder(null);
+        }
+        if (kingSquare != -1) {
+            squareAt(kingSquare).setBorder(BorderFactory.createLineBorder(Color.RED, 4));
+        }
+        checkedKingSquare = kingSquare;
     }
 
     private boolean isCurrentPlayersPiece(int piece) {
-        return (chessBoard.isWhiteTurn() && piece > 0) || (!chessBoard.isWhiteTurn() && piece < 0);
+        return (snapshot.isWhiteTurn() && piece > 0) || (!snapshot.isWhiteTurn() && piece < 0);
     }
-    private void resetBorders() {
-        for (int row = 0; row < BOARD_SIZE; row++)
-            for (int col = 0; col < BOARD_SIZE; col++)
-                squares[row][col].setBorder(null);
+    private JButton squareAt(int square) {
+        return squares[square / BOARD_SIZE][square % BOARD_SIZE];
     }
 
+    private void clearSelectionBorder() {
+        int square = fromRow * BOARD_SIZE + fromCol;
+        if (fromRow != -1 && square != checkedKingSquare) {
+            squares[fromRow][fromCol].setBorder(null);
+        }
+    }
+
+    // Each changed button repaints itself, so the panel is neither revalidated nor repainted as a whole
     private void updateBoard() {
-        int[][] boardState = chessBoard.getBoardState();
-        if (boardState == null) {
-            JOptionPane.showMessageDialog(this, "Failed to retrieve board state from C++.", "Error", JOptionPane.ERROR_MESSAGE);
+        int version = snapshot.version();
+        if (version == renderedVersion) {
             return;
         }
-
-        resetBorders();
-        for (int row = 0; row < BOARD_SIZE; row++)
-            for (int col = 0; col < BOARD_SIZE; col++)
-                squares[row][col].setIcon(getPieceIcon(boardState[row][col]));
-
-        boardPanel.revalidate();
-        boardPanel.repaint();
+        renderedVersion = version;
+        for (int row = 0; row < BOARD_SIZE; row++) {
+            for (int col = 0; col < BOARD_SIZE; col++) {
+                int square = row * BOARD_SIZE + col;
+                int piece = snapshot.pieceAt(row, col);
+                if (piece != model[square]) {
+                    model[square] = piece;
+                    squares[row][col].setIcon(getPieceIcon(piece));
+                }
+            }
+        }
         highlightKingInCheck();
-        checkForCheckmate();
     }
 
-    private void checkForCheckmate() {
-        if (chessBoard.isCheckmate(!chessBoard.isWhiteTurn())) {
-            String winner = chessBoard.isWhiteTurn() ? "White" : "Black";
+    private void checkForGameEnd() {
+        GameStatus status = snapshot.status();
+        if (status.isCheckmate()) {
+            String winner = status == GameStatus.CHECKMATE_WHITE_WINS ? "White" : "Black";
             JOptionPane.showMessageDialog(this, winner + " wins by checkmate!", "Game Over", JOptionPane.INFORMATION_MESSAGE);
             resetGame();
-        } else {
-            checkForStalemate();
-        }
-    }
-
-
-    private void checkForStalemate() {
-        if (chessBoard.isStalemate(!chessBoard.isWhiteTurn())) {
+        } else if (status == GameStatus.STALEMATE) {
             JOptionPane.showMessageDialog(this, "The game ends in a stalemate!", "Game Over", JOptionPane.INFORMATION_MESSAGE);
             resetGame();
+        } else if (status.isDraw()) {
+            String rule = status == GameStatus.DRAW_REPETITION ? "threefold repetition" : "the fifty-move rule";
+            JOptionPane.showMessageDialog(this, "The game is drawn by " + rule + "!", "Game Over", JOptionPane.INFORMATION_MESSAGE);
+            resetGame();
         }
     }
 
     private void resetGame() {
-        chessBoard.initializeBoard();
-        selectedPiece = null;
-        selectedRow = selectedCol = -1;
-        resetBorders();
-        updateBoard();
-        updateTurnLabel();
-        updateScoreDisplay();
+        clearSelectionBorder();
+        selectedRow = selectedCol = fromRow = fromCol = -1;
+        engineBusy = true;
+        engine.initializeBoard().thenRunAsync(() -> {
+            engineBusy = false;
+            updateBoard();
+            updateTurnLabel();
+            updateScoreDisplay();
+        }, SwingUtilities::invokeLater);
     }
 
     private void updateTurnLabel() {
-        turnLabel.setText("Turn: " + (chessBoard.isWhiteTurn() ? "White" : "Black"));
+        turnLabel.setText("Turn: " + (snapshot.isWhiteTurn() ? "White" : "Black"));
     }
     private ImageIcon getPieceIcon(int piece) {
         String key = "";
@@ -308,28 +335,6 @@ public class ChessBoardGUI extends JFrame {
         }
         return pieceImages.get(key);
     }
-    private int getPieceValueFromIcon(ImageIcon icon) {
-        for (Map.Entry<String, ImageIcon> entry : pieceImages.entrySet()) {
-            if (entry.getValue().equals(icon)) {
-                switch (entry.getKey()) {
-                    case "white_rook": return 1;
-                    case "white_knight": return 2;
-                    case "white_bishop": return 3;
-                    case "white_queen": return 4;
-                    case "white_king": return 5;
-                    case "white_pawn": return 6;
-                    case "black_rook": return -1;
-                    case "black_knight": return -2;
-                    case "black_bishop": return -3;
-                    case "black_queen": return -4;
-                    case "black_king": return -5;
-                    case "black_pawn": return -6;
-                }
-            }
-        }
-        return 0;
-    }
-
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> new ChessBoardGUI().setVisible(true));
     }
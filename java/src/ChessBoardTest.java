@@ -1,7 +1,15 @@
 import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 //    {-1, -2, -3, -4, -5, -3, -2, -1},
 //    {-6, -6, -6, -6, -6, -6, -6, -6},
 //    { 0,  0,  0,  0,  0,  0,  0,  0},
@@ -21,6 +29,11 @@ class ChessBoardTest {
         chessBoard.initializeBoard();
     }
 
+    @AfterEach
+    public void tearDown() {
+        chessBoard.close();
+    }
+
     @Test
     public void testBoardInitialization() {
         int[][] boardState = chessBoard.getBoardState();
@@ -225,4 +238,650 @@ class ChessBoardTest {
         boolean isStalemate = chessBoard.isStalemate(false);
         assertTrue(isStalemate, "Black should be in stalemate");
     }
+
+    @Test
+    public void testGameStatus() {
+        BoardSnapshot snapshot = new BoardSnapshot();
+        chessBoard.attachSnapshot(snapshot);
+        assertEquals(GameStatus.ONGOING, chessBoard.getGameStatus(), "The initial position should be ongoing");
+
+        chessBoard.movePiece(6, 4, 4, 4);
+        chessBoard.movePiece(1, 5, 2, 5);
+        chessBoard.movePiece(7, 3, 3, 7);
+        assertEquals(GameStatus.CHECK, chessBoard.getGameStatus(), "Qh5 should give check");
+        assertEquals(GameStatus.CHECK, snapshot.status(), "Snapshot should carry the same status");
+
+        chessBoard.initializeBoard();
+        chessBoard.movePiece(6, 5, 5, 5);
+        chessBoard.movePiece(1, 4, 3, 4);
+        chessBoard.movePiece(6, 6, 4, 6);
+        chessBoard.movePiece(0, 3, 4, 7);
+        assertEquals(GameStatus.CHECKMATE_BLACK_WINS, chessBoard.getGameStatus(), "Fool's mate should be recognised");
+        assertEquals(GameStatus.CHECKMATE_BLACK_WINS, snapshot.status(), "Snapshot should carry the same status");
+        assertTrue(chessBoard.isCheckmate(true), "Cached status should agree with isCheckmate");
+
+        chessBoard.setBoardState(new int[][] {
+                { 0,  0,  0,  0,  0,  0,  0, -5},
+                { 0,  0,  0,  0,  0,  4,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  4,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  5,  0}
+        }, false);
+        assertEquals(GameStatus.STALEMATE, chessBoard.getGameStatus(), "A new position should not reuse the cached status");
+    }
+
+    @Test
+    public void testBoardsAreIndependent() {
+        try (ChessBoard other = new ChessBoard()) {
+            other.initializeBoard();
+            assertTrue(chessBoard.movePiece(6, 4, 4, 4), "White pawn should move on the first board");
+
+            assertTrue(other.isWhiteTurn(), "Second board should still be on white's turn");
+            assertEquals(6, other.getBoardState()[6][4], "Second board should keep its pawn at (6,4)");
+            assertEquals(0, chessBoard.getBoardState()[6][4], "First board should have moved its pawn");
+        }
+    }
+
+    @Test
+    public void testClosedBoardRejectsCalls() {
+        ChessBoard closed = new ChessBoard();
+        closed.close();
+        closed.close();
+        assertThrows(IllegalStateException.class, closed::initializeBoard);
+    }
+
+    @Test
+    public void testConcurrentGames() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[][]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    try (ChessBoard board = new ChessBoard()) {
+                        for (int game = 0; game < 200; game++) {
+                            board.initializeBoard();
+                            board.movePiece(6, 5, 5, 5);
+                            board.movePiece(1, 4, 3, 4);
+                            board.movePiece(6, 6, 4, 6);
+                            board.movePiece(0, 3, 4, 7);
+                        }
+                        return board.isCheckmate(true) ? board.getBoardState() : null;
+                    }
+                }));
+            }
+            for (Future<int[][]> result : results) {
+                int[][] boardState = result.get();
+                assertNotNull(boardState, "Every game should end in the same checkmate");
+                assertEquals(-4, boardState[4][7], "Black queen should be at (4,7)");
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testLegalMovesFromStart() {
+        int[] moves = chessBoard.generateLegalMoves();
+        assertEquals(20, moves.length, "White should have 20 legal moves in the initial position");
+
+        int[] buffer = new int[ChessBoard.MAX_MOVES];
+        assertEquals(20, chessBoard.generateLegalMoves(buffer), "Buffer variant should report the same count");
+
+        int knightMove = ChessBoard.packMove(7, 1, 5, 2);
+        boolean found = false;
+        for (int i = 0; i < 20; i++) {
+            found |= buffer[i] == knightMove;
+        }
+        assertTrue(found, "Knight move from (7,1) to (5,2) should be listed");
+    }
+
+    @Test
+    public void testPseudoLegalMovesIncludePinnedPiece() {
+        chessBoard.setBoardState(new int[][] {
+                { 0,  0,  0,  0, -5,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0, -1,  0,  0,  0}, // Black rook pins the white knight
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  2,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  5,  0,  0,  0}
+        }, true);
+
+        int[] legal = chessBoard.generateLegalMoves();
+        int[] pseudo = chessBoard.generatePseudoLegalMoves();
+        for (int move : legal) {
+            assertNotEquals(5, ChessBoard.moveFromRow(move), "Pinned knight should have no legal moves");
+        }
+        assertEquals(legal.length + 8, pseudo.length, "Pseudo-legal list should add the eight knight moves");
+    }
+
+    @Test
+    public void testPinnedRookAndDoubleCheck() {
+        chessBoard.setBoardState(new int[][] {
+                {-5,  0,  0,  0, -1,  0,  0,  0}, // Black rook pins the white rook against its king
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  1,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  5,  0,  0,  0}
+        }, true);
+        int rookMoves = 0;
+        for (int move : chessBoard.generateLegalMoves()) {
+            if (ChessBoard.moveFromRow(move) == 4) {
+                assertEquals(4, ChessBoard.moveToCol(move), "Pinned rook may only move along the pin");
+                rookMoves++;
+            }
+        }
+        assertEquals(6, rookMoves, "Pinned rook should reach e2, e3, e5, e6, e7 and capture on e8");
+
+        chessBoard.setBoardState(new int[][] {
+                { 0,  0,  0,  0, -5,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0, -1,  0,  0,  0},
+                { 0,  0,  0, -2,  0,  0,  0,  0}, // Knight and rook both give check
+                { 4,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  5,  0,  0,  0}
+        }, true);
+        for (int move : chessBoard.generateLegalMoves()) {
+            assertEquals(7, ChessBoard.moveFromRow(move), "Only the king may move in double check");
+            assertEquals(4, ChessBoard.moveFromCol(move), "Only the king may move in double check");
+        }
+    }
+
+    @Test
+    public void testNoMovesAfterCheckmate() {
+        chessBoard.movePiece(6, 5, 5, 5);
+        chessBoard.movePiece(1, 4, 3, 4);
+        chessBoard.movePiece(6, 6, 4, 6);
+        chessBoard.movePiece(0, 3, 4, 7);
+
+        assertEquals(0, chessBoard.generateLegalMoves().length, "A finished game should have no legal moves");
+    }
+
+    @Test
+    public void testPerftFromStart() {
+        assertEquals(20, chessBoard.perft(1), "Perft depth 1 from the initial position");
+        assertEquals(400, chessBoard.perft(2), "Perft depth 2 from the initial position");
+        assertEquals(8902, chessBoard.perft(3), "Perft depth 3 from the initial position");
+        assertTrue(chessBoard.isWhiteTurn(), "Perft should leave the game untouched");
+    }
+
+    @Test
+    public void testSearchFindsMateInOne() {
+        chessBoard.setBoardState(new int[][] {
+                { 0,  0,  0,  0,  0,  0, -5,  0},
+                { 0,  0,  0,  0,  0, -6, -6, -6},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  6,  6,  6},
+                { 1,  0,  0,  0,  0,  0,  5,  0}
+        }, true);
+
+        SearchResult result = chessBoard.findBestMove(4, 0);
+        assertEquals(ChessBoard.packMove(7, 0, 0, 0), result.move(), "Rook should deliver back-rank mate");
+        assertTrue(result.isMateScore() && result.score() > 0, "Score should announce a mate for white");
+        assertTrue(result.nodes() > 0, "Search should report visited nodes");
+    }
+
+    @Test
+    public void testSearchRespectsTimeBudget() {
+        long start = System.nanoTime();
+        SearchResult result = chessBoard.findBestMove(0, 200);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(result.hasMove(), "Search should return a move from the initial position");
+        assertTrue(result.depth() >= 1, "At least one iteration should complete");
+        assertTrue(elapsedMillis < 1000, "Search should stop close to its deadline, took " + elapsedMillis + " ms");
+        assertTrue(chessBoard.movePiece(ChessBoard.moveFromRow(result.move()), ChessBoard.moveFromCol(result.move()),
+                ChessBoard.moveToRow(result.move()), ChessBoard.moveToCol(result.move())), "Best move should be legal");
+    }
+
+    @Test
+    public void testHugeTimeBudgetMeansNoDeadline() {
+        assertEquals(4, chessBoard.findBestMove(4, Long.MAX_VALUE).depth(), "Long.MAX_VALUE should not overflow into a past deadline");
+    }
+
+    @Test
+    public void testSingleThreadSearchIsDeterministic() {
+        chessBoard.movePiece(6, 4, 4, 4);
+        SearchResult first = chessBoard.findBestMove(5, 0);
+        SearchResult second = chessBoard.findBestMove(5, 0);
+        assertEquals(first, second, "Repeated single-threaded searches should be identical");
+    }
+
+    @Test
+    public void testParallelSearchCanBeStopped() throws Exception {
+        chessBoard.setSearchThreads(4);
+        Thread stopper = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            chessBoard.stopSearch();
+        });
+
+        long start = System.nanoTime();
+        stopper.start();
+        SearchResult result = chessBoard.findBestMove(0, 0);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        stopper.join();
+
+        assertTrue(result.hasMove(), "Stopped search should still return a move");
+        assertTrue(elapsedMillis < 2000, "Search should stop soon after stopSearch, took " + elapsedMillis + " ms");
+        assertThrows(IllegalArgumentException.class, () -> chessBoard.setSearchThreads(0));
+    }
+
+    @Test
+    public void testSnapshotFollowsBoard() {
+        BoardSnapshot snapshot = new BoardSnapshot();
+        chessBoard.attachSnapshot(snapshot);
+        assertEquals(-5, snapshot.pieceAt(0, 4), "Snapshot should be filled in when attached");
+        assertTrue(snapshot.isWhiteTurn(), "White should be to move in the snapshot");
+        int version = snapshot.version();
+
+        chessBoard.movePiece(6, 4, 4, 4);
+        assertEquals(6, snapshot.pieceAt(4, 4), "Snapshot should show the moved pawn");
+        assertEquals(0, snapshot.pieceAt(6, 4), "Snapshot should show the vacated square");
+        assertFalse(snapshot.isWhiteTurn(), "Black should be to move in the snapshot");
+        assertTrue(snapshot.version() > version, "Version should advance after a move");
+
+        chessBoard.movePiece(1, 5, 2, 5);
+        chessBoard.movePiece(7, 3, 3, 7);
+        assertTrue(snapshot.isInCheck(), "Snapshot should report black in check");
+
+        version = snapshot.version();
+        assertFalse(chessBoard.movePiece(0, 0, 5, 5), "Illegal move should be rejected");
+        assertEquals(version, snapshot.version(), "Rejected moves should not touch the snapshot");
+
+        chessBoard.attachSnapshot(null);
+        chessBoard.initializeBoard();
+        assertEquals(version, snapshot.version(), "Detached snapshot should no longer change");
+    }
+
+    @Test
+    public void testApplyMovesReplaysGame() {
+        int[] moves = {
+                0, // padding before the offset
+                ChessBoard.packMove(6, 5, 5, 5),
+                ChessBoard.packMove(1, 4, 3, 4),
+                ChessBoard.packMove(6, 6, 4, 6),
+                ChessBoard.packMove(0, 3, 4, 7)
+        };
+        assertEquals(-1, chessBoard.applyMoves(moves, 1, 4), "Every move of the sequence should be played");
+        assertTrue(chessBoard.isCheckmate(true), "White should be in checkmate");
+        assertFalse(chessBoard.movePiece(6, 0, 5, 0), "No move should be possible after checkmate");
+
+        try (ChessBoard trusted = new ChessBoard()) {
+            trusted.initializeBoard();
+            assertEquals(-1, trusted.applyMoves(moves, 1, 4, true), "Trusted replay should play every move");
+            assertArrayEquals(chessBoard.getBoardState(), trusted.getBoardState(), "Both replays should reach the same position");
+            assertEquals(chessBoard.isWhiteTurn(), trusted.isWhiteTurn(), "Both replays should agree on the turn");
+        }
+    }
+
+    @Test
+    public void testApplyMovesHonoursPromotion() {
+        int[][] board = new int[8][8];
+        board[1][0] = 6;
+        board[1][7] = 6;
+        board[7][4] = 5;
+        board[0][2] = -5;
+        board[3][7] = -6;
+        chessBoard.setBoardState(board, true);
+        int knight = ChessBoard.packMove(1, 0, 0, 0) | (2 << 12);
+        assertEquals(-1, chessBoard.applyMoves(new int[] {knight}, 0, 1));
+        assertEquals(2, chessBoard.getBoardState()[0][0], "The pawn should become the knight it asked for");
+        assertEquals(3, chessBoard.getCurrentScore()[0]);
+
+        int[] corrupt = {
+                ChessBoard.packMove(3, 7, 4, 7) | (4 << 12), // promotion bits on a move that does not promote
+                ChessBoard.packMove(1, 7, 0, 7) | (5 << 12)  // promotion to a king
+        };
+        for (boolean trusted : new boolean[] {false, true}) {
+            chessBoard.setBoardState(board, false);
+            assertEquals(0, chessBoard.applyMoves(corrupt, 0, 1, trusted));
+            chessBoard.setBoardState(board, true);
+            assertEquals(0, chessBoard.applyMoves(corrupt, 1, 1, trusted));
+        }
+        assertEquals(6, chessBoard.getBoardState()[1][7], "Rejected moves should leave the board alone");
+    }
+
+    @Test
+    public void testTrustedApplyMovesRejectsCorruptCaptures() {
+        int[] ownPiece = {ChessBoard.packMove(7, 3, 6, 3)};
+        assertEquals(0, chessBoard.applyMoves(ownPiece, 0, 1, true), "A move onto its own piece should be rejected");
+        chessBoard.setBoardState(new int[][] {
+                {0, 0, 0, 0, -5, 0, 0, 0},
+                {0, 0, 0, 0, 0, 0, 0, 0},
+                {0, 0, 0, 0, 0, 0, 0, 0},
+                {0, 0, 0, 0, 0, 0, 0, 0},
+                {0, 0, 0, 0, 1, 0, 0, 0},
+                {0, 0, 0, 0, 0, 0, 0, 0},
+                {0, 0, 0, 0, 0, 0, 0, 0},
+                {0, 0, 0, 0, 5, 0, 0, 0}
+        }, true);
+        int[] kingCapture = {ChessBoard.packMove(4, 4, 0, 4)};
+        assertEquals(0, chessBoard.applyMoves(kingCapture, 0, 1, true), "Capturing a king should be rejected");
+        assertEquals(-5, chessBoard.getBoardState()[0][4]);
+    }
+
+    @Test
+    public void testApplyMovesStopsAtIllegalMove() {
+        int[] moves = {
+                ChessBoard.packMove(6, 4, 4, 4),
+                ChessBoard.packMove(1, 4, 3, 4),
+                ChessBoard.packMove(4, 4, 3, 4), // pawn cannot capture straight ahead
+                ChessBoard.packMove(7, 6, 5, 5)
+        };
+        assertEquals(2, chessBoard.applyMoves(moves, 0, moves.length), "Third move should be rejected");
+
+        int[][] boardState = chessBoard.getBoardState();
+        assertEquals(6, boardState[4][4], "First move should stay on the board");
+        assertEquals(-6, boardState[3][4], "Second move should stay on the board");
+        assertTrue(chessBoard.isWhiteTurn(), "White should still be to move");
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> chessBoard.applyMoves(moves, 2, 3));
+    }
+
+    @Test
+    public void testUndoRedoRestoresGame() {
+        int[][] start = chessBoard.getBoardState();
+        chessBoard.movePiece(6, 4, 4, 4);
+        chessBoard.movePiece(1, 3, 3, 3);
+        chessBoard.movePiece(4, 4, 3, 3); // exd5
+        int[][] afterCapture = chessBoard.getBoardState();
+        assertEquals(1, chessBoard.getCurrentScore()[0], "White should have captured a pawn");
+
+        assertTrue(chessBoard.undoMove(), "Capture should be undone");
+        assertEquals(-6, chessBoard.getBoardState()[3][3], "Captured pawn should be back");
+        assertEquals(0, chessBoard.getCurrentScore()[0], "Score should be restored");
+        assertTrue(chessBoard.isWhiteTurn(), "White should be to move again");
+
+        assertTrue(chessBoard.redoMove(), "Capture should be redone");
+        assertArrayEquals(afterCapture, chessBoard.getBoardState(), "Redo should reach the same position");
+        assertArrayEquals(new int[] {
+                ChessBoard.packMove(6, 4, 4, 4), ChessBoard.packMove(1, 3, 3, 3), ChessBoard.packMove(4, 4, 3, 3)
+        }, chessBoard.getMoveHistory());
+
+        while (chessBoard.undoMove()) {
+        }
+        assertArrayEquals(start, chessBoard.getBoardState(), "Undoing everything should restore the start");
+        assertEquals(0, chessBoard.getMoveHistory().length);
+
+        chessBoard.movePiece(6, 0, 5, 0);
+        assertFalse(chessBoard.redoMove(), "A new move should drop the redo list");
+    }
+
+    @Test
+    public void testUndoCheckmateAndPromotion() {
+        chessBoard.movePiece(6, 5, 5, 5);
+        chessBoard.movePiece(1, 4, 3, 4);
+        chessBoard.movePiece(6, 6, 4, 6);
+        chessBoard.movePiece(0, 3, 4, 7);
+        assertEquals(GameStatus.CHECKMATE_BLACK_WINS, chessBoard.getGameStatus());
+
+        assertTrue(chessBoard.undoMove(), "The mating move should be undone");
+        assertFalse(chessBoard.isWhiteTurn(), "Black should be to move again");
+        assertEquals(GameStatus.ONGOING, chessBoard.getGameStatus(), "The game should be on again");
+        assertTrue(chessBoard.movePiece(1, 0, 2, 0), "Moves should be accepted after the undo");
+
+        chessBoard.setBoardState(new int[][] {
+                { 0,  0,  0,  0,  0,  0,  0, -5},
+                { 6,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  5,  0,  0,  0}
+        }, true);
+        assertEquals(0, chessBoard.getMoveHistory().length, "setBoardState should clear the history");
+        chessBoard.movePiece(1, 0, 0, 0);
+        chessBoard.promotePawn(0, 0, 2);
+        assertEquals(2, ChessBoard.movePromotion(chessBoard.getMoveHistory()[0]), "The chosen piece should be recorded");
+
+        chessBoard.undoMove();
+        assertEquals(6, chessBoard.getBoardState()[1][0], "Undoing a promotion should bring the pawn back");
+        chessBoard.redoMove();
+        assertEquals(2, chessBoard.getBoardState()[0][0], "Redo should promote to the chosen piece");
+    }
+
+    @Test
+    public void testUnderpromotionScoresSurviveUndoAndRedo() {
+        chessBoard.setBoardState(new int[][] {
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 6,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0, -5},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  5,  0,  0,  0}
+        }, true);
+        int[] before = chessBoard.getCurrentScore();
+        chessBoard.movePiece(1, 0, 0, 0);
+        chessBoard.promotePawn(0, 0, 2);
+        int[] promoted = chessBoard.getCurrentScore();
+        assertArrayEquals(new int[] {before[0] + 3, before[1]}, promoted, "The score should count the knight, not the queen");
+        long key = chessBoard.getPositionKey();
+
+        chessBoard.undoMove();
+        assertArrayEquals(before, chessBoard.getCurrentScore());
+        chessBoard.redoMove();
+        assertArrayEquals(promoted, chessBoard.getCurrentScore(), "Redo should give the scores of the original play");
+        assertEquals(key, chessBoard.getPositionKey());
+    }
+
+    @Test
+    public void testUnderpromotionRejudgesTheGame() {
+        chessBoard.setBoardState(new int[][] {
+                { 0,  0,  0,  0,  0,  0,  0, -5},
+                { 6,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  5,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0},
+                { 0,  0,  0,  0,  0,  0,  0,  0}
+        }, true);
+        chessBoard.movePiece(1, 0, 0, 0);
+        assertEquals(GameStatus.CHECKMATE_WHITE_WINS, chessBoard.getGameStatus(), "The queen mates on the back rank");
+        chessBoard.promotePawn(0, 0, 1);
+        assertEquals(GameStatus.CHECKMATE_WHITE_WINS, chessBoard.getGameStatus(), "So does a rook");
+        chessBoard.promotePawn(0, 0, 3);
+        assertEquals(GameStatus.ONGOING, chessBoard.getGameStatus(), "A bishop does not");
+        assertFalse(chessBoard.isWhiteTurn(), "Black should be to move again");
+        assertTrue(chessBoard.movePiece(0, 7, 0, 6), "The game should go on");
+    }
+
+    @Test
+    public void testEvaluation() {
+        assertEquals(0, chessBoard.evaluate(), "The initial position is symmetric");
+
+        chessBoard.movePiece(6, 4, 4, 4);
+        chessBoard.movePiece(1, 3, 3, 3);
+        chessBoard.movePiece(4, 4, 3, 3); // exd5
+        int afterCapture = chessBoard.evaluate();
+        assertTrue(afterCapture < -50, "Black to move should be about a pawn down");
+
+        try (ChessBoard fresh = new ChessBoard()) {
+            fresh.setBoardState(chessBoard.getBoardState(), false);
+            assertEquals(afterCapture, fresh.evaluate(), "Incremental terms should match a freshly set up board");
+        }
+
+        while (chessBoard.undoMove()) {
+        }
+        assertEquals(0, chessBoard.evaluate(), "Undo should restore the incremental terms");
+    }
+
+    @Test
+    public void testThreefoldRepetition() {
+        long startKey = chessBoard.getPositionKey();
+        int[][] shuffle = {{7, 6, 5, 5}, {0, 6, 2, 5}, {5, 5, 7, 6}, {2, 5, 0, 6}};
+
+        chessBoard.movePiece(7, 6, 5, 5);
+        assertNotEquals(startKey, chessBoard.getPositionKey(), "A move should change the key");
+        for (int ply = 1; ply < 7; ply++) {
+            int[] move = shuffle[ply % 4];
+            assertTrue(chessBoard.movePiece(move[0], move[1], move[2], move[3]));
+        }
+        assertEquals(GameStatus.ONGOING, chessBoard.getGameStatus(), "Two occurrences are not a draw yet");
+        chessBoard.movePiece(2, 5, 0, 6);
+        assertEquals(startKey, chessBoard.getPositionKey(), "The start position should have the same key again");
+        assertEquals(GameStatus.DRAW_REPETITION, chessBoard.getGameStatus(), "Third occurrence should draw");
+        assertFalse(chessBoard.movePiece(7, 6, 5, 5), "No move should be possible after a draw");
+
+        chessBoard.undoMove();
+        assertEquals(GameStatus.ONGOING, chessBoard.getGameStatus(), "Undo should forget the repetition");
+    }
+
+    @Test
+    public void testHalfmoveClock() {
+        chessBoard.movePiece(7, 6, 5, 5);
+        chessBoard.movePiece(0, 6, 2, 5);
+        assertEquals(2, chessBoard.getHalfmoveClock(), "Knight moves should count");
+        chessBoard.movePiece(6, 4, 4, 4);
+        assertEquals(0, chessBoard.getHalfmoveClock(), "A pawn move should reset the count");
+        chessBoard.undoMove();
+        assertEquals(2, chessBoard.getHalfmoveClock(), "Undo should restore the count");
+    }
+
+    @Test
+    public void testInvalidPieceValuesAreRejected() {
+        int[][] before = chessBoard.getBoardState();
+        int[][] corrupt = chessBoard.getBoardState();
+        corrupt[4][4] = 7;
+        assertThrows(IllegalArgumentException.class, () -> chessBoard.setBoardState(corrupt, true));
+        corrupt[4][4] = -9;
+        assertThrows(IllegalArgumentException.class, () -> chessBoard.setBoardState(corrupt, true));
+        assertThrows(IllegalArgumentException.class, () -> chessBoard.promotePawn(0, 0, 7));
+        assertThrows(IllegalArgumentException.class, () -> chessBoard.promotePawn(8, 0, 4));
+        assertArrayEquals(before, chessBoard.getBoardState(), "A rejected call should leave the board alone");
+    }
+
+    @Test
+    public void testUnknownBackendIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ChessBoard.create("corba"));
+    }
+
+    @Test
+    public void testEngineMetrics() {
+        boolean wasEnabled = EngineMetrics.isEnabled();
+        try {
+            EngineMetrics.setEnabled(true);
+            EngineMetrics.Snapshot before = EngineMetrics.snapshot();
+            chessBoard.movePiece(6, 4, 4, 4);
+            chessBoard.isInCheck();
+            chessBoard.findBestMove(3, 0);
+            EngineMetrics.Snapshot delta = EngineMetrics.snapshot().minus(before);
+
+            assertEquals(1, delta.call(EngineMetrics.Call.MOVE_PIECE).calls());
+            assertEquals(1, delta.call(EngineMetrics.Call.FIND_BEST_MOVE).calls());
+            assertTrue(delta.call(EngineMetrics.Call.FIND_BEST_MOVE).totalNanos() > 0);
+            assertTrue(delta.counter(EngineMetrics.Counter.LEGALITY_PROBES) >= 1);
+            assertTrue(delta.counter(EngineMetrics.Counter.SEARCH_NODES) > 0);
+            assertTrue(delta.counter(EngineMetrics.Counter.CHECK_SCANS) >= delta.counter(EngineMetrics.Counter.SEARCH_NODES),
+                    "Every search node should scan for check");
+            assertTrue(delta.counter(EngineMetrics.Counter.TT_HITS) <= delta.counter(EngineMetrics.Counter.TT_PROBES));
+
+            EngineMetrics.Snapshot beforeGetters = EngineMetrics.snapshot();
+            chessBoard.isWhiteTurn();
+            chessBoard.getCurrentScore();
+            chessBoard.getFen();
+            EngineMetrics.Snapshot getters = EngineMetrics.snapshot().minus(beforeGetters);
+            assertEquals(1, getters.call(EngineMetrics.Call.IS_WHITE_TURN).calls(), "Trivial getters should be timed too");
+            assertEquals(1, getters.call(EngineMetrics.Call.GET_CURRENT_SCORE).calls());
+            assertEquals(1, getters.call(EngineMetrics.Call.GET_FEN).calls());
+
+            EngineMetrics.setEnabled(false);
+            EngineMetrics.Snapshot disabled = EngineMetrics.snapshot();
+            chessBoard.perft(2);
+            assertEquals(0, EngineMetrics.snapshot().minus(disabled).call(EngineMetrics.Call.PERFT).calls(),
+                    "Disabled metrics should not count");
+        } finally {
+            EngineMetrics.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    public void testFenRoundTrip() {
+        assertEquals("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1", chessBoard.getFen());
+        chessBoard.movePiece(6, 4, 4, 4);
+        chessBoard.movePiece(0, 6, 2, 5);
+        assertEquals("rnbqkb1r/pppppppp/5n2/8/4P3/8/PPPP1PPP/RNBQKBNR w - - 1 2", chessBoard.getFen());
+
+        String fen = "4k3/8/8/3q4/8/8/4P3/4K3 b - - 7 42";
+        chessBoard.setFen(fen);
+        assertEquals(fen, chessBoard.getFen());
+        assertFalse(chessBoard.isWhiteTurn());
+        assertEquals(7, chessBoard.getHalfmoveClock());
+        assertEquals(-4, chessBoard.getBoardState()[3][3]);
+        assertArrayEquals(new int[] {39 - 9, 39 - 1}, chessBoard.getCurrentScore(), "Scores should follow the missing material");
+
+        chessBoard.setFen("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1");
+        assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b - - 0 1", chessBoard.getFen(),
+                "Castling rights and en passant squares are not part of the engine's rules");
+        assertFalse(chessBoard.undoMove(), "Loading a FEN should clear the history");
+    }
+
+    @Test
+    public void testInvalidFenIsRejected() {
+        String before = chessBoard.getFen();
+        for (String fen : new String[] {"", "8/8/8/8/8/8/8/8 w - - 0 1", "4k3/8/8/8/8/8/8/4K3 x - - 0 1",
+                "4k3/8/8/8/8/8/8/4KK2 w - - 0 1", "P3k3/8/8/8/8/8/8/4K3 w - - 0 1", "4k3/8/8/8/8/8/8/4K3 w - - 300 1",
+                "4k3/8/8/8/8/8/8/4K4 w - - 0 1", "4k3/8/8/8/8/8/8 w - - 0 1",
+                "rnbqkbnr/pppppppp/pppppppp/8/8/PPPPPPPP/PPPPPPPP/RNBQKBNR w - - 0 1"}) {
+            assertThrows(IllegalArgumentException.class, () -> chessBoard.setFen(fen), fen);
+        }
+        assertEquals(before, chessBoard.getFen(), "A rejected FEN should leave the board alone");
+    }
+
+    @Test
+    public void testPackedPositionRoundTrip() {
+        chessBoard.movePiece(6, 4, 4, 4);
+        chessBoard.movePiece(1, 3, 3, 3);
+        chessBoard.movePiece(4, 4, 3, 3);
+        String fen = chessBoard.getFen();
+        int[] scores = chessBoard.getCurrentScore();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(PackedPositions.SIZE + 1);
+        buffer.put((byte) 0x5A);
+        chessBoard.storePackedPosition(buffer);
+        assertEquals(1 + PackedPositions.SIZE, buffer.position());
+
+        try (ChessBoard other = new ChessBoard()) {
+            other.loadPackedPosition(buffer.position(1));
+            assertEquals(fen, other.getFen());
+            assertArrayEquals(scores, other.getCurrentScore());
+            assertEquals(chessBoard.getPositionKey(), other.getPositionKey());
+            assertEquals(GameStatus.ONGOING, other.getGameStatus());
+        }
+        assertThrows(IllegalArgumentException.class, () -> chessBoard.loadPackedPosition(buffer.position(2)));
+        assertThrows(IllegalArgumentException.class, () -> chessBoard.storePackedPosition(ByteBuffer.allocate(PackedPositions.SIZE)));
+    }
+
+    @Test
+    public void testTooManyPiecesToPack() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(PackedPositions.SIZE);
+        int[][] crowded = chessBoard.getBoardState();
+        crowded[4][4] = 6; // a 33rd piece
+        chessBoard.setBoardState(crowded, true);
+        assertThrows(IllegalArgumentException.class, () -> chessBoard.storePackedPosition(buffer));
+        assertEquals(0, buffer.position(), "A rejected position should not advance the buffer");
+
+        crowded[4][4] = 0;
+        chessBoard.setBoardState(crowded, true);
+        chessBoard.storePackedPosition(buffer);
+        assertEquals(PackedPositions.SIZE, buffer.position(), "The full starting set should still fit");
+    }
 }
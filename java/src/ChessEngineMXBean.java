@@ -0,0 +1,39 @@
+import java.util.Map;
+
+/**
+ * Engine metrics over JMX, registered as {@value EngineMetrics#OBJECT_NAME} by {@link EngineMetrics#install()}.
+ * Counts cover every board in the process since the last {@link #resetMetrics()}. Call maps are keyed by
+ * ChessBoard method name and list only methods that were called. Every native method is timed, on both the
+ * JNI and FFM backends, except for creating and closing a board and the metrics calls themselves.
+ */
+public interface ChessEngineMXBean {
+    boolean isMetricsEnabled();
+
+    void setMetricsEnabled(boolean enabled);
+
+    /** Starts counting from zero again; the maximum call durations are kept. */
+    void resetMetrics();
+
+    long getMoveGenerations();
+
+    long getLegalityProbes();
+
+    long getCheckScans();
+
+    long getSearchNodes();
+
+    long getTranspositionProbes();
+
+    long getTranspositionHits();
+
+    double getTranspositionHitRate();
+
+    Map<String, Long> getCallCounts();
+
+    Map<String, Double> getMeanCallNanos();
+
+    /** Upper bound of the 99th percentile, rounded up to a power of two nanoseconds but never above the maximum. */
+    Map<String, Long> getP99CallNanos();
+
+    Map<String, Long> getMaxCallNanos();
+}
@@ -0,0 +1,382 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Process-wide counters and call latencies of the native engine. The engine collects them per thread and
+ * merges them on read, and only while they are enabled; disabled they cost a branch per probe and nothing
+ * per call. {@link #install()} enables them and publishes them as the {@link ChessEngineMXBean} and as the
+ * JFR events {@code chess.EngineMetrics} and {@code chess.NativeCall}, emitted every second while a
+ * recording has them enabled. Starting the JVM with {@code -Dchess.metrics=true} installs them on load.
+ *
+ * Call durations are measured inside the native code, so they leave out the JNI or FFM transition itself.
+ * Every native method of ChessBoard is timed except the ones listed in {@link ChessEngineMXBean}.
+ */
+public final class EngineMetrics {
+
+    public static final String OBJECT_NAME = "chess:type=Engine";
+
+    // Order mirrors the Counter enum in ChessBoard.cpp
+    public enum Counter {
+        MOVE_GENERATIONS,
+        /** isMoveLegal checks of moves played through movePiece. */
+        LEGALITY_PROBES,
+        CHECK_SCANS,
+        SEARCH_NODES,
+        TT_PROBES,
+        TT_HITS
+    }
+
+    // Order mirrors the NativeCall enum in ChessBoard.cpp
+    public enum Call {
+        INITIALIZE_BOARD("initializeBoard"),
+        MOVE_PIECE("movePiece"),
+        GET_BOARD_STATE("getBoardState"),
+        SET_BOARD_STATE("setBoardState"),
+        IS_IN_CHECK("isInCheck"),
+        IS_CHECKMATE("isCheckmate"),
+        IS_STALEMATE("isStalemate"),
+        GAME_STATUS("getGameStatus"),
+        PROMOTE_PAWN("promotePawn"),
+        GENERATE_LEGAL_MOVES("generateLegalMoves"),
+        GENERATE_PSEUDO_LEGAL_MOVES("generatePseudoLegalMoves"),
+        EVALUATE("evaluate"),
+        PERFT("perft"),
+        FIND_BEST_MOVE("findBestMove"),
+        APPLY_MOVES("applyMoves"),
+        UNDO_MOVE("undoMove"),
+        REDO_MOVE("redoMove"),
+        IS_WHITE_TURN("isWhiteTurn"),
+        GET_CURRENT_SCORE("getCurrentScore"),
+        GET_POSITION_KEY("getPositionKey"),
+        GET_HALFMOVE_CLOCK("getHalfmoveClock"),
+        GET_MOVE_HISTORY("getMoveHistory"),
+        SET_FEN("setFen"),
+        GET_FEN("getFen"),
+        LOAD_PACKED_POSITION("loadPackedPosition"),
+        STORE_PACKED_POSITION("storePackedPosition"),
+        FEN_TO_PACKED("fenToPacked"),
+        PACKED_TO_FEN("packedToFen"),
+        SET_SEARCH_THREADS("setSearchThreads"),
+        STOP_SEARCH("stopSearch"),
+        ATTACH_SNAPSHOT("attachSnapshot"),
+        PROBE_TABLEBASE("probeTablebase"),
+        GENERATE_TABLEBASE("generateTablebase"),
+        REGISTER_TABLEBASE("registerTablebase");
+
+        private final String methodName;
+
+        Call(String methodName) {
+            this.methodName = methodName;
+        }
+
+        public String methodName() {
+            return methodName;
+        }
+    }
+
+    /** Bucket b counts calls that took less than 2^b nanoseconds; the last one takes everything slower. */
+    static final int LATENCY_BUCKETS = 40;
+    private static final int CALL_STATS_SIZE = 3 + LATENCY_BUCKETS;
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final Call[] CALLS = Call.values();
+    private static final int SIZE = COUNTERS.length + CALLS.length * CALL_STATS_SIZE;
+
+    /** Latencies of one ChessBoard method. */
+    public record CallStats(long calls, long totalNanos, long maxNanos, long[] buckets) {
+        public double meanNanos() {
+            return calls == 0 ? 0 : (double) totalNanos / calls;
+        }
+
+        /** Upper bound of the given percentile (0-100): a power of two nanoseconds, at most the maximum. */
+        public long percentileNanos(double percentile) {
+            long rank = (long) Math.ceil(calls * percentile / 100);
+            long seen = 0;
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                seen += buckets[bucket];
+                if (seen >= rank && seen > 0) {
+                    return bucket == buckets.length - 1 ? maxNanos : Math.min(1L << bucket, maxNanos);
+                }
+            }
+            return 0;
+        }
+
+        CallStats minus(CallStats earlier) {
+            long[] delta = new long[buckets.length];
+            for (int i = 0; i < delta.length; i++) {
+                delta[i] = buckets[i] - earlier.buckets[i];
+            }
+            return new CallStats(calls - earlier.calls, totalNanos - earlier.totalNanos, maxNanos, delta);
+        }
+    }
+
+    /** Metrics at one point in time; {@link #minus} gives what happened in between two of them. */
+    public record Snapshot(long[] counters, CallStats[] calls) {
+        public long counter(Counter counter) {
+            return counters[counter.ordinal()];
+        }
+
+        public CallStats call(Call call) {
+            return calls[call.ordinal()];
+        }
+
+        public double transpositionHitRate() {
+            long probes = counter(Counter.TT_PROBES);
+            return probes == 0 ? 0 : (double) counter(Counter.TT_HITS) / probes;
+        }
+
+        /** Differences to an earlier snapshot; maxima cannot be taken apart and stay those of this one. */
+        public Snapshot minus(Snapshot earlier) {
+            long[] counterDelta = new long[counters.length];
+            for (int i = 0; i < counterDelta.length; i++) {
+                counterDelta[i] = counters[i] - earlier.counters[i];
+            }
+            CallStats[] callDelta = new CallStats[calls.length];
+            for (int i = 0; i < callDelta.length; i++) {
+                callDelta[i] = calls[i].minus(earlier.calls[i]);
+            }
+            return new Snapshot(counterDelta, callDelta);
+        }
+    }
+
+    private static boolean installed;
+
+    private EngineMetrics() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ChessBoard.enableMetrics(enabled);
+    }
+
+    public static boolean isEnabled() {
+        return ChessBoard.metricsEnabled();
+    }
+
+    /** Totals since the process started, across all boards and threads. */
+    public static Snapshot snapshot() {
+        long[] values = new long[SIZE];
+        ChessBoard.readMetrics(values);
+        long[] counters = new long[COUNTERS.length];
+        System.arraycopy(values, 0, counters, 0, counters.length);
+        CallStats[] calls = new CallStats[CALLS.length];
+        for (int i = 0; i < calls.length; i++) {
+            int base = counters.length + i * CALL_STATS_SIZE;
+            long[] buckets = new long[LATENCY_BUCKETS];
+            System.arraycopy(values, base + 3, buckets, 0, LATENCY_BUCKETS);
+            calls[i] = new CallStats(values[base], values[base + 1], values[base + 2], buckets);
+        }
+        return new Snapshot(counters, calls);
+    }
+
+    /**
+     * Enables the metrics, registers the MXBean and the periodic JFR event. Calling it again does nothing.
+     */
+    public static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        setEnabled(true);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register " + OBJECT_NAME, e);
+        }
+        FlightRecorder.addPeriodicEvent(MetricsEvent.class, new JfrEmitter());
+        installed = true;
+    }
+
+    private static final class Bean implements ChessEngineMXBean {
+        private volatile Snapshot baseline = snapshot();
+
+        private Snapshot current() {
+            return snapshot().minus(baseline);
+        }
+
+        @Override
+        public boolean isMetricsEnabled() {
+            return isEnabled();
+        }
+
+        @Override
+        public void setMetricsEnabled(boolean enabled) {
+            setEnabled(enabled);
+        }
+
+        @Override
+        public void resetMetrics() {
+            baseline = snapshot();
+        }
+
+        @Override
+        public long getMoveGenerations() {
+            return current().counter(Counter.MOVE_GENERATIONS);
+        }
+
+        @Override
+        public long getLegalityProbes() {
+            return current().counter(Counter.LEGALITY_PROBES);
+        }
+
+        @Override
+        public long getCheckScans() {
+            return current().counter(Counter.CHECK_SCANS);
+        }
+
+        @Override
+        public long getSearchNodes() {
+            return current().counter(Counter.SEARCH_NODES);
+        }
+
+        @Override
+        public long getTranspositionProbes() {
+            return current().counter(Counter.TT_PROBES);
+        }
+
+        @Override
+        public long getTranspositionHits() {
+            return current().counter(Counter.TT_HITS);
+        }
+
+        @Override
+        public double getTranspositionHitRate() {
+            return current().transpositionHitRate();
+        }
+
+        @Override
+        public Map<String, Long> getCallCounts() {
+            return perCall(CallStats::calls);
+        }
+
+        @Override
+        public Map<String, Double> getMeanCallNanos() {
+            Snapshot snapshot = current();
+            Map<String, Double> result = new LinkedHashMap<>();
+            for (Call call : CALLS) {
+                CallStats stats = snapshot.call(call);
+                if (stats.calls() > 0) {
+                    result.put(call.methodName(), stats.meanNanos());
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public Map<String, Long> getP99CallNanos() {
+            return perCall(stats -> stats.percentileNanos(99));
+        }
+
+        @Override
+        public Map<String, Long> getMaxCallNanos() {
+            return perCall(CallStats::maxNanos);
+        }
+
+        private Map<String, Long> perCall(ToLongFunction<CallStats> value) {
+            Snapshot snapshot = current();
+            Map<String, Long> result = new LinkedHashMap<>();
+            for (Call call : CALLS) {
+                CallStats stats = snapshot.call(call);
+                if (stats.calls() > 0) {
+                    result.put(call.methodName(), value.applyAsLong(stats));
+                }
+            }
+            return result;
+        }
+    }
+
+    // Runs on the JFR periodic thread only, so it can keep the previous snapshot without synchronization
+    private static final class JfrEmitter implements Runnable {
+        private Snapshot previous = snapshot();
+
+        @Override
+        public void run() {
+            if (!isEnabled()) {
+                return;
+            }
+            Snapshot now = snapshot();
+            Snapshot delta = now.minus(previous);
+            previous = now;
+
+            MetricsEvent metrics = new MetricsEvent();
+            metrics.moveGenerations = delta.counter(Counter.MOVE_GENERATIONS);
+            metrics.legalityProbes = delta.counter(Counter.LEGALITY_PROBES);
+            metrics.checkScans = delta.counter(Counter.CHECK_SCANS);
+            metrics.searchNodes = delta.counter(Counter.SEARCH_NODES);
+            metrics.transpositionProbes = delta.counter(Counter.TT_PROBES);
+            metrics.transpositionHitRate = delta.transpositionHitRate();
+            metrics.commit();
+
+            for (Call call : CALLS) {
+                CallStats stats = delta.call(call);
+                if (stats.calls() == 0) {
+                    continue;
+                }
+                NativeCallEvent event = new NativeCallEvent();
+                event.method = call.methodName();
+                event.calls = stats.calls();
+                event.meanNanos = Math.round(stats.meanNanos());
+                event.p50Nanos = stats.percentileNanos(50);
+                event.p99Nanos = stats.percentileNanos(99);
+                event.maxNanos = stats.maxNanos();
+                event.commit();
+            }
+        }
+    }
+
+    @Name("chess.EngineMetrics")
+    @Label("Chess Engine Metrics")
+    @Category("Chess")
+    @Description("Engine counters accumulated since the previous event")
+    @Period("1 s")
+    @StackTrace(false)
+    static final class MetricsEvent extends jdk.jfr.Event {
+        @Label("Move Generations")
+        long moveGenerations;
+        @Label("Legality Probes")
+        long legalityProbes;
+        @Label("Check Scans")
+        long checkScans;
+        @Label("Search Nodes")
+        long searchNodes;
+        @Label("Transposition Probes")
+        long transpositionProbes;
+        @Label("Transposition Hit Rate")
+        double transpositionHitRate;
+    }
+
+    @Name("chess.NativeCall")
+    @Label("Chess Native Call Latency")
+    @Category("Chess")
+    @Description("Native time of one ChessBoard method since the previous event")
+    @StackTrace(false)
+    static final class NativeCallEvent extends jdk.jfr.Event {
+        @Label("Method")
+        String method;
+        @Label("Calls")
+        long calls;
+        @Label("Mean")
+        @Timespan
+        long meanNanos;
+        @Label("50th Percentile")
+        @Timespan
+        long p50Nanos;
+        @Label("99th Percentile")
+        @Timespan
+        long p99Nanos;
+        @Label("Maximum (process lifetime)")
+        @Timespan
+        long maxNanos;
+    }
+}
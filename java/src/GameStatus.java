@@ -0,0 +1,34 @@
+/**
+ * State of the game as reported by {@link ChessBoard#getGameStatus()} and {@link BoardSnapshot#status()}.
+ * The engine works it out at most once per position. The order matches the status codes in ChessBoard.cpp.
+ */
+public enum GameStatus {
+    ONGOING,
+    /** The side to move is in check but has a legal reply. */
+    CHECK,
+    CHECKMATE_WHITE_WINS,
+    CHECKMATE_BLACK_WINS,
+    STALEMATE,
+    /** The same position, with the same side to move, occurred for the third time. */
+    DRAW_REPETITION,
+    /** Fifty moves by each side without a capture or a pawn move. */
+    DRAW_FIFTY_MOVES;
+
+    private static final GameStatus[] VALUES = values();
+
+    static GameStatus fromCode(int code) {
+        return VALUES[code];
+    }
+
+    public boolean isGameOver() {
+        return this != ONGOING && this != CHECK;
+    }
+
+    public boolean isCheckmate() {
+        return this == CHECKMATE_WHITE_WINS || this == CHECKMATE_BLACK_WINS;
+    }
+
+    public boolean isDraw() {
+        return this == STALEMATE || this == DRAW_REPETITION || this == DRAW_FIFTY_MOVES;
+    }
+}
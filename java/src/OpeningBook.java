@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.random.RandomGenerator;
+
+/**
+ * Read-only opening book, memory-mapped so that a lookup is a binary search over the file with no heap
+ * allocation. Built by {@link OpeningBookBuilder}.
+ *
+ * Format (big-endian): a 16-byte header with the magic {@code "CHBK"}, the format version and the entry
+ * count as a long, followed by 16-byte entries of position key ({@link ChessBoard#getPositionKey()}),
+ * packed move ({@link ChessBoard#packMove}) and weight. Entries are sorted by key as a signed long, so all
+ * moves of one position sit next to each other.
+ *
+ * Safe for concurrent lookups from any number of threads.
+ */
+public final class OpeningBook {
+
+    static final int MAGIC = 0x4348424B; // "CHBK"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 16;
+
+    private final ByteBuffer entries;
+    private final int size;
+
+    private OpeningBook(ByteBuffer entries, int size) {
+        this.entries = entries;
+        this.size = size;
+    }
+
+    public static OpeningBook open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Not an opening book: " + path);
+            }
+            ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            long count = file.getLong(8);
+            if (file.getInt(0) != MAGIC || file.getInt(4) != VERSION || count != (length - HEADER_SIZE) / ENTRY_SIZE) {
+                throw new IOException("Not an opening book: " + path);
+            }
+            return new OpeningBook(file.slice(HEADER_SIZE, (int) (count * ENTRY_SIZE)), (int) count);
+        }
+    }
+
+    /** Number of (position, move) entries. */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies the book moves of the position and their weights into the arrays and returns how many there
+     * are. Only the first {@code moves.length} are copied if there are more.
+     */
+    public int findMoves(long positionKey, int[] moves, int[] weights) {
+        int first = firstEntry(positionKey);
+        int count = 0;
+        for (int i = first; i < size && keyAt(i) == positionKey; i++, count++) {
+            if (count < moves.length) {
+                moves[count] = entries.getInt(i * ENTRY_SIZE + 8);
+                weights[count] = entries.getInt(i * ENTRY_SIZE + 12);
+            }
+        }
+        return count;
+    }
+
+    /** Picks a book move at random in proportion to the weights, or returns 0 if the position is not in the book. */
+    public int pickMove(long positionKey, RandomGenerator random) {
+        int first = firstEntry(positionKey);
+        long total = 0;
+        int end = first;
+        for (; end < size && keyAt(end) == positionKey; end++) {
+            total += weightAt(end);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long pick = random.nextLong(total);
+        for (int i = first; i < end; i++) {
+            pick -= weightAt(i);
+            if (pick < 0) {
+                return entries.getInt(i * ENTRY_SIZE + 8);
+            }
+        }
+        return 0;
+    }
+
+    /** {@link #pickMove} for the board's current position. */
+    public int pickMove(ChessBoard board, RandomGenerator random) {
+        return pickMove(board.getPositionKey(), random);
+    }
+
+    // Index of the first entry whose key is not below the given one
+    private int firstEntry(long positionKey) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keyAt(middle) < positionKey) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long keyAt(int index) {
+        return entries.getLong(index * ENTRY_SIZE);
+    }
+
+    private long weightAt(int index) {
+        return Integer.toUnsignedLong(entries.getInt(index * ENTRY_SIZE + 12));
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds an {@link OpeningBook} from PGN archives. Games are replayed by {@link PgnImporter}, and every move
+ * within the first {@code maxPlies} plies is counted against the position it was played from. A move's weight
+ * is the number of games that played it there. Moves played fewer than {@code minGames} times are dropped.
+ * Games that turn out to be invalid still contribute the moves before the first illegal one.
+ *
+ * Usage: java -Djava.library.path=../lib OpeningBookBuilder games.pgn book.bin [maxPlies] [minGames] [threads]
+ */
+public final class OpeningBookBuilder {
+
+    private record Entry(long positionKey, int move) {}
+
+    private final int maxPlies;
+    private final int minGames;
+    private final Map<Entry, LongAdder> counts = new ConcurrentHashMap<>();
+
+    public OpeningBookBuilder(int maxPlies, int minGames) {
+        this.maxPlies = maxPlies;
+        this.minGames = minGames;
+    }
+
+    /** Counts one occurrence of the move in the position. Thread-safe. */
+    public void add(long positionKey, int move) {
+        counts.computeIfAbsent(new Entry(positionKey, move), entry -> new LongAdder()).increment();
+    }
+
+    /** Adds the opening moves of every game in the file. */
+    public PgnImporter.ImportStats addGames(Path pgn, int threads) throws IOException, InterruptedException {
+        return new PgnImporter(threads).importFile(pgn, result -> { }, (gameNumber, ply, positionKey, move) -> {
+            if (ply < maxPlies) {
+                add(positionKey, move);
+            }
+        });
+    }
+
+    /** Writes the book and returns the number of entries in it. */
+    public int write(Path book) throws IOException {
+        List<Map.Entry<Entry, Long>> kept = new ArrayList<>();
+        counts.forEach((entry, count) -> {
+            if (count.sum() >= minGames) {
+                kept.add(Map.entry(entry, Math.min(count.sum(), Integer.MAX_VALUE)));
+            }
+        });
+        // Binary search in OpeningBook relies on the key order; the most played move comes first
+        kept.sort(Comparator.<Map.Entry<Entry, Long>>comparingLong(e -> e.getKey().positionKey())
+                .thenComparing(Map.Entry::getValue, Comparator.reverseOrder()));
+
+        ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.HEADER_SIZE + kept.size() * OpeningBook.ENTRY_SIZE);
+        buffer.putInt(OpeningBook.MAGIC).putInt(OpeningBook.VERSION).putLong(kept.size());
+        for (Map.Entry<Entry, Long> entry : kept) {
+            buffer.putLong(entry.getKey().positionKey()).putInt(entry.getKey().move()).putInt(entry.getValue().intValue());
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(book, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        return kept.size();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: OpeningBookBuilder <games.pgn> <book.bin> [maxPlies] [minGames] [threads]");
+            System.exit(2);
+        }
+        int maxPlies = args.length > 2 ? Integer.parseInt(args[2]) : 24;
+        int minGames = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        OpeningBookBuilder builder = new OpeningBookBuilder(maxPlies, minGames);
+        PgnImporter.ImportStats stats = builder.addGames(Path.of(args[0]), threads);
+        int entries = builder.write(Path.of(args[1]));
+        System.out.printf("%d games (%d valid) in %.2f s, %d book entries written to %s%n",
+                stats.games(), stats.validGames(), stats.elapsedNanos() / 1e9, entries, args[1]);
+    }
+}
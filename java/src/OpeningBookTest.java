@@ -0,0 +1,62 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+class OpeningBookTest {
+
+    private static final String GAMES = """
+            [Event "One"]
+
+            1. e4 e5 2. Nf3 Nc6 *
+
+            [Event "Two"]
+
+            1. e4 c5 2. Nf3 d6 *
+
+            [Event "Three"]
+
+            1. d4 d5 2. c4 e6 *
+            """;
+
+    @Test
+    public void testBuildAndProbe() throws Exception {
+        Path pgn = Files.createTempFile("openings", ".pgn");
+        Path bookFile = Files.createTempFile("openings", ".bin");
+        try (ChessBoard board = new ChessBoard()) {
+            Files.writeString(pgn, GAMES);
+            OpeningBookBuilder builder = new OpeningBookBuilder(2, 1);
+            assertEquals(3, builder.addGames(pgn, 2).validGames());
+            assertEquals(5, builder.write(bookFile), "Two moves from the start, three replies after 1. e4 or 1. d4");
+
+            OpeningBook book = OpeningBook.open(bookFile);
+            board.initializeBoard();
+            int e4 = ChessBoard.packMove(6, 4, 4, 4);
+            int d4 = ChessBoard.packMove(6, 3, 4, 3);
+            int[] moves = new int[4];
+            int[] weights = new int[4];
+            assertEquals(2, book.findMoves(board.getPositionKey(), moves, weights));
+            assertEquals(e4, moves[0], "The most played move should come first");
+            assertEquals(2, weights[0]);
+            assertEquals(d4, moves[1]);
+            assertEquals(1, weights[1]);
+
+            SplittableRandom random = new SplittableRandom(3);
+            for (int i = 0; i < 20; i++) {
+                int move = book.pickMove(board, random);
+                assertTrue(move == e4 || move == d4);
+            }
+
+            board.movePiece(6, 4, 4, 4);
+            assertEquals(2, book.findMoves(board.getPositionKey(), moves, weights), "1... e5 and 1... c5");
+            board.movePiece(1, 4, 3, 4);
+            assertEquals(0, book.pickMove(board, random), "Moves past maxPlies should not be in the book");
+        } finally {
+            // Both files stay mapped until the buffers are collected, and Windows refuses to delete a mapped file
+            pgn.toFile().deleteOnExit();
+            bookFile.toFile().deleteOnExit();
+        }
+    }
+}
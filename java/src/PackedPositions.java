@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Fixed-size binary positions for position databases: 32 bytes instead of the 60 to 90 of a FEN line, and
+ * loaded into a board without any parsing. {@link ChessBoard#loadPackedPosition} and
+ * {@link ChessBoard#storePackedPosition} move one position at a time; {@link #fromFen} and {@link #toFen}
+ * convert whole buffers of them in one native call. All buffers must be direct, such as mapped files.
+ *
+ * Layout (big-endian): bytes 0-7 the occupancy bitboard (bit {@code row * 8 + col}), bytes 8-23 one 4-bit
+ * code per occupied square in square order, high nibble first, with the white piece codes of
+ * {@link ChessBoard#getBoardState()} and 8 added for black. Byte 24 holds flags (bit 0: white to move),
+ * 25 the halfmove clock, 26-27 the fullmove number, 28 and 29 the white and black scores, and 30-31 are zero.
+ *
+ * Usage: java -Djava.library.path=../lib PackedPositions pack positions.fen positions.bin
+ *        java -Djava.library.path=../lib PackedPositions unpack positions.bin positions.fen
+ */
+public final class PackedPositions {
+
+    public static final int SIZE = 32;
+    private static final int MAX_FEN_LINE = 96;
+    private static final int CHUNK_POSITIONS = 1 << 16;
+
+    private PackedPositions() {
+    }
+
+    /**
+     * Packs the FEN lines between the text buffer's position and limit into the packed buffer until one of
+     * them runs out, advances both and returns the number of positions written. Blank lines are skipped and
+     * the last line needs no line break. Throws IllegalArgumentException naming the byte offset of the first
+     * line that is not a valid FEN; the positions before it have been written, but neither buffer moves.
+     */
+    public static int fromFen(ByteBuffer text, ByteBuffer packed) {
+        requireDirect(text);
+        requireDirect(packed);
+        long result = ChessBoard.fenToPacked(text, text.position(), text.limit(), packed, packed.position(), packed.limit());
+        int count = (int) result;
+        text.position(text.position() + (int) (result >>> 32));
+        packed.position(packed.position() + count * SIZE);
+        return count;
+    }
+
+    /**
+     * Writes one FEN line per packed position into the text buffer while whole lines fit, advances both
+     * and returns the number of positions converted. Throws IllegalArgumentException on a malformed record.
+     */
+    public static int toFen(ByteBuffer packed, ByteBuffer text) {
+        requireDirect(packed);
+        requireDirect(text);
+        long result = ChessBoard.packedToFen(packed, packed.position(), packed.limit(), text, text.position(), text.limit());
+        int count = (int) result;
+        packed.position(packed.position() + count * SIZE);
+        text.position(text.position() + (int) (result >>> 32));
+        return count;
+    }
+
+    // Offset of the record at the buffer's position, after checking that the whole record is there
+    static int checkRecord(ByteBuffer buffer) {
+        requireDirect(buffer);
+        if (buffer.remaining() < SIZE) {
+            throw new IllegalArgumentException("A packed position needs " + SIZE + " bytes, " + buffer.remaining() + " remain");
+        }
+        return buffer.position();
+    }
+
+    private static void requireDirect(ByteBuffer buffer) {
+        if (!buffer.isDirect()) {
+            throw new IllegalArgumentException("Packed positions need a direct buffer");
+        }
+    }
+
+    // Streams the file through direct buffers of CHUNK_POSITIONS records, cutting the FEN text at line breaks
+    private static long pack(Path fens, Path packed) throws IOException {
+        ByteBuffer text = ByteBuffer.allocateDirect(CHUNK_POSITIONS * MAX_FEN_LINE);
+        ByteBuffer records = ByteBuffer.allocateDirect(CHUNK_POSITIONS * SIZE);
+        long total = 0;
+        try (FileChannel in = FileChannel.open(fens, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(packed, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                endOfInput = in.read(text) < 0;
+                text.flip();
+                int filled = text.limit();
+                int end = filled;
+                if (!endOfInput) {
+                    while (end > 0 && text.get(end - 1) != '\n') {
+                        end--;
+                    }
+                    if (end == 0 && filled == text.capacity()) {
+                        throw new IOException("Line longer than " + text.capacity() + " bytes in " + fens);
+                    }
+                }
+                text.limit(end);
+                while (text.hasRemaining()) {
+                    total += fromFen(text, records);
+                    records.flip();
+                    while (records.hasRemaining()) {
+                        out.write(records);
+                    }
+                    records.clear();
+                }
+                // Keeps the unfinished last line for the next read
+                text.limit(filled);
+                text.compact();
+            }
+        }
+        return total;
+    }
+
+    private static long unpack(Path packed, Path fens) throws IOException {
+        ByteBuffer text = ByteBuffer.allocateDirect(CHUNK_POSITIONS * MAX_FEN_LINE);
+        long total = 0;
+        try (FileChannel in = FileChannel.open(packed, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(fens, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (in.size() % SIZE != 0) {
+                throw new IOException("Not a file of packed positions: " + packed);
+            }
+            long chunk = (long) CHUNK_POSITIONS * SIZE;
+            for (long offset = 0; offset < in.size(); offset += chunk) {
+                MappedByteBuffer records = in.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(chunk, in.size() - offset));
+                while (records.hasRemaining()) {
+                    total += toFen(records, text);
+                    text.flip();
+                    while (text.hasRemaining()) {
+                        out.write(text);
+                    }
+                    text.clear();
+                }
+            }
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3 || !(args[0].equals("pack") || args[0].equals("unpack"))) {
+            System.err.println("Usage: PackedPositions pack <positions.fen> <positions.bin> | unpack <positions.bin> <positions.fen>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        long count = args[0].equals("pack") ? pack(Path.of(args[1]), Path.of(args[2])) : unpack(Path.of(args[1]), Path.of(args[2]));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d positions in %.2f s (%.0f positions/s)%n", count, seconds, count / Math.max(seconds, 1e-9));
+    }
+}
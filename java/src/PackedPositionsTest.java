@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class PackedPositionsTest {
+
+    private static final List<String> FENS = List.of(
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w - - 0 1",
+            "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w - - 2 3",
+            "8/8/4k3/8/2K5/8/3Q4/8 b - - 49 71",
+            "4k3/8/8/8/8/8/8/4K3 w - - 0 65535");
+
+    @Test
+    public void testBulkRoundTrip() {
+        ByteBuffer text = direct("\n" + String.join("\r\n", FENS.subList(0, 2)) + "\n\n" + String.join("\n", FENS.subList(2, 4)));
+        ByteBuffer packed = ByteBuffer.allocateDirect(3 * PackedPositions.SIZE);
+
+        assertEquals(3, PackedPositions.fromFen(text, packed), "Conversion should stop when the packed buffer is full");
+        assertFalse(packed.hasRemaining());
+        packed = grow(packed);
+        assertEquals(1, PackedPositions.fromFen(text, packed));
+        assertFalse(text.hasRemaining(), "The last line needs no line break");
+        packed.flip();
+
+        ByteBuffer out = ByteBuffer.allocateDirect(FENS.get(0).length() + 1);
+        assertEquals(1, PackedPositions.toFen(packed, out), "Only whole lines should be written");
+        out = grow(out);
+        while (packed.hasRemaining()) {
+            assertTrue(PackedPositions.toFen(packed, out) > 0);
+        }
+        out.flip();
+        assertEquals(String.join("\n", FENS) + "\n", StandardCharsets.US_ASCII.decode(out).toString());
+    }
+
+    @Test
+    public void testInvalidLineStopsTheBatch() {
+        ByteBuffer text = direct(FENS.get(0) + "\nnot a fen\n" + FENS.get(1) + "\n");
+        ByteBuffer packed = ByteBuffer.allocateDirect(4 * PackedPositions.SIZE);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> PackedPositions.fromFen(text, packed));
+        assertTrue(e.getMessage().contains("byte " + (FENS.get(0).length() + 1)), e.getMessage());
+        assertEquals(0, text.position());
+        assertEquals(0, packed.position());
+
+        assertThrows(IllegalArgumentException.class, () -> PackedPositions.fromFen(ByteBuffer.wrap(new byte[8]), packed));
+    }
+
+    @Test
+    public void testPackAndUnpackFiles() throws Exception {
+        Path fens = Files.createTempFile("positions", ".fen");
+        Path packed = Files.createTempFile("positions", ".bin");
+        Path unpacked = Files.createTempFile("positions", ".fen");
+        try {
+            Files.write(fens, FENS, StandardCharsets.US_ASCII);
+            PackedPositions.main(new String[] {"pack", fens.toString(), packed.toString()});
+            assertEquals((long) FENS.size() * PackedPositions.SIZE, Files.size(packed));
+            PackedPositions.main(new String[] {"unpack", packed.toString(), unpacked.toString()});
+            assertEquals(FENS, Files.readAllLines(unpacked, StandardCharsets.US_ASCII));
+        } finally {
+            // unpack maps the packed file and the mapping lives until it is collected; Windows refuses to
+            // delete a mapped file, so leave all three to the exit hook
+            fens.toFile().deleteOnExit();
+            packed.toFile().deleteOnExit();
+            unpacked.toFile().deleteOnExit();
+        }
+    }
+
+    private static ByteBuffer direct(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        return ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    }
+
+    // Same contents and position, more room
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() + 1024);
+        return larger.put(buffer.flip());
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Perft driver: counts the leaf nodes of the legal move tree from a few reference positions and
+ * reports nodes per second for each depth. Exits with status 1 if any count is off, so it can gate
+ * nightly runs before and after engine changes.
+ *
+ * Expected counts follow this engine's rules (no castling, no en passant, promotion to a queen only).
+ * For the start position they equal the published figures up to depth 4; at depth 5 the 258 en passant
+ * captures are missing.
+ *
+ * Usage: java -Djava.library.path=../lib Perft [maxDepth]
+ */
+public class Perft {
+
+    private record Case(String name, int[][] board, boolean whiteToMove, long[] expected) {}
+
+    private static final Case[] CASES = {
+            new Case("start", new int[][] {
+                    {-1, -2, -3, -4, -5, -3, -2, -1},
+                    {-6, -6, -6, -6, -6, -6, -6, -6},
+                    { 0,  0,  0,  0,  0,  0,  0,  0},
+                    { 0,  0,  0,  0,  0,  0,  0,  0},
+                    { 0,  0,  0,  0,  0,  0,  0,  0},
+                    { 0,  0,  0,  0,  0,  0,  0,  0},
+                    { 6,  6,  6,  6,  6,  6,  6,  6},
+                    { 1,  2,  3,  4,  5,  3,  2,  1}
+            }, true, new long[] {20, 400, 8902, 197281, 4865351}),
+            // 8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w
+            new Case("rook endgame", new int[][] {
+                    { 0,  0,  0,  0,  0,  0,  0,  0},
+                    { 0,  0, -6,  0,  0,  0,  0,  0},
+                    { 0,  0,  0, -6,  0,  0,  0,  0},
+                    { 5,  6,  0,  0,  0,  0,  0, -1},
+                    { 0,  1,  0,  0,  0, -6,  0, -5},
+                    { 0,  0,  0,  0,  0,  0,  0,  0},
+                    { 0,  0,  0,  0,  6,  0,  6,  0},
+                    { 0,  0,  0,  0,  0,  0,  0,  0}
+            }, true, new long[] {14, 191, 2810, 43087, 671300}),
+            // n1n5/PPPk4/8/8/8/8/4Kppp/5N1N w
+            new Case("promotions", new int[][] {
+                    {-2,  0, -2,  0,  0,  0,  0,  0},
+                    { 6,  6,  6, -5,  0,  0,  0,  0},
+                    { 0,  0,  0,  0,  0,  0,  0,  0},
+                    { 0,  0,  0,  0,  0,  0,  0,  0},
+                    { 0,  0,  0,  0,  0,  0,  0,  0},
+                    { 0,  0,  0,  0,  0,  0,  0,  0},
+                    { 0,  0,  0,  0,  5, -6, -6, -6},
+                    { 0,  0,  0,  0,  0,  2,  0,  2}
+            }, true, new long[] {15, 210, 3253, 47828, 807048})
+    };
+
+    public static void main(String[] args) {
+        int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        boolean allPassed = true;
+
+        try (ChessBoard board = new ChessBoard()) {
+            for (Case perftCase : CASES) {
+                board.setBoardState(perftCase.board(), perftCase.whiteToMove());
+                for (int depth = 1; depth <= Math.min(maxDepth, perftCase.expected().length); depth++) {
+                    long start = System.nanoTime();
+                    long nodes = board.perft(depth);
+                    long elapsed = Math.max(System.nanoTime() - start, 1);
+
+                    long expected = perftCase.expected()[depth - 1];
+                    boolean passed = nodes == expected;
+                    allPassed &= passed;
+                    System.out.printf("%-13s depth %d  nodes %10d  expected %10d  %6.1f ms  %,12d nps  %s%n",
+                            perftCase.name(), depth, nodes, expected, elapsed / 1e6,
+                            nodes * 1_000_000_000L / elapsed, passed ? "ok" : "MISMATCH");
+                }
+            }
+        }
+        System.exit(allPassed ? 0 : 1);
+    }
+}
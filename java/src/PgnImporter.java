@@ -0,0 +1,468 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Validates PGN archives against this engine's rules. The file is memory-mapped window by window and
+ * split at game boundaries. Each game's bytes go through a bounded queue to worker threads, and each
+ * worker replays the games on its own {@link ChessBoard}. Heap use depends on the queue size and the
+ * largest game, never on the file size.
+ *
+ * The engine has no castling, no en passant and promotes only to a queen, and it ends games on threefold
+ * repetition and the fifty-move rule without waiting for a claim. Games that need any of these rules or play
+ * on past such a draw are reported as invalid. A FEN tag sets the start position; its castling and en passant
+ * fields are ignored.
+ *
+ * Usage: java -Djava.library.path=../lib PgnImporter games.pgn [threads]
+ */
+public class PgnImporter {
+
+    /** Outcome of one game; {@code error} is null when every move was legal. */
+    public record GameResult(long gameNumber, int plies, String result, String error) {
+        public boolean isValid() {
+            return error == null;
+        }
+    }
+
+    public record ImportStats(long games, long validGames, long plies, long bytes, long elapsedNanos) {
+        public double gamesPerSecond() {
+            return games * 1e9 / Math.max(elapsedNanos, 1);
+        }
+
+        public double pliesPerSecond() {
+            return plies * 1e9 / Math.max(elapsedNanos, 1);
+        }
+    }
+
+    /** Sees every move replayed from a game, before it is played. Called from the worker threads. */
+    public interface MoveListener {
+        void onMove(long gameNumber, int ply, long positionKey, int move);
+    }
+
+    private record GameText(long gameNumber, byte[] text, String error) {}
+
+    // Carries an exception thrown by the caller's MoveListener past the per-game error handling
+    private static final class ListenerFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ListenerFailure(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    private static final long WINDOW_SIZE = 64L << 20;
+    private static final int MAX_GAME_BYTES = 1 << 20;
+    private static final GameText END_OF_INPUT = new GameText(-1, new byte[0], null);
+
+    private final int workers;
+
+    public PgnImporter(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Importer needs at least one worker");
+        }
+        this.workers = workers;
+    }
+
+    /**
+     * Validates every game in the file and passes each result to {@code results} as soon as it is known.
+     * Results arrive from the worker threads in completion order, so the consumer must be thread-safe.
+     */
+    public ImportStats importFile(Path pgn, Consumer<GameResult> results) throws IOException, InterruptedException {
+        return importFile(pgn, results, null);
+    }
+
+    /**
+     * Like {@link #importFile(Path, Consumer)}; {@code moves}, if not null, also receives every legal move
+     * together with the {@link ChessBoard#getPositionKey() key} of the position it was played from.
+     */
+    public ImportStats importFile(Path pgn, Consumer<GameResult> results, MoveListener moves) throws IOException, InterruptedException {
+        BlockingQueue<GameText> queue = new ArrayBlockingQueue<>(workers * 32);
+        AtomicLong validGames = new AtomicLong();
+        AtomicLong plies = new AtomicLong();
+        // First exception thrown by a consumer; every worker then only drains the queue so the splitter never blocks
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(() -> {
+                try (ChessBoard board = new ChessBoard()) {
+                    GameValidator validator = new GameValidator(board, moves);
+                    for (GameText game = queue.take(); game != END_OF_INPUT; game = queue.take()) {
+                        if (failure.get() != null) {
+                            continue;
+                        }
+                        GameResult result;
+                        try {
+                            result = validator.validate(game);
+                        } catch (ListenerFailure e) {
+                            failure.compareAndSet(null, e.getCause());
+                            continue;
+                        } catch (RuntimeException e) {
+                            result = new GameResult(game.gameNumber(), 0, "*", "validation failed: " + e);
+                        }
+                        plies.addAndGet(result.plies());
+                        if (result.isValid()) {
+                            validGames.incrementAndGet();
+                        }
+                        try {
+                            results.accept(result);
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "pgn-worker-" + i);
+            worker.start();
+            threads.add(worker);
+        }
+
+        long games;
+        long bytes;
+        try (FileChannel channel = FileChannel.open(pgn, StandardOpenOption.READ)) {
+            bytes = channel.size();
+            games = split(channel, queue);
+        } finally {
+            for (int i = 0; i < workers; i++) {
+                queue.put(END_OF_INPUT);
+            }
+            for (Thread worker : threads) {
+                worker.join();
+            }
+        }
+        Throwable thrown = failure.get();
+        if (thrown instanceof RuntimeException e) {
+            throw e;
+        }
+        if (thrown instanceof Error e) {
+            throw e;
+        }
+        return new ImportStats(games, validGames.get(), plies.get(), bytes, System.nanoTime() - start);
+    }
+
+    // Walks the file in mapped windows. A window that ends mid-game is mapped again from that game's start.
+    private static long split(FileChannel channel, BlockingQueue<GameText> queue) throws IOException, InterruptedException {
+        long size = channel.size();
+        long position = 0;
+        long gameNumber = 0;
+
+        while (position < size) {
+            long length = Math.min(WINDOW_SIZE, size - position);
+            boolean lastWindow = position + length == size;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+            int gameStart = 0;
+            int lineStart = 0;
+            boolean seenMoves = false;
+            for (int i = 0; i <= length; i++) {
+                if (i < length && window.get(i) != '\n') {
+                    continue;
+                }
+                int first = firstNonBlank(window, lineStart, i);
+                if (first < i) {
+                    if (window.get(first) == '[') {
+                        // A tag line after movetext opens the next game
+                        if (seenMoves) {
+                            queue.put(copyGame(window, gameStart, lineStart, ++gameNumber));
+                            gameStart = lineStart;
+                            seenMoves = false;
+                        }
+                    } else {
+                        seenMoves = true;
+                    }
+                }
+                lineStart = i + 1;
+            }
+
+            if (lastWindow) {
+                if (seenMoves) {
+                    queue.put(copyGame(window, gameStart, (int) length, ++gameNumber));
+                }
+                position = size;
+            } else if (gameStart == 0) {
+                // Not a single boundary in a whole window: the game is too large to validate
+                queue.put(new GameText(++gameNumber, new byte[0], "game exceeds " + WINDOW_SIZE + " bytes"));
+                position += length;
+            } else {
+                position += gameStart;
+            }
+        }
+        return gameNumber;
+    }
+
+    private static int firstNonBlank(MappedByteBuffer window, int from, int to) {
+        while (from < to && window.get(from) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static GameText copyGame(MappedByteBuffer window, int from, int to, long gameNumber) {
+        if (to - from > MAX_GAME_BYTES) {
+            return new GameText(gameNumber, new byte[0], "game exceeds " + MAX_GAME_BYTES + " bytes");
+        }
+        byte[] text = new byte[to - from];
+        window.get(from, text);
+        return new GameText(gameNumber, text, null);
+    }
+
+    /** Replays games on one board; SAN is resolved against the engine's legal move list. */
+    static final class GameValidator {
+        private final ChessBoard board;
+        private final MoveListener listener;
+        private final BoardSnapshot snapshot = new BoardSnapshot();
+        private final int[] legalMoves = new int[ChessBoard.MAX_MOVES];
+        private final int[] chosen = new int[1];
+
+        GameValidator(ChessBoard board, MoveListener listener) {
+            this.board = board;
+            this.listener = listener;
+            board.attachSnapshot(snapshot);
+        }
+
+        GameResult validate(GameText game) {
+            if (game.error() != null) {
+                return new GameResult(game.gameNumber(), 0, "*", game.error());
+            }
+            byte[] text = game.text();
+            board.initializeBoard();
+            String result = "*";
+            int plies = 0;
+            int i = 0;
+
+            while (i < text.length) {
+                byte c = text[i];
+                if (c <= ' ') {
+                    i++;
+                } else if (c == '[') {
+                    int end = indexOf(text, i, (byte) ']');
+                    if (startsWith(text, i + 1, "FEN \"")) {
+                        int start = i + 6;
+                        int close = indexOf(text, start, (byte) '"');
+                        if (close < start || text[close] != '"' || close > end) {
+                            return new GameResult(game.gameNumber(), 0, result, "unterminated FEN tag");
+                        }
+                        String fen = new String(text, start, close - start, StandardCharsets.US_ASCII);
+                        try {
+                            board.setFen(fen);
+                        } catch (IllegalArgumentException e) {
+                            return new GameResult(game.gameNumber(), 0, result, "invalid FEN: " + e.getMessage());
+                        }
+                    }
+                    i = end + 1;
+                } else if (c == '{') {
+                    i = indexOf(text, i, (byte) '}') + 1;
+                } else if (c == ';' || c == '%') {
+                    i = indexOf(text, i, (byte) '\n') + 1;
+                } else if (c == '(') {
+                    i = skipVariation(text, i);
+                } else {
+                    int end = i;
+                    while (end < text.length && text[end] > ' ' && text[end] != '{' && text[end] != '(' && text[end] != ';') {
+                        end++;
+                    }
+                    String token = classifyToken(text, i, end);
+                    if (token != null) {
+                        result = token;
+                    } else if (isMoveToken(text, i, end)) {
+                        long key = listener == null ? 0 : board.getPositionKey();
+                        String error = playSan(text, i, end);
+                        if (error != null) {
+                            String san = new String(text, i, end - i, StandardCharsets.US_ASCII);
+                            return new GameResult(game.gameNumber(), plies, result, "ply " + (plies + 1) + " (" + san + "): " + error);
+                        }
+                        if (listener != null) {
+                            try {
+                                listener.onMove(game.gameNumber(), plies, key, chosen[0]);
+                            } catch (RuntimeException | Error e) {
+                                throw new ListenerFailure(e);
+                            }
+                        }
+                        plies++;
+                    }
+                    i = end;
+                }
+            }
+            return new GameResult(game.gameNumber(), plies, result, null);
+        }
+
+        // Resolves one SAN move against the legal moves and plays it; returns an error message or null
+        private String playSan(byte[] text, int from, int to) {
+            while (to > from && (text[to - 1] == '+' || text[to - 1] == '#' || text[to - 1] == '!' || text[to - 1] == '?')) {
+                to--;
+            }
+            if (text[from] == 'O' || text[from] == '0') {
+                return "castling is not part of this engine's rules";
+            }
+
+            int promotion = 0;
+            if (to - from >= 2 && isPieceLetter(text[to - 1]) && (text[to - 2] == '=' || isRank(text[to - 2]))) {
+                promotion = pieceType(text[to - 1]);
+                to -= text[to - 2] == '=' ? 2 : 1;
+                if (promotion != 4) {
+                    return "only promotion to a queen is supported";
+                }
+            }
+            if (to - from < 2 || !isFile(text[to - 2]) || !isRank(text[to - 1])) {
+                return "unreadable move";
+            }
+            int toCol = text[to - 2] - 'a';
+            int toRow = '8' - text[to - 1];
+
+            int pieceType = 6;
+            int cursor = from;
+            if (isPieceLetter(text[cursor]) && text[cursor] != 'P') {
+                pieceType = pieceType(text[cursor]);
+            }
+            if (text[cursor] == 'P' || pieceType != 6) {
+                cursor++;
+            }
+            int fromCol = -1;
+            int fromRow = -1;
+            for (; cursor < to - 2; cursor++) {
+                if (isFile(text[cursor])) {
+                    fromCol = text[cursor] - 'a';
+                } else if (isRank(text[cursor])) {
+                    fromRow = '8' - text[cursor];
+                }
+            }
+
+            if (snapshot.isGameOver()) {
+                return "game already ended: " + snapshot.status();
+            }
+            int count = Math.min(board.generateLegalMoves(legalMoves), legalMoves.length);
+            int match = 0;
+            int matches = 0;
+            for (int m = 0; m < count; m++) {
+                int move = legalMoves[m];
+                int moveFromRow = ChessBoard.moveFromRow(move);
+                int moveFromCol = ChessBoard.moveFromCol(move);
+                if (ChessBoard.moveToRow(move) == toRow && ChessBoard.moveToCol(move) == toCol
+                        && Math.abs(snapshot.pieceAt(moveFromRow, moveFromCol)) == pieceType
+                        && (fromRow == -1 || fromRow == moveFromRow) && (fromCol == -1 || fromCol == moveFromCol)) {
+                    match = move;
+                    matches++;
+                }
+            }
+            if (matches == 0) {
+                return "no legal move matches";
+            }
+            if (matches > 1) {
+                return "ambiguous move";
+            }
+            if (pieceType == 6 && (promotion != 0) != (ChessBoard.movePromotion(match) != 0)) {
+                return promotion == 0 ? "promotion piece missing" : "pawn cannot promote here";
+            }
+            chosen[0] = match;
+            board.applyMoves(chosen, 0, 1, true);
+            return null;
+        }
+
+        private static String classifyToken(byte[] text, int from, int to) {
+            for (String result : new String[] {"1-0", "0-1", "1/2-1/2", "*"}) {
+                if (to - from == result.length() && startsWith(text, from, result)) {
+                    return result;
+                }
+            }
+            return null;
+        }
+
+        // Skips move numbers ("12." / "12...") and NAGs ("$1")
+        private static boolean isMoveToken(byte[] text, int from, int to) {
+            if (text[from] == '$' || text[from] == '.') {
+                return false;
+            }
+            if (text[from] >= '0' && text[from] <= '9' && text[from] != '0') {
+                return false;
+            }
+            return !(text[from] == '0' && to - from > 1 && text[from + 1] != '-');
+        }
+
+        private static int skipVariation(byte[] text, int i) {
+            int depth = 0;
+            for (; i < text.length; i++) {
+                if (text[i] == '(') {
+                    depth++;
+                } else if (text[i] == ')' && --depth == 0) {
+                    return i + 1;
+                } else if (text[i] == '{') {
+                    i = indexOf(text, i, (byte) '}');
+                }
+            }
+            return text.length;
+        }
+
+        private static int indexOf(byte[] text, int from, byte value) {
+            for (int i = from; i < text.length; i++) {
+                if (text[i] == value) {
+                    return i;
+                }
+            }
+            return text.length - 1;
+        }
+
+        private static boolean startsWith(byte[] text, int from, String prefix) {
+            if (from + prefix.length() > text.length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (text[from + i] != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isFile(byte c) {
+            return c >= 'a' && c <= 'h';
+        }
+
+        private static boolean isRank(byte c) {
+            return c >= '1' && c <= '8';
+        }
+
+        private static boolean isPieceLetter(byte c) {
+            return c == 'K' || c == 'Q' || c == 'R' || c == 'B' || c == 'N' || c == 'P';
+        }
+
+        private static int pieceType(byte c) {
+            switch (c) {
+                case 'R': return 1;
+                case 'N': return 2;
+                case 'B': return 3;
+                case 'Q': return 4;
+                case 'K': return 5;
+                default: return 6;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: PgnImporter <file.pgn> [threads]");
+            System.exit(2);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        ImportStats stats = new PgnImporter(threads).importFile(Path.of(args[0]), result -> {
+            if (!result.isValid()) {
+                System.out.println("game " + result.gameNumber() + ": " + result.error());
+            }
+        });
+        System.out.printf("%d games (%d valid), %d plies, %.1f MB in %.2f s: %,.0f games/s, %,.0f plies/s%n",
+                stats.games(), stats.validGames(), stats.plies(), stats.bytes() / 1e6, stats.elapsedNanos() / 1e9,
+                stats.gamesPerSecond(), stats.pliesPerSecond());
+    }
+}
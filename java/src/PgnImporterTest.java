@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+class PgnImporterTest {
+
+    private static final String GAMES = """
+            [Event "Fool's mate"]
+            [Result "0-1"]
+
+            1. f3 e5 2. g4 {blunder} Qh4# 0-1
+
+            [Event "Knights"]
+            [Result "*"]
+
+            1. Nf3 Nf6 2. Nc3 (2. e4 Nxe4) Nc6 3. Nb5 $1 Nb4 *
+
+            [Event "Castling"]
+            [Result "*"]
+
+            1. e4 e5 2. Nf3 Nc6 3. Bc4 Bc5 4. O-O *
+
+            [Event "Illegal"]
+            [Result "*"]
+
+            1. e4 e5 2. Ke3 *
+            """;
+
+    @Test
+    public void testImportReportsEachGame() throws Exception {
+        Path pgn = Files.createTempFile("games", ".pgn");
+        try {
+            Files.writeString(pgn, GAMES);
+            Map<Long, PgnImporter.GameResult> results = new ConcurrentHashMap<>();
+            PgnImporter.ImportStats stats = new PgnImporter(2).importFile(pgn, r -> results.put(r.gameNumber(), r));
+
+            assertEquals(4, stats.games());
+            assertEquals(2, stats.validGames());
+            assertEquals(4, results.size());
+
+            assertTrue(results.get(1L).isValid());
+            assertEquals(4, results.get(1L).plies());
+            assertEquals("0-1", results.get(1L).result());
+
+            assertTrue(results.get(2L).isValid(), "Variations and NAGs should be skipped");
+            assertEquals(6, results.get(2L).plies());
+
+            assertFalse(results.get(3L).isValid(), "Castling is not part of the engine's rules");
+            assertEquals(6, results.get(3L).plies());
+
+            assertFalse(results.get(4L).isValid());
+            assertTrue(results.get(4L).error().startsWith("ply 3 (Ke3)"));
+        } finally {
+            deleteMapped(pgn);
+        }
+    }
+
+    @Test
+    public void testFenTagSetsTheStartPosition() throws Exception {
+        Path pgn = Files.createTempFile("games", ".pgn");
+        try {
+            Files.writeString(pgn, """
+                    [Event "Pawn ending"]
+                    [SetUp "1"]
+                    [FEN "4k3/8/8/8/8/8/4P3/4K3 b - - 0 30"]
+                    [Result "*"]
+
+                    30... Kd7 31. e4 Kc6 32. e5 *
+
+                    [Event "Broken setup"]
+                    [FEN "4k3/8/8/8/8/8/4P3/4K3 z - - 0 1"]
+                    [Result "*"]
+
+                    1. e4 *
+                    """);
+            Map<Long, PgnImporter.GameResult> results = new ConcurrentHashMap<>();
+            new PgnImporter(1).importFile(pgn, r -> results.put(r.gameNumber(), r));
+
+            assertTrue(results.get(1L).isValid(), String.valueOf(results.get(1L).error()));
+            assertEquals(4, results.get(1L).plies());
+            assertFalse(results.get(2L).isValid());
+            assertTrue(results.get(2L).error().startsWith("invalid FEN"), results.get(2L).error());
+        } finally {
+            deleteMapped(pgn);
+        }
+    }
+
+    @Test
+    public void testConsumerFailureEndsTheImport() throws Exception {
+        Path pgn = Files.createTempFile("games", ".pgn");
+        try {
+            Files.writeString(pgn, GAMES.repeat(200));
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> new PgnImporter(2).importFile(pgn, r -> {
+                throw new IllegalStateException("consumer failed");
+            }));
+            assertEquals("consumer failed", e.getMessage());
+
+            UnsupportedOperationException listenerError = assertThrows(UnsupportedOperationException.class,
+                    () -> new PgnImporter(2).importFile(pgn, r -> { }, (game, ply, key, move) -> {
+                        throw new UnsupportedOperationException("listener failed");
+                    }));
+            assertEquals("listener failed", listenerError.getMessage());
+        } finally {
+            deleteMapped(pgn);
+        }
+    }
+
+    @Test
+    public void testTruncatedFenTagIsReported() throws Exception {
+        Path pgn = Files.createTempFile("games", ".pgn");
+        try {
+            Files.writeString(pgn, "1. e4 e5 [FEN \"");
+            Map<Long, PgnImporter.GameResult> results = new ConcurrentHashMap<>();
+            PgnImporter.ImportStats stats = new PgnImporter(1).importFile(pgn, r -> results.put(r.gameNumber(), r));
+            assertEquals(stats.games(), results.size());
+            assertTrue(results.values().stream().anyMatch(r -> "unterminated FEN tag".equals(r.error())), results.toString());
+        } finally {
+            deleteMapped(pgn);
+        }
+    }
+
+    // The importer maps the file in windows that stay mapped until they are collected, and Windows refuses to
+    // delete a mapped file
+    private static void deleteMapped(Path file) {
+        file.toFile().deleteOnExit();
+    }
+}
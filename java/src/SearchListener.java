@@ -0,0 +1,13 @@
+import java.util.List;
+
+/**
+ * Receives the progress of a search. The engine hands completed iterations over in batches, oldest first:
+ * the first iteration right away and then at most one batch every 50 ms, so a fast search costs only a few
+ * calls back into Java. Called on the searching thread, which waits for it to return.
+ */
+@FunctionalInterface
+public interface SearchListener {
+
+    /** Returns false to stop the search; it then finishes with the best move of the last completed iteration. */
+    boolean onProgress(List<SearchProgress> batch);
+}
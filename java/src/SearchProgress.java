@@ -0,0 +1,16 @@
+/**
+ * One completed iteration of a running {@link ChessBoard#findBestMove(int, long, SearchListener)}: its depth,
+ * score from the side to move's point of view, the nodes the reporting thread has searched so far, the time
+ * since the search started and the best line found, packed like {@link ChessBoard#packMove}.
+ */
+public record SearchProgress(int depth, int score, long nodes, long elapsedMillis, int[] principalVariation) {
+
+    /** First move of the best line, or 0 if the line is empty. */
+    public int bestMove() {
+        return principalVariation.length == 0 ? 0 : principalVariation[0];
+    }
+
+    public boolean isMateScore() {
+        return Math.abs(score) >= SearchResult.MATE_SCORE - 64;
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Outcome of {@link ChessBoard#findBestMove}: the chosen move packed like {@link ChessBoard#packMove},
+ * its score in centipawns from the point of view of the side to move, the nodes searched and the
+ * deepest completed iteration. {@code move} is 0 when there was nothing to play.
+ */
+public record SearchResult(int move, int score, long nodes, int depth) {
+
+    /** Scores at or beyond {@code MATE_SCORE - 64} announce a forced mate. */
+    public static final int MATE_SCORE = 100000;
+
+    public boolean hasMove() {
+        return move != 0;
+    }
+
+    public boolean isMateScore() {
+        return Math.abs(score) >= MATE_SCORE - 64;
+    }
+}
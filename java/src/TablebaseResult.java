@@ -0,0 +1,20 @@
+/**
+ * What an endgame tablebase says about a position: the result for the side to move with perfect play on
+ * both sides and, for a decided game, the plies until mate. See {@link ChessBoard#probeTablebase()}.
+ */
+public record TablebaseResult(Outcome outcome, int pliesToMate) {
+
+    public enum Outcome { WIN, DRAW, LOSS }
+
+    // Native table values: 0 draw, 254 stalemate, otherwise plies to mate + 1; -1 when no table applies
+    static TablebaseResult fromValue(int value) {
+        if (value < 0) {
+            return null;
+        }
+        if (value == 0 || value == 254) {
+            return new TablebaseResult(Outcome.DRAW, 0);
+        }
+        int plies = value - 1;
+        return new TablebaseResult(plies % 2 == 1 ? Outcome.WIN : Outcome.LOSS, plies);
+    }
+}
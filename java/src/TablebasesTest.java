@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class TablebasesTest {
+
+    @Test
+    public void testSignatures() {
+        assertEquals("KQvK", Tablebases.canonical("KvKQ"));
+        assertEquals("KRPvKB", Tablebases.canonical("KPRvKB"));
+        assertEquals(List.of("KRvKP", "KRvKR", "KQRvKR", "KRPvK"), Tablebases.dependencies("KRPvKR"));
+        assertThrows(IllegalArgumentException.class, () -> Tablebases.canonical("KQKR"));
+    }
+
+    @Test
+    public void testPerfectPlay() throws Exception {
+        Path directory = Files.createTempDirectory("tablebases");
+        try (ChessBoard board = new ChessBoard()) {
+            Tablebases.generate(directory, "KPvK", 2);
+            assertTrue(Tablebases.loaded().containsAll(List.of("KQvK", "KPvK")), "The promotion ending should be built first");
+
+            int[][] queen = new int[8][8];
+            queen[7][4] = 5;  // Ke1
+            queen[7][3] = 4;  // Qd1
+            queen[0][4] = -5; // Ke8
+            board.setBoardState(queen, true);
+            TablebaseResult result = board.probeTablebase();
+            assertEquals(TablebaseResult.Outcome.WIN, result.outcome());
+
+            int plies = 0;
+            while (!board.getGameStatus().isGameOver()) {
+                SearchResult move = board.findBestMove(0, 0);
+                assertEquals(1, move.depth(), "Tablebase positions should not be searched");
+                board.applyMoves(new int[] {move.move()}, 0, 1);
+                plies++;
+            }
+            assertEquals(GameStatus.CHECKMATE_WHITE_WINS, board.getGameStatus());
+            assertEquals(result.pliesToMate(), plies, "Both sides should follow the distance to mate");
+
+            int[][] swapped = new int[8][8];
+            swapped[0][4] = -5;
+            swapped[0][3] = -4;
+            swapped[7][4] = 5;
+            board.setBoardState(swapped, true);
+            assertEquals(TablebaseResult.Outcome.LOSS, board.probeTablebase().outcome(), "Colours should swap");
+
+            // King on the sixth rank in front of its pawn wins whoever moves; a rook pawn with the defender in the corner draws
+            int[][] pawn = new int[8][8];
+            pawn[2][2] = 5;  // Kc6
+            pawn[3][2] = 6;  // c5
+            pawn[0][2] = -5; // Kc8
+            board.setBoardState(pawn, true);
+            assertEquals(TablebaseResult.Outcome.WIN, board.probeTablebase().outcome());
+            board.setBoardState(pawn, false);
+            assertEquals(TablebaseResult.Outcome.LOSS, board.probeTablebase().outcome());
+
+            int[][] rookPawn = new int[8][8];
+            rookPawn[7][0] = 5;  // Ka1
+            rookPawn[6][0] = 6;  // a2
+            rookPawn[1][1] = -5; // Kb7
+            board.setBoardState(rookPawn, true);
+            assertEquals(TablebaseResult.Outcome.DRAW, board.probeTablebase().outcome());
+        } finally {
+            // The tables stay mapped and registered with the engine for the life of the process, and Windows
+            // refuses to delete a mapped file. deleteOnExit runs in reverse order, so the files go first.
+            directory.toFile().deleteOnExit();
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    file.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+}
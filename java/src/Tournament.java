@@ -0,0 +1,269 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Headless self-play harness: plays two engine configurations against each other, one game per virtual
+ * thread and one {@link ChessBoard} per game, and reports the score, games/s, nodes/s and the Elo difference.
+ *
+ * A virtual thread stays pinned to its carrier while it is inside native code, so a semaphore caps how many
+ * games search at once. Games come in pairs that start from the same random opening with colours swapped,
+ * which keeps the deterministic engine from replaying one game over and over. A move that runs past its
+ * time limit by more than {@link #TIME_TOLERANCE_MILLIS} loses the game on time. Games that reach
+ * {@code maxPlies} are adjudicated as draws. With an {@link OpeningBook} both sides play book moves, picked by
+ * weight, without searching for as long as the position is in the book.
+ *
+ * Usage: java -Djava.library.path=../lib Tournament [games] [concurrency] [configA] [configB] [book.bin]
+ * where a config is {@code depth/moveMillis/threads}, e.g. {@code 4/100/1}.
+ */
+public class Tournament {
+
+    /** Search settings of one side; {@code maxDepth} and {@code moveTimeMillis} as in {@link ChessBoard#findBestMove}. */
+    public record EngineConfig(String name, int maxDepth, long moveTimeMillis, int threads) {
+        public static EngineConfig parse(String spec) {
+            String[] parts = spec.split("/");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Expected depth/moveMillis/threads: " + spec);
+            }
+            return new EngineConfig(spec, Integer.parseInt(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+        }
+    }
+
+    public enum Outcome { WHITE_WINS, BLACK_WINS, DRAW }
+
+    /**
+     * One finished game. {@code firstIsWhite} tells which configuration had white; {@code reason} is the final
+     * {@link GameStatus} name, "time forfeit" or "max plies".
+     */
+    public record GameResult(int gameNumber, boolean firstIsWhite, Outcome outcome, String reason, int plies, long nodes) {
+        /** Points the first configuration scored: 1, 0.5 or 0. */
+        public double firstScore() {
+            if (outcome == Outcome.DRAW) {
+                return 0.5;
+            }
+            return (outcome == Outcome.WHITE_WINS) == firstIsWhite ? 1 : 0;
+        }
+    }
+
+    public record TournamentStats(int games, int wins, int draws, int losses, long plies, long nodes, long elapsedNanos) {
+        public double score() {
+            return (wins + draws * 0.5) / Math.max(games, 1);
+        }
+
+        /** Elo difference of the first configuration over the second implied by the score; infinite on a whitewash. */
+        public double eloDifference() {
+            return elo(score());
+        }
+
+        /** Half width of the 95% confidence interval around {@link #eloDifference()}. */
+        public double eloErrorMargin() {
+            if (games < 2) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double mean = score();
+            double variance = (wins * Math.pow(1 - mean, 2) + draws * Math.pow(0.5 - mean, 2)
+                    + losses * Math.pow(mean, 2)) / (games - 1);
+            double margin = 1.96 * Math.sqrt(variance / games);
+            return (elo(Math.min(mean + margin, 1)) - elo(Math.max(mean - margin, 0))) / 2;
+        }
+
+        public double gamesPerSecond() {
+            return games * 1e9 / Math.max(elapsedNanos, 1);
+        }
+
+        public double nodesPerSecond() {
+            return nodes * 1e9 / Math.max(elapsedNanos, 1);
+        }
+
+        private static double elo(double score) {
+            return -400 * Math.log10(1 / score - 1);
+        }
+    }
+
+    /** How far past its time limit a move may run before the side loses on time. */
+    public static final long TIME_TOLERANCE_MILLIS = 50;
+
+    private final EngineConfig first;
+    private final EngineConfig second;
+    private final int concurrency;
+    private final int maxPlies;
+    private final int openingPlies;
+    private final long seed;
+    private final OpeningBook book;
+
+    /**
+     * @param concurrency  games searching at the same time
+     * @param maxPlies     plies after which a game is adjudicated as a draw
+     * @param openingPlies random legal plies played before the engines take over
+     */
+    public Tournament(EngineConfig first, EngineConfig second, int concurrency, int maxPlies, int openingPlies, long seed) {
+        this(first, second, concurrency, maxPlies, openingPlies, seed, null);
+    }
+
+    /** Like the other constructor; {@code book}, if not null, is consulted before every search. */
+    public Tournament(EngineConfig first, EngineConfig second, int concurrency, int maxPlies, int openingPlies, long seed,
+                      OpeningBook book) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Tournament needs a concurrency of at least one");
+        }
+        this.first = first;
+        this.second = second;
+        this.concurrency = concurrency;
+        this.maxPlies = maxPlies;
+        this.openingPlies = openingPlies;
+        this.seed = seed;
+        this.book = book;
+    }
+
+    /**
+     * Plays {@code games} games and passes each result to {@code results} as soon as it is known. Results
+     * arrive from the game threads in completion order, so the consumer must be thread-safe.
+     */
+    public TournamentStats run(int games, Consumer<GameResult> results) throws InterruptedException {
+        Semaphore searching = new Semaphore(concurrency);
+        List<Future<GameResult>> futures = new ArrayList<>(games);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < games; i++) {
+                int gameNumber = i;
+                futures.add(executor.submit(() -> {
+                    searching.acquire();
+                    try {
+                        GameResult result = playGame(gameNumber);
+                        results.accept(result);
+                        return result;
+                    } finally {
+                        searching.release();
+                    }
+                }));
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int wins = 0;
+        int draws = 0;
+        long plies = 0;
+        long nodes = 0;
+        for (Future<GameResult> future : futures) {
+            GameResult result;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Game failed", e.getCause());
+            }
+            double score = result.firstScore();
+            if (score == 1) {
+                wins++;
+            } else if (score == 0.5) {
+                draws++;
+            }
+            plies += result.plies();
+            nodes += result.nodes();
+        }
+        return new TournamentStats(games, wins, draws, games - wins - draws, plies, nodes, elapsed);
+    }
+
+    /** Plays one game; even and odd game numbers share an opening and swap colours. */
+    GameResult playGame(int gameNumber) {
+        boolean firstIsWhite = gameNumber % 2 == 0;
+        try (ChessBoard board = new ChessBoard()) {
+            board.initializeBoard();
+            SplittableRandom random = new SplittableRandom(seed + gameNumber / 2);
+            int plies = playOpening(board, random);
+            long nodes = 0;
+            int[] move = new int[1];
+            boolean inBook = book != null;
+            while (plies < maxPlies) {
+                GameStatus status = board.getGameStatus();
+                if (status.isGameOver()) {
+                    return finished(gameNumber, firstIsWhite, status, plies, nodes);
+                }
+                if (inBook) {
+                    move[0] = book.pickMove(board, random);
+                    // Leaving the book for good also covers a key collision that names an illegal move
+                    inBook = move[0] != 0 && board.applyMoves(move, 0, 1) == -1;
+                    if (inBook) {
+                        plies++;
+                        continue;
+                    }
+                }
+                boolean whiteToMove = board.isWhiteTurn();
+                EngineConfig engine = whiteToMove == firstIsWhite ? first : second;
+                board.setSearchThreads(engine.threads());
+
+                long started = System.nanoTime();
+                SearchResult result = board.findBestMove(engine.maxDepth(), engine.moveTimeMillis());
+                long tookMillis = (System.nanoTime() - started) / 1_000_000;
+                nodes += result.nodes();
+                if (engine.moveTimeMillis() > 0 && tookMillis > engine.moveTimeMillis() + TIME_TOLERANCE_MILLIS) {
+                    Outcome outcome = whiteToMove ? Outcome.BLACK_WINS : Outcome.WHITE_WINS;
+                    return new GameResult(gameNumber, firstIsWhite, outcome, "time forfeit", plies, nodes);
+                }
+                move[0] = result.move();
+                if (!result.hasMove() || board.applyMoves(move, 0, 1) != -1) {
+                    throw new IllegalStateException("Engine returned no legal move in an ongoing game " + gameNumber);
+                }
+                plies++;
+            }
+            GameStatus status = board.getGameStatus();
+            if (status.isGameOver()) {
+                return finished(gameNumber, firstIsWhite, status, plies, nodes);
+            }
+            return new GameResult(gameNumber, firstIsWhite, Outcome.DRAW, "max plies", plies, nodes);
+        }
+    }
+
+    // Random legal moves, stopping early rather than handing the engines a finished game
+    private int playOpening(ChessBoard board, SplittableRandom random) {
+        int[] moves = new int[ChessBoard.MAX_MOVES];
+        int plies = 0;
+        while (plies < openingPlies) {
+            int count = board.generateLegalMoves(moves);
+            if (count == 0) {
+                break;
+            }
+            board.applyMoves(moves, random.nextInt(count), 1);
+            plies++;
+            if (board.getGameStatus().isGameOver()) {
+                board.undoMove();
+                plies--;
+                break;
+            }
+        }
+        return plies;
+    }
+
+    private static GameResult finished(int gameNumber, boolean firstIsWhite, GameStatus status, int plies, long nodes) {
+        Outcome outcome = switch (status) {
+            case CHECKMATE_WHITE_WINS -> Outcome.WHITE_WINS;
+            case CHECKMATE_BLACK_WINS -> Outcome.BLACK_WINS;
+            default -> Outcome.DRAW;
+        };
+        return new GameResult(gameNumber, firstIsWhite, outcome, status.name(), plies, nodes);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        EngineConfig first = EngineConfig.parse(args.length > 2 ? args[2] : "4/100/1");
+        EngineConfig second = EngineConfig.parse(args.length > 3 ? args[3] : "3/100/1");
+
+        OpeningBook book = args.length > 4 ? OpeningBook.open(Path.of(args[4])) : null;
+
+        Tournament tournament = new Tournament(first, second, concurrency, 300, book == null ? 8 : 0, 1, book);
+        TournamentStats stats = tournament.run(games, result -> { });
+        System.out.printf(Locale.ROOT, "%s vs %s: +%d =%d -%d (%.1f%%), Elo %+.0f +/- %.0f%n",
+                first.name(), second.name(), stats.wins(), stats.draws(), stats.losses(), stats.score() * 100,
+                stats.eloDifference(), stats.eloErrorMargin());
+        System.out.printf(Locale.ROOT, "%d games, %d plies in %.2f s: %.1f games/s, %,.0f nodes/s%n",
+                stats.games(), stats.plies(), stats.elapsedNanos() / 1e9, stats.gamesPerSecond(), stats.nodesPerSecond());
+    }
+}
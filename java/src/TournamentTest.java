@@ -0,0 +1,37 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+class TournamentTest {
+
+    @Test
+    public void testTournamentPlaysEveryGame() throws Exception {
+        Tournament.EngineConfig deeper = Tournament.EngineConfig.parse("3/0/1");
+        Tournament.EngineConfig shallow = Tournament.EngineConfig.parse("1/0/1");
+        Map<Integer, Tournament.GameResult> results = new ConcurrentHashMap<>();
+        Tournament.TournamentStats stats = new Tournament(deeper, shallow, 4, 120, 4, 7)
+                .run(8, r -> results.put(r.gameNumber(), r));
+
+        assertEquals(8, stats.games());
+        assertEquals(8, results.size());
+        assertEquals(8, stats.wins() + stats.draws() + stats.losses());
+        assertTrue(stats.nodes() > 0);
+        assertTrue(stats.score() >= 0.5, "Depth 3 should not lose to depth 1: " + stats);
+        for (Tournament.GameResult result : results.values()) {
+            assertEquals(result.gameNumber() % 2 == 0, result.firstIsWhite());
+            assertTrue(result.plies() <= 120);
+        }
+    }
+
+    @Test
+    public void testEloDifference() {
+        Tournament.TournamentStats even = new Tournament.TournamentStats(10, 3, 4, 3, 0, 0, 1);
+        assertEquals(0, even.eloDifference(), 1e-9);
+
+        Tournament.TournamentStats ahead = new Tournament.TournamentStats(4, 3, 0, 1, 0, 0, 1);
+        assertEquals(190.8, ahead.eloDifference(), 0.1);
+        assertTrue(ahead.eloErrorMargin() > 0);
+    }
+}
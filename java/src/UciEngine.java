@@ -0,0 +1,654 @@
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless engine that speaks UCI, either on stdin/stdout or to any number of clients on a local socket.
+ * Every session owns its own {@link ChessBoard}, so clients never share a game. Socket sessions read and
+ * write on virtual threads. Searches run on a fixed pool of platform threads shared by all sessions: a
+ * virtual thread stays pinned to its carrier while inside native code, so long searches on virtual threads
+ * could leave no carrier free to read the {@code stop} that ends them. Lines are tokenized in place in a
+ * reused buffer and replies are written from another, so a session allocates nothing per message.
+ *
+ * Supported: uci, isready, setoption (Threads), ucinewgame, position startpos|fen [moves ...], go with depth,
+ * movetime, wtime/btime/winc/binc/movestogo or infinite, stop and quit. When a position repeats the
+ * previous one with moves appended, only the new moves are played. The engine's rules apply: no castling,
+ * no en passant, and a game that ends by repetition or the fifty-move rule takes no further moves.
+ *
+ * Usage: java -Djava.library.path=../lib UciEngine [port [searchThreads]]
+ */
+public final class UciEngine implements AutoCloseable {
+
+    public static final String NAME = "Checkmate.JNI";
+    /** Subtracted from the clock so a reply still arrives in time. */
+    static final long MOVE_OVERHEAD_MILLIS = 20;
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    private static final int MAX_LINE_BYTES = 1 << 20;
+    private static final int MAX_THREADS = 64;
+
+    private final ExecutorService searches;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    /** {@code searchThreads} bounds how many sessions search at the same time. */
+    public UciEngine(int searchThreads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        searches = Executors.newFixedThreadPool(searchThreads, task -> {
+            Thread thread = new Thread(task, "uci-search-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int activeSessions() {
+        return activeSessions.get();
+    }
+
+    /** Runs one session until the client sends quit or closes its input. */
+    public void runSession(InputStream in, OutputStream out) throws IOException {
+        activeSessions.incrementAndGet();
+        try (Session session = new Session(out, searches)) {
+            LineReader reader = new LineReader(in);
+            while (reader.next() && session.handle(reader.buffer(), reader.start(), reader.end())) {
+            }
+        } finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Accepts clients until the server socket is closed and runs a session for each on its own virtual thread.
+     */
+    public void serve(ServerSocket server) throws IOException {
+        while (!server.isClosed()) {
+            Socket client;
+            try {
+                client = server.accept();
+            } catch (IOException e) {
+                if (server.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            Thread.ofVirtual().name("uci-session-" + client.getPort()).start(() -> {
+                try (client) {
+                    runSession(client.getInputStream(), client.getOutputStream());
+                } catch (IOException e) {
+                    // The client went away; its session is already closed
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        searches.shutdownNow();
+    }
+
+    /** Packs a move in long algebraic notation such as {@code e2e4} or {@code e7e8n}, or returns -1 if it is malformed. */
+    static int parseMove(byte[] text, int start, int end) {
+        int length = end - start;
+        if (length != 4 && length != 5) {
+            return -1;
+        }
+        int from = parseSquare(text[start], text[start + 1]);
+        int to = parseSquare(text[start + 2], text[start + 3]);
+        int promotion = length == 5 ? promotionPiece(text[start + 4]) : 0;
+        if (from < 0 || to < 0 || promotion < 0) {
+            return -1;
+        }
+        return from | (to << 6) | (promotion << 12);
+    }
+
+    static int parseMove(String move) {
+        byte[] text = new byte[move.length()];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) move.charAt(i);
+        }
+        return parseMove(text, 0, text.length);
+    }
+
+    static String formatMove(int move) {
+        Output output = new Output(OutputStream.nullOutputStream());
+        output.move(move);
+        return new String(output.buffer, 0, output.length, StandardCharsets.US_ASCII);
+    }
+
+    // Square index row * 8 + col, where row 0 is the eighth rank
+    private static int parseSquare(byte file, byte rank) {
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            return -1;
+        }
+        return ('8' - rank) * 8 + (file - 'a');
+    }
+
+    private static int promotionPiece(byte piece) {
+        return switch (piece) {
+            case 'q' -> 4;
+            case 'r' -> 1;
+            case 'b' -> 3;
+            case 'n' -> 2;
+            default -> -1;
+        };
+    }
+
+    /** One client: its board, the parsed tokens of the current line and the running search, if any. */
+    static final class Session implements AutoCloseable {
+        private final ChessBoard board = ChessBoard.create();
+        private final Output output;
+        private final ExecutorService searches;
+
+        private byte[] line;
+        private int[] tokenStarts = new int[64];
+        private int[] tokenEnds = new int[64];
+        private int tokens;
+
+        // Moves of the last position command that are on the board, so a longer list only plays the new ones;
+        // -1 after an illegal move, when the board matches no move list and has to start over
+        private int[] moves = new int[256];
+        private int playedMoves;
+        private int[] pending = new int[256];
+        // FEN the moves start from, as sent; empty for the start position
+        private byte[] base = new byte[128];
+        private int baseLength;
+
+        private Future<?> search;
+        private volatile boolean stopRequested;
+        private boolean infinite;
+
+        Session(OutputStream out, ExecutorService searches) {
+            this.output = new Output(out);
+            this.searches = searches;
+            board.initializeBoard();
+        }
+
+        /** Handles one line; returns false once the client has sent quit. */
+        boolean handle(byte[] line, int start, int end) throws IOException {
+            tokenize(line, start, end);
+            if (tokens == 0) {
+                return true;
+            }
+            if (is(0, "isready")) {
+                synchronized (output) {
+                    output.text("readyok").line();
+                }
+                return true;
+            }
+            if (is(0, "stop")) {
+                stopSearch();
+                return true;
+            }
+            if (is(0, "quit")) {
+                stopSearch();
+                return false;
+            }
+            if (is(0, "ponderhit")) {
+                return true;
+            }
+            awaitSearch();
+            if (is(0, "uci")) {
+                synchronized (output) {
+                    output.text("id name ").text(NAME).line();
+                    output.text("id author ").text(NAME).text(" contributors").line();
+                    output.text("option name Threads type spin default 1 min 1 max ").number(MAX_THREADS).line();
+                    output.text("uciok").line();
+                }
+            } else if (is(0, "setoption")) {
+                setOption();
+            } else if (is(0, "ucinewgame")) {
+                board.initializeBoard();
+                playedMoves = 0;
+                baseLength = 0;
+            } else if (is(0, "position")) {
+                position();
+            } else if (is(0, "go")) {
+                go();
+            } else {
+                info("unknown command");
+            }
+            return true;
+        }
+
+        private void setOption() throws IOException {
+            // setoption name <id> value <x>
+            if (tokens == 5 && is(1, "name") && is(2, "Threads") && is(3, "value")) {
+                long threads = number(4);
+                if (threads >= 1 && threads <= MAX_THREADS) {
+                    board.setSearchThreads((int) threads);
+                    return;
+                }
+            }
+            info("unsupported option");
+        }
+
+        private void position() throws IOException {
+            int movesToken;
+            int fenStart = 0;
+            int fenEnd = 0;
+            if (tokens >= 2 && is(1, "startpos")) {
+                movesToken = 2;
+            } else if (tokens >= 3 && is(1, "fen")) {
+                movesToken = 3;
+                while (movesToken < tokens && !is(movesToken, "moves")) {
+                    movesToken++;
+                }
+                fenStart = tokenStarts[2];
+                fenEnd = tokenEnds[movesToken - 1];
+            } else {
+                info("expected startpos or fen");
+                return;
+            }
+            int count = 0;
+            if (tokens > movesToken) {
+                if (!is(movesToken, "moves")) {
+                    info("expected moves after the position");
+                    return;
+                }
+                count = tokens - movesToken - 1;
+            }
+            if (pending.length < count) {
+                pending = new int[Math.max(count, pending.length * 2)];
+            }
+            for (int i = 0; i < count; i++) {
+                pending[i] = parseMove(line, tokenStarts[movesToken + 1 + i], tokenEnds[movesToken + 1 + i]);
+                if (pending[i] < 0) {
+                    info("malformed move");
+                    return;
+                }
+            }
+
+            boolean sameBase = Arrays.equals(base, 0, baseLength, line, fenStart, fenEnd);
+            boolean extendsBoard = sameBase && playedMoves >= 0 && playedMoves <= count
+                    && Arrays.equals(moves, 0, playedMoves, pending, 0, playedMoves);
+            if (!extendsBoard) {
+                playedMoves = -1;
+                if (fenEnd == fenStart) {
+                    board.initializeBoard();
+                } else {
+                    try {
+                        board.setFen(new String(line, fenStart, fenEnd - fenStart, StandardCharsets.US_ASCII));
+                    } catch (IllegalArgumentException e) {
+                        info(e.getMessage());
+                        return;
+                    }
+                }
+                if (base.length < fenEnd - fenStart) {
+                    base = new byte[fenEnd - fenStart];
+                }
+                System.arraycopy(line, fenStart, base, 0, fenEnd - fenStart);
+                baseLength = fenEnd - fenStart;
+                playedMoves = 0;
+            }
+            int[] swap = moves;
+            moves = pending;
+            pending = swap;
+            int rejected = board.applyMoves(moves, playedMoves, count - playedMoves);
+            if (rejected >= 0) {
+                int illegal = playedMoves + rejected;
+                playedMoves = -1;
+                synchronized (output) {
+                    output.text("info string illegal move ").move(moves[illegal]).line();
+                }
+                return;
+            }
+            playedMoves = count;
+        }
+
+        private void go() {
+            int depth = 0;
+            long moveTime = 0;
+            long time = 0;
+            long increment = 0;
+            long movesToGo = 0;
+            boolean white = board.isWhiteTurn();
+            infinite = false;
+            for (int i = 1; i < tokens; i++) {
+                if (is(i, "infinite")) {
+                    infinite = true;
+                } else if (i + 1 < tokens) {
+                    if (is(i, "depth")) {
+                        depth = (int) number(++i);
+                    } else if (is(i, "movetime")) {
+                        moveTime = number(++i);
+                    } else if (is(i, white ? "wtime" : "btime")) {
+                        time = number(++i);
+                    } else if (is(i, white ? "winc" : "binc")) {
+                        increment = number(++i);
+                    } else if (is(i, "movestogo")) {
+                        movesToGo = number(++i);
+                    }
+                }
+            }
+            if (infinite) {
+                depth = 0;
+                moveTime = 0;
+            } else if (moveTime <= 0 && time > 0) {
+                long budget = time / (movesToGo > 0 ? movesToGo : DEFAULT_MOVES_TO_GO) + increment * 3 / 4;
+                moveTime = Math.max(1, Math.min(budget, time - MOVE_OVERHEAD_MILLIS));
+            }
+            int maxDepth = depth;
+            long budget = moveTime;
+            stopRequested = false;
+            search = searches.submit(() -> search(maxDepth, budget));
+        }
+
+        // Runs on a search thread; the reader thread waits for it before touching the board again
+        private void search(int maxDepth, long budget) {
+            long start = System.nanoTime();
+            SearchResult result = board.findBestMove(stopRequested ? 1 : maxDepth, budget);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            if (infinite) {
+                // UCI wants the best move of an infinite search only after stop, even if it ran out of depth
+                synchronized (this) {
+                    while (!stopRequested) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+            }
+            try {
+                synchronized (output) {
+                    output.text("info depth ").number(result.depth());
+                    if (result.isMateScore()) {
+                        int plies = SearchResult.MATE_SCORE - Math.abs(result.score());
+                        output.text(" score mate ").number(result.score() > 0 ? (plies + 1) / 2 : -(plies / 2));
+                    } else {
+                        output.text(" score cp ").number(result.score());
+                    }
+                    output.text(" nodes ").number(result.nodes()).text(" nps ").number(result.nodes() * 1000 / Math.max(millis, 1))
+                            .text(" time ").number(millis);
+                    if (result.hasMove()) {
+                        output.text(" pv ").move(result.move());
+                    }
+                    output.line();
+                    output.text("bestmove ");
+                    if (result.hasMove()) {
+                        output.move(result.move());
+                    } else {
+                        output.text("0000");
+                    }
+                    output.line();
+                }
+            } catch (IOException e) {
+                // The client is gone; the reader notices on its next read
+            }
+        }
+
+        // The native flag is cleared when a search starts, so it is raised again until the search has ended
+        private void stopSearch() {
+            if (search == null) {
+                return;
+            }
+            stopRequested = true;
+            synchronized (this) {
+                notifyAll();
+            }
+            while (!search.isDone()) {
+                board.stopSearch();
+                try {
+                    search.get(10, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Not finished yet; stop it again
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+            search = null;
+        }
+
+        /** Waits for the running search, if any, to report its best move. */
+        void awaitSearch() {
+            if (search == null) {
+                return;
+            }
+            try {
+                search.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Reported as a missing bestmove; the board itself is still usable
+            }
+            search = null;
+        }
+
+        private void info(String message) throws IOException {
+            synchronized (output) {
+                output.text("info string ").text(message).line();
+            }
+        }
+
+        private void tokenize(byte[] line, int start, int end) {
+            this.line = line;
+            tokens = 0;
+            int i = start;
+            while (i < end) {
+                while (i < end && isSpace(line[i])) {
+                    i++;
+                }
+                if (i == end) {
+                    break;
+                }
+                if (tokens == tokenStarts.length) {
+                    tokenStarts = Arrays.copyOf(tokenStarts, tokens * 2);
+                    tokenEnds = Arrays.copyOf(tokenEnds, tokens * 2);
+                }
+                tokenStarts[tokens] = i;
+                while (i < end && !isSpace(line[i])) {
+                    i++;
+                }
+                tokenEnds[tokens++] = i;
+            }
+        }
+
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        private boolean is(int token, String keyword) {
+            int start = tokenStarts[token];
+            if (tokenEnds[token] - start != keyword.length()) {
+                return false;
+            }
+            for (int i = 0; i < keyword.length(); i++) {
+                if (line[start + i] != keyword.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Non-negative decimal token, or -1 if it is not one
+        private long number(int token) {
+            long value = 0;
+            int start = tokenStarts[token];
+            int end = tokenEnds[token];
+            if (start == end || end - start > 18) {
+                return -1;
+            }
+            for (int i = start; i < end; i++) {
+                if (line[i] < '0' || line[i] > '9') {
+                    return -1;
+                }
+                value = value * 10 + (line[i] - '0');
+            }
+            return value;
+        }
+
+        @Override
+        public void close() {
+            stopSearch();
+            board.close();
+        }
+    }
+
+    /** Splits a stream into lines inside one buffer that only grows for lines longer than any before. */
+    static final class LineReader {
+        private final InputStream in;
+        private byte[] buffer = new byte[8192];
+        private int start;
+        private int end;
+        private int filled;
+        private boolean eof;
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        /** Moves to the next line and returns false at the end of the input. A last line without newline still counts. */
+        boolean next() throws IOException {
+            start = end < filled && buffer[end] == '\n' ? end + 1 : end;
+            int scan = start;
+            while (true) {
+                while (scan < filled) {
+                    if (buffer[scan] == '\n') {
+                        end = scan;
+                        return true;
+                    }
+                    scan++;
+                }
+                if (eof) {
+                    end = filled;
+                    return start < filled;
+                }
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, filled - start);
+                    filled -= start;
+                    scan -= start;
+                    start = 0;
+                } else if (filled == buffer.length) {
+                    if (buffer.length >= MAX_LINE_BYTES) {
+                        throw new IOException("Line longer than " + MAX_LINE_BYTES + " bytes");
+                    }
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = in.read(buffer, filled, buffer.length - filled);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    filled += read;
+                }
+            }
+        }
+
+        byte[] buffer() {
+            return buffer;
+        }
+
+        int start() {
+            return start;
+        }
+
+        int end() {
+            return end;
+        }
+    }
+
+    /** ASCII reply lines assembled in a reused buffer; callers hold its monitor while writing a reply. */
+    static final class Output {
+        private final OutputStream out;
+        private byte[] buffer = new byte[256];
+        private int length;
+
+        Output(OutputStream out) {
+            this.out = out;
+        }
+
+        Output text(String text) {
+            ensure(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                buffer[length++] = (byte) text.charAt(i);
+            }
+            return this;
+        }
+
+        Output number(long value) {
+            ensure(20);
+            if (value < 0) {
+                buffer[length++] = '-';
+                value = -value;
+            }
+            int first = length;
+            do {
+                buffer[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            for (int i = first, j = length - 1; i < j; i++, j--) {
+                byte digit = buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = digit;
+            }
+            return this;
+        }
+
+        Output move(int move) {
+            ensure(5);
+            buffer[length++] = (byte) ('a' + ChessBoard.moveFromCol(move));
+            buffer[length++] = (byte) ('8' - ChessBoard.moveFromRow(move));
+            buffer[length++] = (byte) ('a' + ChessBoard.moveToCol(move));
+            buffer[length++] = (byte) ('8' - ChessBoard.moveToRow(move));
+            switch (ChessBoard.movePromotion(move)) {
+                case 4 -> buffer[length++] = 'q';
+                case 1 -> buffer[length++] = 'r';
+                case 3 -> buffer[length++] = 'b';
+                case 2 -> buffer[length++] = 'n';
+                default -> { }
+            }
+            return this;
+        }
+
+        /** Ends the line and sends it. */
+        void line() throws IOException {
+            ensure(1);
+            buffer[length++] = '\n';
+            try {
+                out.write(buffer, 0, length);
+                out.flush();
+            } finally {
+                length = 0;
+            }
+        }
+
+        private void ensure(int more) {
+            if (length + more > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + more));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            try (UciEngine engine = new UciEngine(1)) {
+                engine.runSession(new FileInputStream(FileDescriptor.in), new FileOutputStream(FileDescriptor.out));
+            }
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        int searchThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        try (UciEngine engine = new UciEngine(searchThreads);
+             ServerSocket server = new ServerSocket(port, 128, InetAddress.getLoopbackAddress())) {
+            System.out.printf("%s serving UCI on %s with %d search threads%n", NAME, server.getLocalSocketAddress(), searchThreads);
+            engine.serve(server);
+        }
+    }
+}
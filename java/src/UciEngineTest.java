@@ -0,0 +1,134 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class UciEngineTest {
+
+    @Test
+    public void testMoveNotation() {
+        assertEquals(ChessBoard.packMove(6, 4, 4, 4), UciEngine.parseMove("e2e4"));
+        assertEquals("e2e4", UciEngine.formatMove(UciEngine.parseMove("e2e4")));
+        int underpromotion = UciEngine.parseMove("a7a8n");
+        assertEquals(2, ChessBoard.movePromotion(underpromotion));
+        assertEquals(ChessBoard.packMove(1, 0, 0, 0), underpromotion & 0xFFF);
+        assertEquals("a7a8n", UciEngine.formatMove(underpromotion));
+        assertEquals(-1, UciEngine.parseMove("e2e9"));
+        assertEquals(-1, UciEngine.parseMove("e7e8k"));
+        assertEquals(-1, UciEngine.parseMove("e2"));
+    }
+
+    @Test
+    public void testSessionOverStreams() throws Exception {
+        String input = String.join("\n", "uci", "isready", "position startpos moves e2e4 e7e5", "go depth 2",
+                "ucinewgame", "position startpos moves e2e5", "quit", "isready") + "\n";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (UciEngine engine = new UciEngine(1)) {
+            engine.runSession(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)), output);
+            assertEquals(0, engine.activeSessions());
+        }
+
+        List<String> lines = output.toString(StandardCharsets.US_ASCII).lines().toList();
+        assertEquals("id name " + UciEngine.NAME, lines.get(0));
+        assertTrue(lines.contains("uciok"));
+        assertEquals(1, lines.stream().filter("readyok"::equals).count(), "Nothing should be read after quit");
+        assertTrue(lines.contains("info string illegal move e2e5"), lines.toString());
+
+        String bestMove = lines.stream().filter(line -> line.startsWith("bestmove ")).findFirst().orElseThrow();
+        try (ChessBoard board = new ChessBoard()) {
+            board.initializeBoard();
+            board.movePiece(6, 4, 4, 4);
+            board.movePiece(1, 4, 3, 4);
+            int move = UciEngine.parseMove(bestMove.substring("bestmove ".length()));
+            int[] legal = board.generateLegalMoves();
+            assertTrue(Arrays.stream(legal).anyMatch(m -> m == move), bestMove);
+        }
+    }
+
+    @Test
+    public void testFenPositions() throws Exception {
+        String fen = "n5k1/5ppp/8/8/8/8/8/3R2K1 b - - 0 1";
+        String input = String.join("\n", "position fen " + fen + " moves a8b6", "go depth 3",
+                "position fen " + fen + " moves a8b6 g1f1", "position fen 4k3/8/8 w - - 0 1", "quit") + "\n";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (UciEngine engine = new UciEngine(1)) {
+            engine.runSession(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)), output);
+        }
+
+        List<String> lines = output.toString(StandardCharsets.US_ASCII).lines().toList();
+        assertEquals("bestmove d1d8", lines.stream().filter(line -> line.startsWith("bestmove ")).findFirst().orElseThrow(),
+                "The rook should mate from the given position");
+        assertTrue(lines.stream().noneMatch(line -> line.startsWith("info string illegal")), lines.toString());
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("info string") && line.contains("FEN")), lines.toString());
+    }
+
+    @Test
+    public void testSocketServesConcurrentSessions() throws Exception {
+        String[] openings = {"e2e4", "d2d4", "g1f3", "c2c4"};
+        try (UciEngine engine = new UciEngine(2)) {
+            ServerSocket server = new ServerSocket(0, 16, InetAddress.getLoopbackAddress());
+            Thread acceptor = Thread.ofVirtual().start(() -> {
+                try {
+                    engine.serve(server);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            try {
+                List<Future<String>> replies = new ArrayList<>();
+                try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                    for (String opening : openings) {
+                        replies.add(clients.submit(() -> {
+                            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+                                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII);
+                                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))) {
+                                out.println("position startpos moves " + opening);
+                                out.println("go infinite");
+                                out.println("isready");
+                                assertEquals("readyok", in.readLine(), "isready must be answered during a search");
+                                out.println("stop");
+                                String bestMove = readUntil(in, "bestmove ");
+                                out.println("position startpos moves " + opening + " " + bestMove.substring("bestmove ".length()));
+                                out.println("go depth 1");
+                                String reply = readUntil(in, "bestmove ");
+                                out.println("quit");
+                                return reply;
+                            }
+                        }));
+                    }
+                    for (Future<String> reply : replies) {
+                        String bestMove = reply.get();
+                        assertTrue(bestMove.matches("bestmove [a-h][1-8][a-h][1-8]q?"), bestMove);
+                    }
+                }
+            } finally {
+                server.close();
+                acceptor.join();
+            }
+        }
+    }
+
+    private static String readUntil(BufferedReader in, String prefix) throws Exception {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith(prefix)) {
+                return line;
+            }
+        }
+        throw new AssertionError("No line starting with " + prefix);
+    }
+}